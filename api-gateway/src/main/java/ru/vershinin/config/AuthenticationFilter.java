@@ -1,12 +1,16 @@
 package ru.vershinin.config;
 
-import ru.vershinin.dto.JwtParseRequestDto;
 import ru.vershinin.dto.JwtParseResponseDto;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import ru.vershinin.model.GatewayStage;
+import ru.vershinin.model.JwtAuthentication;
+import ru.vershinin.service.AuthenticationCache;
+import ru.vershinin.service.JwtValidationService;
+import ru.vershinin.service.RequestTimings;
+import ru.vershinin.service.SingleFlight;
+import ru.vershinin.service.TokenDigest;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import javax.servlet.FilterChain;
@@ -14,8 +18,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
 @Component
 public class AuthenticationFilter extends OncePerRequestFilter {
@@ -24,15 +26,17 @@ public class AuthenticationFilter extends OncePerRequestFilter {
 
     public static final String HEADER_VALUE_PREFIX = "Bearer";
 
-    /**
-     * адрес валидации токена:auth-service
-     */
-    private static final String JWT_PARSE_URL = "http://auth-service/v1/jwt/parse";
+    private static final String TOKEN_PREFIX = HEADER_VALUE_PREFIX + " ";
+
+    private final JwtValidationService jwtValidationService;
 
-    private final RestTemplate restTemplate;
+    private final AuthenticationCache authenticationCache;
 
-    public AuthenticationFilter(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    private final SingleFlight<TokenDigest, Authentication> validations = new SingleFlight<>();
+
+    public AuthenticationFilter(JwtValidationService jwtValidationService, AuthenticationCache authenticationCache) {
+        this.jwtValidationService = jwtValidationService;
+        this.authenticationCache = authenticationCache;
     }
 
     /**
@@ -50,44 +54,51 @@ public class AuthenticationFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         //получаем токен из заголовка запроса
-        String token = request.getHeader(HEADER);
-        //если токен не пустой, то обрезаем префикс
-        if (token != null) {
-            token = token.replace(HEADER_VALUE_PREFIX + " ", "");
+        String header = request.getHeader(HEADER);
+        //если токен не пустой, то пропускаем префикс - подстрока с токеном нужна только для новой проверки
+        if (header != null) {
+            int offset = header.startsWith(TOKEN_PREFIX) ? TOKEN_PREFIX.length() : 0;
 
+            long start = System.nanoTime();
             try {
-                JwtParseResponseDto responseDto = parseJwt(token);
-                //Spring Security хранит основную информацию о каждом аутентифицированном пользователе
-                // в ThreadLocal - представленном как объект аутентификации
-                //создаем объект аутентификации в ручную и установим полученный объект Authentication в текущий SecurityContext
-                //
-                UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
-                        responseDto.getUsername(),
-                        null,
-                        responseDto.getAuthorities().stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList())
-                );
+                //повторно присланный токен берем из кэша, без новой проверки
+                TokenDigest cacheKey = authenticationCache.digest(header, offset);
+                Authentication auth = authenticationCache.getIfPresent(cacheKey);
+                if (auth == null) {
+                    String token = header.substring(offset);
+                    //одновременные запросы с одним и тем же токеном ждут одну проверку
+                    auth = validations.execute(cacheKey, () -> authenticate(token, cacheKey));
+                }
                 SecurityContextHolder.getContext().setAuthentication(auth);
             } catch (Exception ignore) {
                 SecurityContextHolder.clearContext();
             }
+            RequestTimings.current().add(GatewayStage.AUTHENTICATION, System.nanoTime() - start);
         }
 
         filterChain.doFilter(request, response);
     }
 
     /**
-     * метод передает токен по указанному ранее URL,где проверяется валидация
-     * реализует связь между сервисами с помощью restTemplate
-     *
+     * проверяет токен и кладет полученный объект аутентификации в кэш
      * @param token - токен полученный из заголовка запроса
-     * @return - для удобного чтения возращает объект JwtParseResponseDto
-     * @see JwtParseResponseDto
+     * @param cacheKey - ключ кэша для токена
+     * @return - объект аутентификации
      */
-    private JwtParseResponseDto parseJwt(String token) {
-        JwtParseResponseDto responseDto = restTemplate.postForObject(JWT_PARSE_URL, new JwtParseRequestDto(token),
-                JwtParseResponseDto.class);
-        //Обертка requireNonNull позволяет прямо и быстро определить причину исключения.
-        Objects.requireNonNull(responseDto);
-        return responseDto;
+    private Authentication authenticate(String token, TokenDigest cacheKey) {
+        //пока ждали своей очереди, токен мог проверить предыдущий вызов
+        Authentication cached = authenticationCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        JwtParseResponseDto responseDto = jwtValidationService.parseJwt(token);
+        //Spring Security хранит основную информацию о каждом аутентифицированном пользователе
+        // в ThreadLocal - представленном как объект аутентификации
+        //создаем объект аутентификации в ручную и установим полученный объект Authentication в текущий SecurityContext
+        //список ролей общий для всех пользователей с тем же набором ролей
+        Authentication auth = JwtAuthentication.of(responseDto.getUsername(), responseDto.getAuthorities());
+        authenticationCache.put(cacheKey, auth, responseDto.getExpiration());
+        return auth;
     }
 }
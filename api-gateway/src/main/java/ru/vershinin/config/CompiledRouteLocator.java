@@ -0,0 +1,52 @@
+package ru.vershinin.config;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties.ZuulRoute;
+import org.springframework.cloud.netflix.zuul.filters.discovery.DiscoveryClientRouteLocator;
+import org.springframework.cloud.netflix.zuul.filters.discovery.ServiceRouteMapper;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * DiscoveryClientRouteLocator, который ищет маршрут по RouteTable вместо перебора всех шаблонов.
+ * таблица собирается при каждом обновлении маршрутов (zuul.routes, изменения в eureka) и подменяется целиком,
+ * поэтому запросы всегда видят согласованную таблицу
+ */
+public class CompiledRouteLocator extends DiscoveryClientRouteLocator {
+
+    private final AtomicReference<RouteTable<ZuulRoute>> table =
+            new AtomicReference<>(RouteTable.compile(Collections.emptyMap()));
+
+    /**
+     * @param servletPath - context path сервера
+     * @param discovery - клиент eureka
+     * @param properties - настройки zuul
+     * @param serviceRouteMapper - преобразование service-id в путь для найденных в eureka сервисов
+     * @param localServiceInstance - экземпляр самого шлюза или null
+     */
+    public CompiledRouteLocator(String servletPath, DiscoveryClient discovery, ZuulProperties properties,
+                                ServiceRouteMapper serviceRouteMapper, ServiceInstance localServiceInstance) {
+        super(servletPath, discovery, properties, serviceRouteMapper, localServiceInstance);
+    }
+
+    @Override
+    protected LinkedHashMap<String, ZuulRoute> locateRoutes() {
+        LinkedHashMap<String, ZuulRoute> routes = super.locateRoutes();
+        table.set(RouteTable.compile(routes));
+        return routes;
+    }
+
+    @Override
+    protected ZuulRoute getZuulRoute(String adjustedPath) {
+        //при первом обращении собирает маршруты и таблицу
+        getRoutesMap();
+        if (matchesIgnoredPatterns(adjustedPath)) {
+            return null;
+        }
+        return table.get().match(adjustedPath);
+    }
+}
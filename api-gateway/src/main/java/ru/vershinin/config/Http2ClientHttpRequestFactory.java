@@ -0,0 +1,186 @@
+package ru.vershinin.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * фабрика запросов RestTemplate поверх java.net.http.HttpClient с HTTP/2 без TLS (h2c).
+ * первый запрос к экземпляру сервиса идет по HTTP/1.1 с Upgrade: h2c, дальше все запросы к нему
+ * мультиплексируются в одном соединении; если сервис не поддерживает h2c, остается HTTP/1.1
+ */
+public class Http2ClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    /**
+     * заголовки, которые java.net.http.HttpClient выставляет сам и не позволяет передать
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(List.of(HttpHeaders.CONNECTION, HttpHeaders.CONTENT_LENGTH, HttpHeaders.DATE,
+                HttpHeaders.EXPECT, HttpHeaders.FROM, HttpHeaders.HOST, HttpHeaders.UPGRADE, HttpHeaders.VIA,
+                HttpHeaders.WARNING, HttpHeaders.TRANSFER_ENCODING, "Keep-Alive"));
+    }
+
+    private final HttpClient httpClient;
+
+    private final Duration readTimeout;
+
+    /**
+     * @param httpClient - клиент HTTP/2, общий для RestTemplate и маршрутизации Zuul
+     * @param readTimeout - тайм-аут ожидания ответа
+     */
+    public Http2ClientHttpRequestFactory(HttpClient httpClient, Duration readTimeout) {
+        this.httpClient = httpClient;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * @param connectTimeout - тайм-аут установления соединения
+     * @return - клиент, который пробует h2c для всех запросов по http://
+     */
+    public static HttpClient newHttpClient(Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /**
+     * @param name - имя заголовка
+     * @return - true, если заголовок нельзя передать в java.net.http.HttpRequest
+     */
+    public static boolean isRestrictedHeader(String name) {
+        return RESTRICTED_HEADERS.contains(name);
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new Http2ClientHttpRequest(uri, httpMethod);
+    }
+
+    private final class Http2ClientHttpRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+
+        private final HttpMethod method;
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+        private Http2ClientHttpRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public String getMethodValue() {
+            return method.name();
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                    .timeout(readTimeout)
+                    .method(method.name(), body.size() == 0
+                            ? HttpRequest.BodyPublishers.noBody()
+                            : HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (!isRestrictedHeader(header.getKey())) {
+                    header.getValue().forEach(value -> builder.header(header.getKey(), value));
+                }
+            }
+            try {
+                return new Http2ClientHttpResponse(httpClient.send(builder.build(),
+                        HttpResponse.BodyHandlers.ofInputStream()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(ex.getMessage());
+            }
+        }
+    }
+
+    private static final class Http2ClientHttpResponse implements ClientHttpResponse {
+
+        private final HttpResponse<InputStream> response;
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        private Http2ClientHttpResponse(HttpResponse<InputStream> response) {
+            this.response = response;
+            response.headers().map().forEach(headers::addAll);
+        }
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return HttpStatus.valueOf(response.statusCode());
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getStatusText() {
+            HttpStatus status = HttpStatus.resolve(response.statusCode());
+            return status == null ? "" : status.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return response.body();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.body().close();
+            } catch (IOException ex) {
+                //ответ уже получен, ошибка закрытия потока на него не влияет
+            }
+        }
+    }
+}
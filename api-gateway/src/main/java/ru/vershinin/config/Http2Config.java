@@ -0,0 +1,33 @@
+package ru.vershinin.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * HTTP/2 без TLS (h2c) от шлюза к сервисам, включается свойством gateway.http2.enabled.
+ * с каждым экземпляром сервиса держится одно соединение, в котором мультиплексируются все запросы:
+ * маршрутизация Zuul (Http2RouteFilter) и проверка токенов через RestTemplate.
+ * на сервисах должен быть включен server.http2.enabled (профиль h2c)
+ */
+@Configuration
+@ConditionalOnProperty(value = "gateway.http2.enabled", havingValue = "true")
+public class Http2Config {
+
+    /**
+     * @param connectTimeout - тайм-аут установления соединения, мс
+     * @param readTimeout - тайм-аут ожидания ответа, мс
+     * @return
+     */
+    @Bean
+    public Http2ClientHttpRequestFactory http2ClientHttpRequestFactory(
+            @Value("${ribbon.ConnectTimeout:5000}") int connectTimeout,
+            @Value("${ribbon.ReadTimeout:10000}") int readTimeout) {
+        return new Http2ClientHttpRequestFactory(
+                Http2ClientHttpRequestFactory.newHttpClient(Duration.ofMillis(connectTimeout)),
+                Duration.ofMillis(readTimeout));
+    }
+}
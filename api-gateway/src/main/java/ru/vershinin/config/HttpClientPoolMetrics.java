@@ -0,0 +1,88 @@
+package ru.vershinin.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.PoolStats;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * метрики заполненности пула соединений RestTemplate по каждому сервису:
+ * http.client.pool.leased - занятые соединения, http.client.pool.pending - запросы в ожидании соединения,
+ * http.client.pool.available - свободные keep-alive соединения.
+ * должен стоять в цепочке до @LoadBalanced перехватчика, чтобы видеть service-id в адресе запроса
+ */
+public class HttpClientPoolMetrics implements ClientHttpRequestInterceptor {
+
+    private final UnpinnedConnectionManager connectionManager;
+
+    private final DiscoveryClient discoveryClient;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Set<String> services = ConcurrentHashMap.newKeySet();
+
+    public HttpClientPoolMetrics(UnpinnedConnectionManager connectionManager, DiscoveryClient discoveryClient,
+                                 MeterRegistry meterRegistry) {
+        this.connectionManager = connectionManager;
+        this.discoveryClient = discoveryClient;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("http.client.pool.max", connectionManager, pool -> pool.getTotalStats().getMax())
+                .description("Maximum number of pooled connections")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String serviceId = request.getURI().getHost();
+        if (serviceId != null && services.add(serviceId)) {
+            register(serviceId);
+        }
+        return execution.execute(request, body);
+    }
+
+    private void register(String serviceId) {
+        gauge("http.client.pool.leased", "Connections in use", serviceId, PoolStats::getLeased);
+        gauge("http.client.pool.pending", "Requests waiting for a connection", serviceId, PoolStats::getPending);
+        gauge("http.client.pool.available", "Idle keep-alive connections", serviceId, PoolStats::getAvailable);
+    }
+
+    private void gauge(String name, String description, String serviceId, ToIntFunction<PoolStats> stat) {
+        Gauge.builder(name, this, metrics -> metrics.sum(serviceId, stat))
+                .description(description)
+                .tag("service", serviceId)
+                .register(meterRegistry);
+    }
+
+    /**
+     * суммирует статистику пула по всем экземплярам сервиса, с которыми есть соединения
+     */
+    private double sum(String serviceId, ToIntFunction<PoolStats> stat) {
+        List<ServiceInstance> instances = discoveryClient.getInstances(serviceId);
+        int total = 0;
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            HttpHost target = route.getTargetHost();
+            for (ServiceInstance instance : instances) {
+                if (instance.getPort() == target.getPort() && instance.getHost().equalsIgnoreCase(target.getHostName())) {
+                    total += stat.applyAsInt(connectionManager.getStats(route));
+                    break;
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.vershinin.config;
+
+import com.netflix.loadbalancer.IRule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * конфигурация дочернего контекста каждого клиента ribbon (service-id маршрутов Zuul и RestTemplate).
+ * не помечена @Configuration, чтобы не попасть в основной контекст при сканировании пакета
+ */
+public class LatencyAwareRibbonConfiguration {
+
+    /**
+     * @param decay - постоянная времени затухания оценки времени ответа экземпляра; разбирается здесь,
+     *              у дочернего контекста ribbon нет конвертера строк в Duration
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(value = "gateway.load-balancer.latency-aware", havingValue = "true", matchIfMissing = true)
+    public IRule ribbonRule(@Value("${gateway.load-balancer.decay:10s}") String decay) {
+        return new LatencyAwareRule(DurationStyle.detectAndParse(decay));
+    }
+}
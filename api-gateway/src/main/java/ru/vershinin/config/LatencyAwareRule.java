@@ -0,0 +1,126 @@
+package ru.vershinin.config;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancer;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * правило ribbon "power of two choices": из двух случайных доступных экземпляров выбирается тот,
+ * у которого меньше (время ответа + 1 мс) * (запросы в работе + 1).
+ * время ответа - peak EWMA: медленный ответ учитывается сразу, быстрые снижают оценку постепенно,
+ * без новых ответов оценка затухает к нулю, поэтому простаивающий экземпляр снова получает запросы.
+ * статистика берется из ServerStats, которую ведут и Zuul, и RestTemplate с @LoadBalanced
+ */
+public class LatencyAwareRule extends AbstractLoadBalancerRule {
+
+    public static final Duration DEFAULT_DECAY = Duration.ofSeconds(10);
+
+    private final long decayNanos;
+
+    private final ConcurrentMap<Server, LatencyEstimate> estimates = new ConcurrentHashMap<>();
+
+    public LatencyAwareRule() {
+        this(DEFAULT_DECAY);
+    }
+
+    /**
+     * @param decay - постоянная времени затухания оценки времени ответа
+     */
+    public LatencyAwareRule(Duration decay) {
+        this.decayNanos = decay.toNanos();
+    }
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+    }
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer loadBalancer = getLoadBalancer();
+        if (loadBalancer == null) {
+            return null;
+        }
+        List<Server> servers = loadBalancer.getReachableServers();
+        int size = servers.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return servers.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Server a = servers.get(first);
+        Server b = servers.get(second);
+        if (!(loadBalancer instanceof AbstractLoadBalancer)) {
+            return a;
+        }
+
+        LoadBalancerStats stats = ((AbstractLoadBalancer) loadBalancer).getLoadBalancerStats();
+        if (estimates.size() > 2 * size + 16) {
+            //экземпляры, удаленные из реестра
+            estimates.keySet().retainAll(loadBalancer.getAllServers());
+        }
+        long now = System.nanoTime();
+        return cost(a, stats, now) <= cost(b, stats, now) ? a : b;
+    }
+
+    private double cost(Server server, LoadBalancerStats stats, long now) {
+        ServerStats serverStats = stats.getSingleServerStat(server);
+        double latencyMillis = estimates.computeIfAbsent(server, s -> new LatencyEstimate(now))
+                .update(serverStats, now, decayNanos);
+        return (latencyMillis + 1) * (serverStats.getActiveRequestsCount() + 1);
+    }
+
+    /**
+     * оценка времени ответа одного экземпляра. ServerStats хранит только накопленные среднее и число ответов,
+     * поэтому среднее новых ответов восстанавливается по разнице с прошлым наблюдением
+     */
+    private static final class LatencyEstimate {
+
+        private long observedCount;
+
+        private double observedSumMillis;
+
+        private double ewmaMillis;
+
+        private long updatedNanos;
+
+        private LatencyEstimate(long now) {
+            this.updatedNanos = now;
+        }
+
+        private synchronized double update(ServerStats serverStats, long now, long decayNanos) {
+            long count = serverStats.getMeasuredRequestsCount();
+            double sumMillis = serverStats.getResponseTimeAvg() * count;
+            double weight = Math.exp(-(double) Math.max(0, now - updatedNanos) / decayNanos);
+            if (count > observedCount) {
+                double sampleMillis = Math.max(0, (sumMillis - observedSumMillis) / (count - observedCount));
+                ewmaMillis = sampleMillis > ewmaMillis
+                        ? sampleMillis
+                        : ewmaMillis * weight + sampleMillis * (1 - weight);
+            } else {
+                ewmaMillis *= weight;
+            }
+            observedCount = count;
+            observedSumMillis = sumMillis;
+            updatedNanos = now;
+            return ewmaMillis;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.vershinin.config;
+
+import org.springframework.cloud.commons.httpclient.ApacheHttpClientConnectionManagerFactory;
+import org.springframework.cloud.netflix.ribbon.RibbonClients;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * правило выбора экземпляра по умолчанию для всех клиентов ribbon
+ */
+@Configuration
+@RibbonClients(defaultConfiguration = LatencyAwareRibbonConfiguration.class)
+public class LoadBalancerConfig {
+
+    /**
+     * заменяет фабрику пулов Spring Cloud: Ribbon и SimpleHostRoutingFilter берут пулы отсюда
+     * @return
+     */
+    @Bean
+    public ApacheHttpClientConnectionManagerFactory connectionManagerFactory() {
+        return new UnpinnedConnectionManagerFactory();
+    }
+}
@@ -0,0 +1,77 @@
+package ru.vershinin.config;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * фабрика HTTP-запросов для RestTemplate на базе Apache HttpClient с пулом keep-alive соединений.
+ * пул общий для всех сервисов, ограничен по общему числу соединений и по числу соединений на один экземпляр сервиса.
+ * фабрика - бин: ее используют RestTemplate и фильтры потоковых маршрутов и маршрутов с дублированием;
+ * обычные маршруты Zuul идут через Ribbon со своими пулами, этот бин им не передается.
+ * простаивающие и закрытые сервером соединения удаляются из пула фоновым потоком HttpClient.
+ * ожидание свободного соединения идет вне мониторов HttpClient, см. UnpinnedConnectionManager.
+ * сжатые ответы не распаковываются: потоковые маршруты передают тело клиенту как есть
+ */
+public class PooledClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private final UnpinnedConnectionManager connectionManager;
+
+    private final int readTimeout;
+
+    /**
+     * @param maxTotal - максимальное число соединений в пуле
+     * @param maxPerRoute - максимальное число соединений с одним экземпляром сервиса
+     * @param connectTimeout - тайм-аут установления соединения, мс
+     * @param readTimeout - тайм-аут ожидания ответа, мс
+     * @param acquireTimeout - тайм-аут ожидания свободного соединения в пуле, мс
+     * @param idleTimeout - время простоя, после которого соединение закрывается, мс
+     */
+    public PooledClientHttpRequestFactory(int maxTotal, int maxPerRoute, int connectTimeout, int readTimeout,
+                                          int acquireTimeout, long idleTimeout) {
+        this(createConnectionManager(maxTotal, maxPerRoute), connectTimeout, readTimeout, acquireTimeout, idleTimeout);
+    }
+
+    private PooledClientHttpRequestFactory(UnpinnedConnectionManager connectionManager, int connectTimeout,
+                                           int readTimeout, int acquireTimeout, long idleTimeout) {
+        super(HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeout)
+                        .setSocketTimeout(readTimeout)
+                        .setConnectionRequestTimeout(acquireTimeout)
+                        .build())
+                .disableContentCompression()
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+                .build());
+        this.connectionManager = connectionManager;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * @return - пул соединений, используется для метрик
+     */
+    public UnpinnedConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * @return - тайм-аут ожидания ответа, мс
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    private static UnpinnedConnectionManager createConnectionManager(int maxTotal, int maxPerRoute) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        //проверяем соединение перед выдачей, если оно простаивало дольше секунды
+        connectionManager.setValidateAfterInactivity(1000);
+        return new UnpinnedConnectionManager(connectionManager);
+    }
+}
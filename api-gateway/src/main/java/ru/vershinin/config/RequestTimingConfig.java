@@ -0,0 +1,44 @@
+package ru.vershinin.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.vershinin.filter.StageTimingFilter;
+import ru.vershinin.model.GatewayStage;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.POST_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SERVLET_DETECTION_FILTER_ORDER;
+
+/**
+ * отметки этапов внутри Zuul, см. GatewayStage
+ */
+@Configuration
+public class RequestTimingConfig {
+
+    /**
+     * первый pre-фильтр: закрывает цепочку Spring Security
+     * @return
+     */
+    @Bean
+    public StageTimingFilter securityStageTimingFilter() {
+        return new StageTimingFilter(PRE_TYPE, SERVLET_DETECTION_FILTER_ORDER - 1, GatewayStage.SECURITY);
+    }
+
+    /**
+     * последний pre-фильтр: закрывает pre-фильтры Zuul и запоминает маршрут
+     * @return
+     */
+    @Bean
+    public StageTimingFilter zuulPreStageTimingFilter() {
+        return new StageTimingFilter(PRE_TYPE, Integer.MAX_VALUE, GatewayStage.ZUUL_PRE);
+    }
+
+    /**
+     * первый post-фильтр: закрывает ожидание ответа upstream
+     * @return
+     */
+    @Bean
+    public StageTimingFilter upstreamStageTimingFilter() {
+        return new StageTimingFilter(POST_TYPE, -1, GatewayStage.UPSTREAM);
+    }
+}
@@ -0,0 +1,50 @@
+package ru.vershinin.config;
+
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.vershinin.service.AccessLog;
+import ru.vershinin.service.GatewayTimings;
+import ru.vershinin.service.RequestTimings;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * внешний фильтр замера этапов запроса: стоит перед цепочкой Spring Security и после ответа
+ * записывает все этапы в гистограммы GatewayTimings и, если включен, в журнал доступа
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 1)
+public class RequestTimingFilter extends OncePerRequestFilter {
+
+    private final GatewayTimings gatewayTimings;
+
+    private final AccessLog accessLog;
+
+    public RequestTimingFilter(GatewayTimings gatewayTimings, Optional<AccessLog> accessLog) {
+        this.gatewayTimings = gatewayTimings;
+        this.accessLog = accessLog.orElse(null);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestTimings timings = RequestTimings.current();
+        timings.start(System.nanoTime());
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            timings.finish(System.nanoTime());
+            gatewayTimings.record(timings);
+            if (accessLog != null) {
+                accessLog.append(request, response.getStatus(), timings);
+            }
+        }
+    }
+}
@@ -1,21 +1,59 @@
 package ru.vershinin.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class RestTemplateConfig {
 
+    /**
+     * пул соединений для RestTemplate, тайм-ауты совпадают с настройками ribbon
+     * @param maxTotal - максимальное число соединений в пуле
+     * @param maxPerRoute - максимальное число соединений с одним экземпляром сервиса
+     * @param connectTimeout - тайм-аут установления соединения, мс
+     * @param readTimeout - тайм-аут ожидания ответа, мс
+     * @param acquireTimeout - тайм-аут ожидания свободного соединения в пуле, мс
+     * @param idleTimeout - время простоя, после которого соединение закрывается, мс
+     * @return
+     */
+    @Bean
+    public PooledClientHttpRequestFactory pooledClientHttpRequestFactory(
+            @Value("${http-client.pool.max-total:200}") int maxTotal,
+            @Value("${http-client.pool.max-per-route:50}") int maxPerRoute,
+            @Value("${ribbon.ConnectTimeout:5000}") int connectTimeout,
+            @Value("${ribbon.ReadTimeout:10000}") int readTimeout,
+            @Value("${http-client.pool.acquire-timeout:1000}") int acquireTimeout,
+            @Value("${http-client.pool.idle-timeout:30000}") long idleTimeout) {
+        return new PooledClientHttpRequestFactory(maxTotal, maxPerRoute, connectTimeout, readTimeout,
+                acquireTimeout, idleTimeout);
+    }
+
     /**
      * Синхронный клиент для выполнения HTTP-запросов, предоставляющий простой API-интерфейс шаблонного метода через базовые клиентские библиотеки HTTP
+     * @param http2RequestFactory - при gateway.http2.enabled запросы идут по h2c вместо пула HTTP/1.1,
+     *                            метрики пула в этом случае не подключаются: пул для этих запросов не используется
      * @return
      */
     @Bean
     @LoadBalanced
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(PooledClientHttpRequestFactory requestFactory,
+                                     ObjectProvider<Http2ClientHttpRequestFactory> http2RequestFactory,
+                                     DiscoveryClient discoveryClient, MeterRegistry meterRegistry) {
+        Http2ClientHttpRequestFactory http2 = http2RequestFactory.getIfAvailable();
+        ClientHttpRequestFactory transport = http2 != null ? http2 : requestFactory;
+        RestTemplate restTemplate = new RestTemplate(transport);
+        if (http2 == null) {
+            //перехватчик балансировщика добавляется позже, поэтому метрики видят service-id в адресе
+            restTemplate.getInterceptors().add(
+                    new HttpClientPoolMetrics(requestFactory.getConnectionManager(), discoveryClient, meterRegistry));
+        }
+        return restTemplate;
     }
 }
-
@@ -0,0 +1,28 @@
+package ru.vershinin.config;
+
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.discovery.ServiceRouteMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Optional;
+
+@Configuration
+public class RouteLocatorConfig {
+
+    /**
+     * заменяет DiscoveryClientRouteLocator из ZuulProxyAutoConfiguration, параметры те же
+     * @return
+     */
+    @Bean
+    public CompiledRouteLocator compiledRouteLocator(ServerProperties server, DiscoveryClient discovery,
+                                                     ZuulProperties zuulProperties,
+                                                     ServiceRouteMapper serviceRouteMapper,
+                                                     Optional<Registration> registration) {
+        return new CompiledRouteLocator(server.getServlet().getContextPath(), discovery, zuulProperties,
+                serviceRouteMapper, registration.orElse(null));
+    }
+}
@@ -0,0 +1,44 @@
+package ru.vershinin.config;
+
+import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * правило Spring Security по идентификатору маршрута zuul: запрос подходит, если Zuul направит его
+ * на один из маршрутов routeIds. маршрут ищется той же таблицей, что и при маршрутизации
+ */
+public class RouteRequestMatcher implements RequestMatcher {
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    private final RouteLocator routeLocator;
+
+    private final Set<String> routeIds;
+
+    /**
+     * @param routeLocator - поиск маршрута по пути
+     * @param routeIds - идентификаторы маршрутов zuul.routes
+     */
+    public RouteRequestMatcher(RouteLocator routeLocator, Iterable<String> routeIds) {
+        this.routeLocator = routeLocator;
+        this.routeIds = new HashSet<>();
+        routeIds.forEach(this.routeIds::add);
+    }
+
+    @Override
+    public boolean matches(HttpServletRequest request) {
+        Route route = routeLocator.getMatchingRoute(urlPathHelper.getPathWithinApplication(request));
+        return route != null && routeIds.contains(route.getId());
+    }
+
+    @Override
+    public String toString() {
+        return "RouteRequestMatcher " + routeIds;
+    }
+}
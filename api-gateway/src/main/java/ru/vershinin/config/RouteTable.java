@@ -0,0 +1,182 @@
+package ru.vershinin.config;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * неизменяемая таблица маршрутов с ant-шаблонами, собранная в дерево по сегментам пути.
+ * поиск проходит путь один раз, спускаясь по точным сегментам, "*" и "**", и находит шаблоны-кандидаты;
+ * первый по порядку таблицы кандидат проверяется AntPathMatcher, поэтому результат совпадает с перебором
+ * шаблонов по порядку, как в SimpleRouteLocator. шаблоны со сложными сегментами ("v*", "{id}", "?")
+ * в дерево не попадают и проверяются перебором
+ * @param <V> - значение, связанное с шаблоном
+ */
+public final class RouteTable<V> {
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private static final String PATH_SEPARATOR = "/";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private final String[] patterns;
+
+    private final List<V> values;
+
+    private final Node root = new Node();
+
+    /**
+     * номера шаблонов, которые проверяются перебором, по возрастанию
+     */
+    private final int[] fallback;
+
+    private RouteTable(Map<String, V> routes) {
+        this.patterns = routes.keySet().toArray(new String[0]);
+        this.values = new ArrayList<>(routes.values());
+        List<Integer> complex = new ArrayList<>();
+        for (int index = 0; index < patterns.length; index++) {
+            if (!insert(patterns[index], index)) {
+                complex.add(index);
+            }
+        }
+        this.fallback = complex.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param routes - шаблоны путей в порядке приоритета и связанные с ними значения
+     * @param <V> - тип значения
+     * @return - таблица маршрутов
+     */
+    public static <V> RouteTable<V> compile(Map<String, V> routes) {
+        return new RouteTable<>(routes);
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @param path - путь запроса
+     * @return - значение первого по порядку шаблона, которому соответствует путь, или null
+     */
+    public V match(String path) {
+        String[] segments = StringUtils.tokenizeToStringArray(path, PATH_SEPARATOR, false, true);
+        int floor = -1;
+        while (true) {
+            int candidate = Math.min(find(root, segments, 0, floor), firstAbove(fallback, floor));
+            if (candidate == NONE) {
+                return null;
+            }
+            if (pathMatcher.match(patterns[candidate], path)) {
+                return values.get(candidate);
+            }
+            floor = candidate;
+        }
+    }
+
+    private boolean insert(String pattern, int index) {
+        String[] segments = StringUtils.tokenizeToStringArray(pattern, PATH_SEPARATOR, false, true);
+        for (String segment : segments) {
+            if (!segment.equals("*") && !segment.equals("**")
+                    && (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0)) {
+                return false;
+            }
+        }
+        Node node = root;
+        for (String segment : segments) {
+            node = node.child(segment);
+        }
+        node.addTerminal(index);
+        return true;
+    }
+
+    /**
+     * @return - наименьший номер шаблона больше floor, которому может соответствовать остаток пути, или NONE
+     */
+    private static int find(Node node, String[] segments, int position, int floor) {
+        int best = NONE;
+        if (node.doubleWildcard != null) {
+            Node next = node.doubleWildcard;
+            if (next.isLeaf()) {
+                //"**" в конце шаблона поглощает любой остаток пути
+                best = firstAbove(next.terminals, floor);
+            } else {
+                for (int skip = position; skip <= segments.length; skip++) {
+                    best = Math.min(best, find(next, segments, skip, floor));
+                }
+            }
+        }
+        if (position == segments.length) {
+            return Math.min(best, firstAbove(node.terminals, floor));
+        }
+        if (node.literals != null) {
+            Node literal = node.literals.get(segments[position]);
+            if (literal != null) {
+                best = Math.min(best, find(literal, segments, position + 1, floor));
+            }
+        }
+        if (node.wildcard != null) {
+            best = Math.min(best, find(node.wildcard, segments, position + 1, floor));
+        }
+        return best;
+    }
+
+    private static int firstAbove(int[] sorted, int floor) {
+        for (int value : sorted) {
+            if (value > floor) {
+                return value;
+            }
+        }
+        return NONE;
+    }
+
+    private static final class Node {
+
+        private static final int[] EMPTY = new int[0];
+
+        private Map<String, Node> literals;
+
+        private Node wildcard;
+
+        private Node doubleWildcard;
+
+        /**
+         * номера шаблонов, которые заканчиваются в этом узле, по возрастанию
+         */
+        private int[] terminals = EMPTY;
+
+        private Node child(String segment) {
+            if (segment.equals("**")) {
+                if (doubleWildcard == null) {
+                    doubleWildcard = new Node();
+                }
+                return doubleWildcard;
+            }
+            if (segment.equals("*")) {
+                if (wildcard == null) {
+                    wildcard = new Node();
+                }
+                return wildcard;
+            }
+            if (literals == null) {
+                literals = new HashMap<>();
+            }
+            return literals.computeIfAbsent(segment, key -> new Node());
+        }
+
+        private void addTerminal(int index) {
+            terminals = Arrays.copyOf(terminals, terminals.length + 1);
+            terminals[terminals.length - 1] = index;
+        }
+
+        private boolean isLeaf() {
+            return literals == null && wildcard == null && doubleWildcard == null;
+        }
+    }
+}
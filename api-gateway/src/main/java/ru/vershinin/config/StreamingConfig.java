@@ -0,0 +1,99 @@
+package ru.vershinin.config;
+
+import com.netflix.zuul.context.RequestContext;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.post.SendResponseFilter;
+import org.springframework.cloud.netflix.zuul.filters.pre.FormBodyWrapperFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+import ru.vershinin.filter.StreamingRouteFilter;
+import ru.vershinin.service.StreamingRoutes;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * отключает для потоковых маршрутов то, что читает тело запроса целиком до маршрутизации:
+ * разбор multipart в DispatcherServlet и перекодирование форм в FormBodyWrapperFilter.
+ * ответ потокового маршрута StreamingRouteFilter пишет сам, остальное здесь - обработка уже записанного ответа
+ */
+@Configuration
+public class StreamingConfig {
+
+    /**
+     * заменяет StandardServletMultipartResolver из MultipartAutoConfiguration
+     * @param streamingRoutes - потоковые маршруты
+     * @return
+     */
+    @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    public MultipartResolver multipartResolver(StreamingRoutes streamingRoutes) {
+        return new StandardServletMultipartResolver() {
+            @Override
+            public boolean isMultipart(HttpServletRequest request) {
+                return super.isMultipart(request) && !streamingRoutes.isStreaming(request);
+            }
+        };
+    }
+
+    /**
+     * заменяет FormBodyWrapperFilter из ZuulServerAutoConfiguration
+     * @param streamingRoutes - потоковые маршруты
+     * @return
+     */
+    @Bean
+    public FormBodyWrapperFilter formBodyWrapperFilter(StreamingRoutes streamingRoutes) {
+        return new FormBodyWrapperFilter() {
+            @Override
+            public boolean shouldFilter() {
+                return super.shouldFilter()
+                        && !streamingRoutes.isStreaming(RequestContext.getCurrentContext().getRequest());
+            }
+        };
+    }
+
+    /**
+     * заменяет SendResponseFilter из ZuulServerAutoConfiguration: ответ, записанный StreamingRouteFilter,
+     * второй раз не отправляется. бин zuul объявлен без @ConditionalOnMissingBean и отключается свойством
+     * zuul.SendResponseFilter.post.disable; у анонимного подкласса другое имя класса, и свойство его не касается
+     * @param zuulProperties - настройки zuul
+     * @return
+     */
+    @Bean
+    public SendResponseFilter streamingSendResponseFilter(ZuulProperties zuulProperties) {
+        return new SendResponseFilter(zuulProperties) {
+            @Override
+            public boolean shouldFilter() {
+                return super.shouldFilter()
+                        && !RequestContext.getCurrentContext().getBoolean(StreamingRouteFilter.RESPONSE_SENT_KEY);
+            }
+        };
+    }
+
+    /**
+     * закрывает соединение с клиентом, если потоковый ответ оборвался после отправки заголовков.
+     * ZuulServlet не выпускает исключения из фильтров, поэтому оно выбрасывается здесь: на зафиксированном
+     * ответе контейнер закрывает соединение, и клиент не примет обрезанное тело за полное
+     * @return
+     */
+    @Bean
+    public OncePerRequestFilter streamingAbortFilter() {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                            FilterChain filterChain) throws ServletException, IOException {
+                filterChain.doFilter(request, response);
+                IOException aborted = (IOException) request.getAttribute(StreamingRouteFilter.ABORTED_ATTRIBUTE);
+                if (aborted != null) {
+                    throw aborted;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,261 @@
+package ru.vershinin.config;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * пул соединений Apache HttpClient, который не закрепляет виртуальные потоки за потоками-носителями.
+ * HttpClient 4 ждет свободное соединение и блокировку пула внутри synchronized (AbstractConnPool),
+ * а возвращает соединение в пул внутри synchronized (ConnectionHolder): на JDK 21 поток, который ждет там,
+ * занимает носитель, и при исчерпанном пуле носители заканчиваются раньше, чем освобождаются соединения.
+ * поэтому ожидание свободного соединения вынесено в семафоры с пределами пула (общий и на экземпляр сервиса),
+ * выдача из пула идет под ReentrantLock, а возврат ставится в очередь и выполняется тем потоком,
+ * который держит блокировку: внутри мониторов HttpClient никто не ждет
+ */
+public class UnpinnedConnectionManager implements HttpClientConnectionManager {
+
+    private final PoolingHttpClientConnectionManager pool;
+
+    private final int maxPerRoute;
+
+    private final Semaphore totalPermits;
+
+    private final Map<HttpRoute, Semaphore> routePermits = new ConcurrentHashMap<>();
+
+    /**
+     * выданные соединения и их маршруты: при возврате освобождаются разрешения маршрута
+     */
+    private final Map<HttpClientConnection, HttpRoute> leased = new ConcurrentHashMap<>();
+
+    private final Queue<Runnable> releases = new ConcurrentLinkedQueue<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param pool - пул, пределы которого (общий и по умолчанию на маршрут) уже заданы
+     */
+    public UnpinnedConnectionManager(PoolingHttpClientConnectionManager pool) {
+        this.pool = pool;
+        this.maxPerRoute = pool.getDefaultMaxPerRoute();
+        this.totalPermits = new Semaphore(pool.getMaxTotal(), true);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        return new LeaseRequest(route, state);
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection connection, Object state, long validDuration,
+                                  TimeUnit timeUnit) {
+        HttpRoute route = leased.remove(connection);
+        releases.add(() -> {
+            try {
+                pool.releaseConnection(connection, state, validDuration, timeUnit);
+            } finally {
+                if (route != null) {
+                    totalPermits.release();
+                    routePermits.get(route).release();
+                }
+            }
+        });
+        drainReleases();
+    }
+
+    @Override
+    public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context)
+            throws IOException {
+        pool.connect(connection, route, connectTimeout, context);
+    }
+
+    @Override
+    public void upgrade(HttpClientConnection connection, HttpRoute route, HttpContext context) throws IOException {
+        pool.upgrade(connection, route, context);
+    }
+
+    @Override
+    public void routeComplete(HttpClientConnection connection, HttpRoute route, HttpContext context)
+            throws IOException {
+        pool.routeComplete(connection, route, context);
+    }
+
+    @Override
+    public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+        lock.lock();
+        try {
+            pool.closeIdleConnections(idleTime, timeUnit);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        lock.lock();
+        try {
+            pool.closeExpiredConnections();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * @return - маршруты, с которыми есть соединения
+     */
+    public Set<HttpRoute> getRoutes() {
+        lock.lock();
+        try {
+            return pool.getRoutes();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @param route - маршрут
+     * @return - статистика пула по маршруту, в ожидании - запросы, ждущие разрешения маршрута
+     */
+    public PoolStats getStats(HttpRoute route) {
+        PoolStats stats;
+        lock.lock();
+        try {
+            stats = pool.getStats(route);
+        } finally {
+            unlock();
+        }
+        Semaphore permits = routePermits.get(route);
+        return new PoolStats(stats.getLeased(), permits == null ? 0 : permits.getQueueLength(),
+                stats.getAvailable(), stats.getMax());
+    }
+
+    /**
+     * @return - статистика всего пула, в ожидании - запросы, ждущие любого разрешения
+     */
+    public PoolStats getTotalStats() {
+        PoolStats stats;
+        lock.lock();
+        try {
+            stats = pool.getTotalStats();
+        } finally {
+            unlock();
+        }
+        int pending = totalPermits.getQueueLength();
+        for (Semaphore permits : routePermits.values()) {
+            pending += permits.getQueueLength();
+        }
+        return new PoolStats(stats.getLeased(), pending, stats.getAvailable(), stats.getMax());
+    }
+
+    /**
+     * выполняет возвраты из очереди, если блокировка свободна; повторяет проверку после снятия блокировки,
+     * чтобы не потерять возврат, добавленный, пока ее держал другой поток
+     */
+    private void drainReleases() {
+        while (!releases.isEmpty() && lock.tryLock()) {
+            try {
+                Runnable release;
+                while ((release = releases.poll()) != null) {
+                    release.run();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void unlock() {
+        lock.unlock();
+        drainReleases();
+    }
+
+    /**
+     * @param permits - семафор маршрута или общий
+     * @param timeout - тайм-аут ожидания, 0 - ждать без ограничения, как у HttpClient
+     * @param deadline - момент окончания ожидания по System.nanoTime
+     */
+    private static void acquire(Semaphore permits, long timeout, long deadline)
+            throws InterruptedException, ConnectionPoolTimeoutException {
+        if (timeout <= 0) {
+            permits.acquire();
+        } else if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+        }
+    }
+
+    /**
+     * запрос соединения: сначала разрешения, затем выдача из пула, в котором гарантированно есть место
+     */
+    private class LeaseRequest implements ConnectionRequest {
+
+        private final HttpRoute route;
+
+        private final Object state;
+
+        private volatile boolean cancelled;
+
+        LeaseRequest(HttpRoute route, Object state) {
+            this.route = route;
+            this.state = state;
+        }
+
+        @Override
+        public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+            Semaphore permits = routePermits.computeIfAbsent(route, key -> new Semaphore(maxPerRoute, true));
+            long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+            acquire(permits, timeout, deadline);
+            boolean acquired = false;
+            try {
+                acquire(totalPermits, timeout, deadline);
+                acquired = true;
+                if (cancelled) {
+                    throw new ExecutionException(new CancellationException("Operation aborted"));
+                }
+                HttpClientConnection connection;
+                lock.lock();
+                try {
+                    connection = pool.requestConnection(route, state).get(timeout, timeUnit);
+                } finally {
+                    unlock();
+                }
+                leased.put(connection, route);
+                return connection;
+            } catch (InterruptedException | ExecutionException | ConnectionPoolTimeoutException | RuntimeException ex) {
+                if (acquired) {
+                    totalPermits.release();
+                }
+                permits.release();
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.vershinin.config;
+
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.cloud.commons.httpclient.DefaultApacheHttpClientConnectionManagerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * пулы соединений Ribbon и простых маршрутов Zuul (SimpleHostRoutingFilter): настройки те же,
+ * что у фабрики Spring Cloud, ожидание соединения вынесено из мониторов HttpClient, см. UnpinnedConnectionManager
+ */
+public class UnpinnedConnectionManagerFactory extends DefaultApacheHttpClientConnectionManagerFactory {
+
+    @Override
+    public HttpClientConnectionManager newConnectionManager(boolean disableSslValidation, int maxTotalConnections,
+                                                            int maxConnectionsPerRoute, long timeToLive,
+                                                            TimeUnit timeUnit, RegistryBuilder registryBuilder) {
+        return new UnpinnedConnectionManager((PoolingHttpClientConnectionManager) super.newConnectionManager(
+                disableSslValidation, maxTotalConnections, maxConnectionsPerRoute, timeToLive, timeUnit,
+                registryBuilder));
+    }
+}
@@ -1,6 +1,7 @@
 package ru.vershinin.config;
 
 import ru.vershinin.model.UserRole;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
@@ -8,14 +9,27 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import javax.servlet.http.HttpServletResponse;
+import java.util.List;
 
 @EnableWebSecurity
 public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     private final AuthenticationFilter authenticationFilter;
 
-    public WebSecurityConfiguration(AuthenticationFilter authenticationFilter) {
+    private final CompiledRouteLocator routeLocator;
+
+    private final List<String> publicRoutes;
+
+    /**
+     * @param authenticationFilter - проверка токена
+     * @param routeLocator - таблица маршрутов zuul
+     * @param publicRoutes - маршруты zuul.routes, доступные без токена
+     */
+    public WebSecurityConfiguration(AuthenticationFilter authenticationFilter, CompiledRouteLocator routeLocator,
+                                    @Value("${gateway.security.public-routes:auth}") List<String> publicRoutes) {
         this.authenticationFilter = authenticationFilter;
+        this.routeLocator = routeLocator;
+        this.publicRoutes = publicRoutes;
     }
 
     /**
@@ -40,7 +54,8 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
                 //Обрабатывает отправку формы аутентификации.
                 .addFilterAfter(authenticationFilter, UsernamePasswordAuthenticationFilter.class)
                 .authorizeRequests()
-                    .antMatchers("/auth/**").permitAll()
+                    //маршрут определяется той же таблицей, по которой Zuul направляет запрос
+                    .requestMatchers(new RouteRequestMatcher(routeLocator, publicRoutes)).permitAll()
                     .anyRequest().hasRole(UserRole.USER.name());
     }
 }
@@ -1,5 +1,6 @@
 package ru.vershinin.dto;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -11,6 +12,8 @@ public class JwtParseResponseDto {
 
     private List<String> authorities;
 
+    private Date expiration;
+
     public JwtParseResponseDto() {
     }
 
@@ -19,6 +22,12 @@ public class JwtParseResponseDto {
         this.authorities = authorities;
     }
 
+    public JwtParseResponseDto(String username, List<String> authorities, Date expiration) {
+        this.username = username;
+        this.authorities = authorities;
+        this.expiration = expiration;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -34,4 +43,12 @@ public class JwtParseResponseDto {
     public void setAuthorities(List<String> authorities) {
         this.authorities = authorities;
     }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Date expiration) {
+        this.expiration = expiration;
+    }
 }
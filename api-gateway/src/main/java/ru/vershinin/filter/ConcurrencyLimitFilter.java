@@ -0,0 +1,64 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import ru.vershinin.service.ConcurrencyLimiter;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_DECORATION_FILTER_ORDER;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+
+/**
+ * занимает место в адаптивном лимите маршрута; если лимит исчерпан, сразу отвечает 503, не обращаясь к upstream.
+ * место освобождает ConcurrencyLimitPostFilter
+ */
+@Component
+public class ConcurrencyLimitFilter extends ZuulFilter {
+
+    public static final String PERMIT_KEY = "concurrencyLimitPermit";
+
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    private final boolean enabled;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimiter concurrencyLimiter,
+                                  @Value("${gateway.concurrency-limit.enabled:false}") boolean enabled) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public String filterType() {
+        return PRE_TYPE;
+    }
+
+    /**
+     * после кэша ответов: запросы, обслуженные из кэша, не занимают место в лимите
+     */
+    @Override
+    public int filterOrder() {
+        return PRE_DECORATION_FILTER_ORDER + 3;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        return enabled && ctx.get(PROXY_KEY) != null && ctx.sendZuulResponse();
+    }
+
+    @Override
+    public Object run() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire((String) ctx.get(PROXY_KEY));
+        if (permit == null) {
+            ctx.setSendZuulResponse(false);
+            ctx.setResponseStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+        } else {
+            ctx.set(PERMIT_KEY, permit);
+        }
+        return null;
+    }
+}
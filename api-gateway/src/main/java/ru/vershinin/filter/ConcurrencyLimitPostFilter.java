@@ -0,0 +1,42 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import ru.vershinin.service.ConcurrencyLimiter;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.POST_TYPE;
+
+/**
+ * освобождает место, занятое ConcurrencyLimitFilter, и передает лимиту время ответа upstream.
+ * выполняется первым из post-фильтров: они запускаются и после ошибки маршрутизации, но прерываются
+ * на первом упавшем фильтре. время считается до получения заголовков ответа, тело еще не прочитано
+ */
+@Component
+public class ConcurrencyLimitPostFilter extends ZuulFilter {
+
+    @Override
+    public String filterType() {
+        return POST_TYPE;
+    }
+
+    @Override
+    public int filterOrder() {
+        return 0;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        return RequestContext.getCurrentContext().get(ConcurrencyLimitFilter.PERMIT_KEY) != null;
+    }
+
+    @Override
+    public Object run() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        ConcurrencyLimiter.Permit permit = (ConcurrencyLimiter.Permit) ctx.remove(ConcurrencyLimitFilter.PERMIT_KEY);
+        permit.release(ctx.getThrowable() != null
+                || ctx.getResponseStatusCode() >= HttpStatus.INTERNAL_SERVER_ERROR.value());
+        return null;
+    }
+}
@@ -0,0 +1,313 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.util.EntityUtils;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import ru.vershinin.config.PooledClientHttpRequestFactory;
+import ru.vershinin.service.RequestHedging;
+import ru.vershinin.service.RequestTimings;
+import ru.vershinin.service.StreamingRoutes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.RIBBON_ROUTING_FILTER_ORDER;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.ROUTE_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SERVICE_ID_KEY;
+
+/**
+ * маршрутизация GET- и HEAD-запросов на маршрутах gateway.hedging.routes вместо RibbonRoutingFilter.
+ * если первый экземпляр не ответил за задержку из RequestHedging, и бюджет позволяет, тот же запрос отправляется
+ * другому экземпляру; клиент получает ответ, пришедший первым, второй запрос прерывается.
+ * ответ читается целиком, поэтому потоковые маршруты (StreamingRouteFilter) не дублируются.
+ * поток запроса ждет ответа не дольше тайм-аута чтения (ribbon.ReadTimeout), затем отвечает 504
+ */
+@Component
+public class HedgingRouteFilter extends ZuulFilter {
+
+    /**
+     * сколько раз выбирать экземпляр для второго запроса, прежде чем отказаться от него
+     */
+    private static final int CHOOSE_ATTEMPTS = 3;
+
+    private final LoadBalancerClient loadBalancer;
+
+    private final ProxyRequestHelper helper;
+
+    private final HttpClient httpClient;
+
+    private final long readTimeoutNanos;
+
+    private final RequestHedging requestHedging;
+
+    private final StreamingRoutes streamingRoutes;
+
+    /**
+     * @param loadBalancer - выбор экземпляра сервиса и учет статистики ribbon
+     * @param helper - фильтрация заголовков и установка ответа, как в RibbonRoutingFilter
+     * @param requestFactory - общий пул соединений Apache HttpClient
+     * @param requestHedging - задержка, бюджет и метрики дублирования
+     * @param streamingRoutes - потоковые маршруты
+     */
+    public HedgingRouteFilter(LoadBalancerClient loadBalancer, ProxyRequestHelper helper,
+                              PooledClientHttpRequestFactory requestFactory, RequestHedging requestHedging,
+                              StreamingRoutes streamingRoutes) {
+        this.loadBalancer = loadBalancer;
+        this.helper = helper;
+        this.httpClient = requestFactory.getHttpClient();
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(requestFactory.getReadTimeout());
+        this.requestHedging = requestHedging;
+        this.streamingRoutes = streamingRoutes;
+    }
+
+    @Override
+    public String filterType() {
+        return ROUTE_TYPE;
+    }
+
+    @Override
+    public int filterOrder() {
+        return RIBBON_ROUTING_FILTER_ORDER - 2;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        String route = (String) ctx.get(PROXY_KEY);
+        String method = ctx.getRequest().getMethod();
+        return ctx.getRouteHost() == null
+                && ctx.get(SERVICE_ID_KEY) != null
+                && ctx.sendZuulResponse()
+                && (HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method))
+                && requestHedging.isEnabled(route)
+                && !streamingRoutes.isStreaming(route);
+    }
+
+    @Override
+    public Object run() throws ZuulException {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        String serviceId = (String) ctx.get(SERVICE_ID_KEY);
+        RequestHedging.RouteHedging hedging = requestHedging.route((String) ctx.get(PROXY_KEY));
+        hedging.onRequest();
+
+        ServiceInstance primary = loadBalancer.choose(serviceId);
+        if (primary == null) {
+            throw new ZuulException("No instances available for " + serviceId,
+                    HttpStatus.SERVICE_UNAVAILABLE.value(), "no instances");
+        }
+        Race race = new Race();
+        long started = System.nanoTime();
+        long deadline = started + readTimeoutNanos;
+        Attempt first = new Attempt(serviceId, primary, buildRequest(ctx, primary), race);
+        Attempt second = null;
+        try {
+            Attempt winner;
+            if (!first.start()) {
+                //нет свободных потоков - запрос выполняется без дублирования
+                first.runInCallerThread();
+                winner = race.result.get(remaining(deadline), TimeUnit.NANOSECONDS);
+            } else {
+                try {
+                    winner = race.result.get(Math.min(hedging.getDelayNanos(), readTimeoutNanos),
+                            TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ex) {
+                    ServiceInstance other = chooseOther(serviceId, primary);
+                    if (other != null && hedging.tryHedge()) {
+                        second = new Attempt(serviceId, other, buildRequest(ctx, other), race);
+                        if (second.start()) {
+                            hedging.onHedgeFired();
+                        } else {
+                            //пул занят: второй запрос не отправлен, токен возвращается
+                            hedging.refundHedge();
+                            second = null;
+                        }
+                    }
+                    winner = race.result.get(remaining(deadline), TimeUnit.NANOSECONDS);
+                }
+            }
+            //время от первого запроса до первого ответа, а не время победителя: иначе быстрый второй запрос
+            //заменял бы медленный ответ первого, и задержка снижалась бы до упора в бюджет
+            hedging.record(System.nanoTime() - started);
+            if (winner == second) {
+                hedging.onHedgeWon();
+            }
+            RequestTimings.current().setUpstream(winner.instance.getHost(), winner.instance.getPort());
+            setResponse(ctx, winner);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw new ZuulException(cause, HttpStatus.BAD_GATEWAY.value(), cause.getMessage());
+        } catch (TimeoutException ex) {
+            //первый запрос прерывается без ответа: в статистику идет хотя бы прошедшее время
+            hedging.record(System.nanoTime() - started);
+            throw new ZuulException(ex, HttpStatus.GATEWAY_TIMEOUT.value(), "upstream read timeout");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ZuulException(ex, HttpStatus.SERVICE_UNAVAILABLE.value(), "interrupted");
+        } catch (IOException ex) {
+            throw new ZuulException(ex, HttpStatus.INTERNAL_SERVER_ERROR.value(), ex.getMessage());
+        } finally {
+            first.cancel();
+            if (second != null) {
+                second.cancel();
+            }
+            //RibbonRoutingFilter не должен отправлять запрос еще раз, ответ отправит SendResponseFilter
+            ctx.remove(SERVICE_ID_KEY);
+        }
+        return null;
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private ServiceInstance chooseOther(String serviceId, ServiceInstance primary) {
+        for (int i = 0; i < CHOOSE_ATTEMPTS; i++) {
+            ServiceInstance instance = loadBalancer.choose(serviceId);
+            if (instance != null && (!instance.getHost().equals(primary.getHost())
+                    || instance.getPort() != primary.getPort())) {
+                return instance;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * собирается в потоке запроса: ProxyRequestHelper читает RequestContext
+     */
+    private HttpUriRequest buildRequest(RequestContext ctx, ServiceInstance instance) {
+        HttpServletRequest request = ctx.getRequest();
+        String uri = instance.getUri() + helper.buildZuulRequestURI(request);
+        if (request.getQueryString() != null) {
+            uri += "?" + request.getQueryString();
+        }
+        RequestBuilder builder = RequestBuilder.create(request.getMethod()).setUri(uri);
+        for (Map.Entry<String, List<String>> header : helper.buildZuulRequestHeaders(request).entrySet()) {
+            header.getValue().forEach(value -> builder.addHeader(header.getKey(), value));
+        }
+        return builder.build();
+    }
+
+    private void setResponse(RequestContext ctx, Attempt winner) throws IOException {
+        MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
+        for (Header header : winner.headers) {
+            headers.add(header.getName(), header.getValue());
+        }
+        helper.setResponse(winner.status, winner.body == null ? null : new ByteArrayInputStream(winner.body),
+                headers);
+    }
+
+    /**
+     * ответ, пришедший первым; ошибка - только если завершились с ошибкой все отправленные запросы
+     */
+    private static final class Race {
+
+        private final CompletableFuture<Attempt> result = new CompletableFuture<>();
+
+        private final AtomicInteger running = new AtomicInteger();
+    }
+
+    /**
+     * один запрос к одному экземпляру сервиса
+     */
+    private final class Attempt implements Runnable {
+
+        private final String serviceId;
+
+        private final ServiceInstance instance;
+
+        private final HttpUriRequest request;
+
+        private final Race race;
+
+        private int status;
+
+        private Header[] headers;
+
+        private byte[] body;
+
+        private Attempt(String serviceId, ServiceInstance instance, HttpUriRequest request, Race race) {
+            this.serviceId = serviceId;
+            this.instance = instance;
+            this.request = request;
+            this.race = race;
+        }
+
+        /**
+         * @return - false, если в пуле нет свободного потока, и запрос нужно выполнить в текущем потоке
+         */
+        private boolean start() {
+            race.running.incrementAndGet();
+            try {
+                requestHedging.getExecutor().execute(this);
+                return true;
+            } catch (RejectedExecutionException ex) {
+                //запрос не отправлен: иначе ошибка другого запроса не завершила бы гонку
+                race.running.decrementAndGet();
+                return false;
+            }
+        }
+
+        /**
+         * выполняет запрос в текущем потоке, если start вернул false
+         */
+        private void runInCallerThread() {
+            race.running.incrementAndGet();
+            run();
+        }
+
+        @Override
+        public void run() {
+            try {
+                //execute ведет статистику ribbon по экземпляру, как и обычная маршрутизация
+                loadBalancer.execute(serviceId, instance, selected -> {
+                    HttpResponse response = httpClient.execute(request);
+                    try {
+                        status = response.getStatusLine().getStatusCode();
+                        headers = response.getAllHeaders();
+                        body = response.getEntity() == null ? null : EntityUtils.toByteArray(response.getEntity());
+                    } finally {
+                        HttpClientUtils.closeQuietly(response);
+                    }
+                    race.result.complete(this);
+                    return null;
+                });
+            } catch (IOException | RuntimeException ex) {
+                //прерванный проигравший запрос не считается ошибкой
+                if (race.running.decrementAndGet() == 0 && !race.result.isDone()) {
+                    race.result.completeExceptionally(ex);
+                }
+            }
+        }
+
+        private void cancel() {
+            if (race.result.isCompletedExceptionally() || race.result.getNow(null) != this) {
+                request.abort();
+            }
+        }
+    }
+}
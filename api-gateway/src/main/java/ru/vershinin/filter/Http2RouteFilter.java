@@ -0,0 +1,164 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import ru.vershinin.config.Http2ClientHttpRequestFactory;
+import ru.vershinin.service.RequestTimings;
+import ru.vershinin.service.StreamingRoutes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.RIBBON_ROUTING_FILTER_ORDER;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.ROUTE_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SERVICE_ID_KEY;
+
+/**
+ * маршрутизация запросов к сервисам по h2c вместо RibbonRoutingFilter, включается свойством gateway.http2.enabled.
+ * экземпляр выбирает ribbon, запрос уходит через общий java.net.http.HttpClient, который мультиплексирует
+ * запросы к экземпляру в одном соединении. тело ответа не буферизуется - его передает клиенту SendResponseFilter.
+ * потоковые маршруты и маршруты с дублированием запросов остаются на HTTP/1.1
+ */
+@Component
+@ConditionalOnProperty(value = "gateway.http2.enabled", havingValue = "true")
+public class Http2RouteFilter extends ZuulFilter {
+
+    private final LoadBalancerClient loadBalancer;
+
+    private final ProxyRequestHelper helper;
+
+    private final HttpClient httpClient;
+
+    private final Duration readTimeout;
+
+    private final StreamingRoutes streamingRoutes;
+
+    /**
+     * @param loadBalancer - выбор экземпляра сервиса и учет статистики ribbon
+     * @param helper - фильтрация заголовков и установка ответа, как в RibbonRoutingFilter
+     * @param requestFactory - общий клиент HTTP/2
+     * @param streamingRoutes - потоковые маршруты
+     */
+    public Http2RouteFilter(LoadBalancerClient loadBalancer, ProxyRequestHelper helper,
+                            Http2ClientHttpRequestFactory requestFactory, StreamingRoutes streamingRoutes) {
+        this.loadBalancer = loadBalancer;
+        this.helper = helper;
+        this.httpClient = requestFactory.getHttpClient();
+        this.readTimeout = requestFactory.getReadTimeout();
+        this.streamingRoutes = streamingRoutes;
+    }
+
+    @Override
+    public String filterType() {
+        return ROUTE_TYPE;
+    }
+
+    /**
+     * тот же порядок, что у StreamingRouteFilter: потоковые маршруты здесь пропускаются,
+     * а HedgingRouteFilter выполняется раньше и сам убирает service-id
+     */
+    @Override
+    public int filterOrder() {
+        return RIBBON_ROUTING_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        return ctx.getRouteHost() == null
+                && ctx.get(SERVICE_ID_KEY) != null
+                && ctx.sendZuulResponse()
+                && !streamingRoutes.isStreaming((String) ctx.get(PROXY_KEY));
+    }
+
+    @Override
+    public Object run() throws ZuulException {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        String serviceId = (String) ctx.get(SERVICE_ID_KEY);
+        try {
+            ServiceInstance instance = loadBalancer.choose(serviceId);
+            if (instance == null) {
+                throw new ZuulException("No instances available for " + serviceId,
+                        HttpStatus.SERVICE_UNAVAILABLE.value(), "no instances");
+            }
+            HttpServletRequest request = ctx.getRequest();
+            String path = buildPath(request);
+            HttpRequest.Builder builder = buildRequest(request);
+            //execute ведет статистику ribbon по экземпляру, как и обычная маршрутизация
+            HttpResponse<InputStream> response = loadBalancer.execute(serviceId, instance, selected -> {
+                RequestTimings.current().setUpstream(selected.getHost(), selected.getPort());
+                return send(builder.uri(URI.create(selected.getUri() + path)).build());
+            });
+
+            MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
+            response.headers().map().forEach(headers::addAll);
+            helper.setResponse(response.statusCode(), response.body(), headers);
+        } catch (IOException ex) {
+            throw new ZuulException(ex, HttpStatus.BAD_GATEWAY.value(), ex.getMessage());
+        } finally {
+            //RibbonRoutingFilter не должен отправлять запрос еще раз, ответ отправит SendResponseFilter
+            ctx.remove(SERVICE_ID_KEY);
+        }
+        return null;
+    }
+
+    private String buildPath(HttpServletRequest request) {
+        String path = helper.buildZuulRequestURI(request);
+        return request.getQueryString() == null ? path : path + "?" + request.getQueryString();
+    }
+
+    /**
+     * запрос без адреса экземпляра: заголовки и тело читаются из RequestContext в потоке запроса
+     */
+    private HttpRequest.Builder buildRequest(HttpServletRequest request) throws IOException {
+        HttpRequest.BodyPublisher body;
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > 0 || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null) {
+            InputStream content = request.getInputStream();
+            HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(() -> content);
+            body = contentLength > 0 ? HttpRequest.BodyPublishers.fromPublisher(publisher, contentLength) : publisher;
+        } else {
+            body = HttpRequest.BodyPublishers.noBody();
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .timeout(readTimeout)
+                .method(request.getMethod(), body);
+        MultiValueMap<String, String> headers = helper.buildZuulRequestHeaders(request);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!Http2ClientHttpRequestFactory.isRestrictedHeader(header.getKey())) {
+                header.getValue().forEach(value -> builder.header(header.getKey(), value));
+            }
+        }
+        return builder;
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import ru.vershinin.service.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_DECORATION_FILTER_ORDER;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+
+/**
+ * ограничивает частоту запросов аутентифицированного пользователя на каждом маршруте;
+ * при превышении отвечает 429 с заголовком Retry-After, не обращаясь к upstream
+ */
+@Component
+public class RateLimitFilter extends ZuulFilter {
+
+    private final RateLimiter rateLimiter;
+
+    private final boolean enabled;
+
+    public RateLimitFilter(RateLimiter rateLimiter, @Value("${gateway.rate-limit.enabled:false}") boolean enabled) {
+        this.rateLimiter = rateLimiter;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public String filterType() {
+        return PRE_TYPE;
+    }
+
+    /**
+     * сразу после PreDecorationFilter, до кэша ответов
+     */
+    @Override
+    public int filterOrder() {
+        return PRE_DECORATION_FILTER_ORDER + 1;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        return enabled && ctx.get(PROXY_KEY) != null && ctx.sendZuulResponse();
+    }
+
+    @Override
+    public Object run() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+
+        RequestContext ctx = RequestContext.getCurrentContext();
+        long waitNanos = rateLimiter.tryAcquire(authentication.getName(), (String) ctx.get(PROXY_KEY));
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            ctx.setSendZuulResponse(false);
+            ctx.setResponseStatusCode(HttpStatus.TOO_MANY_REQUESTS.value());
+            ctx.addZuulResponseHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        }
+        return null;
+    }
+}
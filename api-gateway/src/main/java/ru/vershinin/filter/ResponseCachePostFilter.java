@@ -0,0 +1,108 @@
+package ru.vershinin.filter;
+
+import com.netflix.util.Pair;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import ru.vershinin.service.ResponseCache;
+import ru.vershinin.service.ResponseCache.CachedResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.POST_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SEND_RESPONSE_FILTER_ORDER;
+
+/**
+ * сохраняет успешный ответ upstream в кэш, если для запроса был рассчитан ключ в ResponseCachePreFilter
+ * и ответ не зависит (Vary) от заголовков запроса вне ключа
+ */
+@Component
+public class ResponseCachePostFilter extends ZuulFilter {
+
+    private final ResponseCache responseCache;
+
+    public ResponseCachePostFilter(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public String filterType() {
+        return POST_TYPE;
+    }
+
+    /**
+     * до SendResponseFilter, который отправляет тело клиенту
+     */
+    @Override
+    public int filterOrder() {
+        return SEND_RESPONSE_FILTER_ORDER - 10;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        return ctx.get(ResponseCachePreFilter.CACHE_KEY) != null
+                && ctx.get(ResponseCachePreFilter.CACHE_HIT_KEY) == null
+                && ctx.getThrowable() == null
+                && ctx.getResponseStatusCode() == HttpStatus.OK.value()
+                && ctx.getResponseDataStream() != null;
+    }
+
+    @Override
+    public Object run() throws ZuulException {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        if (!responseCache.isVaryCovered(originHeader(ctx.getOriginResponseHeaders(), HttpHeaders.VARY))) {
+            return null;
+        }
+        String cacheControl = originHeader(ctx.getOriginResponseHeaders(), HttpHeaders.CACHE_CONTROL);
+
+        InputStream upstream = ctx.getResponseDataStream();
+        byte[] body;
+        try {
+            body = upstream.readNBytes(responseCache.getMaxEntryBytes() + 1);
+        } catch (IOException ex) {
+            throw new ZuulException(ex, HttpStatus.BAD_GATEWAY.value(), ex.getMessage());
+        }
+        if (body.length > responseCache.getMaxEntryBytes()) {
+            //слишком большой ответ: отдаем клиенту прочитанную часть и остаток потока, не кэшируя
+            ctx.setResponseDataStream(new SequenceInputStream(new ByteArrayInputStream(body), upstream));
+            return null;
+        }
+        ctx.setResponseDataStream(new ByteArrayInputStream(body));
+
+        List<Pair<String, String>> headers = ctx.getZuulResponseHeaders();
+        String[] names = new String[headers.size()];
+        String[] values = new String[headers.size()];
+        for (int i = 0; i < headers.size(); i++) {
+            names[i] = headers.get(i).first();
+            values[i] = headers.get(i).second();
+        }
+        responseCache.put((String) ctx.get(ResponseCachePreFilter.CACHE_KEY),
+                new CachedResponse(ctx.getResponseStatusCode(), names, values, ctx.getResponseGZipped(), body),
+                cacheControl);
+        return null;
+    }
+
+    /**
+     * @return - значения всех заголовков name через запятую или null
+     */
+    private static String originHeader(List<Pair<String, String>> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        String value = null;
+        for (Pair<String, String> header : headers) {
+            if (name.equalsIgnoreCase(header.first())) {
+                value = value == null ? header.second() : value + "," + header.second();
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,84 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import ru.vershinin.service.ResponseCache;
+import ru.vershinin.service.ResponseCache.CachedResponse;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_DECORATION_FILTER_ORDER;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+
+/**
+ * отдает GET-ответ из кэша, не обращаясь к upstream; при промахе оставляет ключ для ResponseCachePostFilter
+ */
+@Component
+public class ResponseCachePreFilter extends ZuulFilter {
+
+    static final String CACHE_KEY = "responseCacheKey";
+
+    static final String CACHE_HIT_KEY = "responseCacheHit";
+
+    private final ResponseCache responseCache;
+
+    public ResponseCachePreFilter(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public String filterType() {
+        return PRE_TYPE;
+    }
+
+    /**
+     * после PreDecorationFilter, который определяет маршрут, и после RateLimitFilter
+     */
+    @Override
+    public int filterOrder() {
+        return PRE_DECORATION_FILTER_ORDER + 2;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        return HttpMethod.GET.matches(ctx.getRequest().getMethod())
+                && responseCache.isEnabled((String) ctx.get(PROXY_KEY))
+                && ctx.sendZuulResponse();
+    }
+
+    @Override
+    public Object run() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        HttpServletRequest request = ctx.getRequest();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String key = responseCache.key((String) ctx.get(PROXY_KEY), request.getRequestURI(), request.getQueryString(),
+                request.getHeader("Accept"), authentication == null ? null : authentication.getName());
+
+        CachedResponse cached = responseCache.get(key);
+        if (cached == null) {
+            ctx.set(CACHE_KEY, key);
+            return null;
+        }
+
+        //ответ из кэша: маршрутизация пропускается, SendResponseFilter отправит сохраненное тело
+        ctx.set(CACHE_HIT_KEY, Boolean.TRUE);
+        ctx.setSendZuulResponse(false);
+        ctx.setResponseStatusCode(cached.getStatus());
+        String[] names = cached.getHeaderNames();
+        String[] values = cached.getHeaderValues();
+        for (int i = 0; i < names.length; i++) {
+            ctx.addZuulResponseHeader(names[i], values[i]);
+        }
+        ctx.setResponseGZipped(cached.isGzipped());
+        ctx.setOriginContentLength((long) cached.getBody().length);
+        ctx.setResponseDataStream(new ByteArrayInputStream(cached.getBody()));
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.vershinin.filter;
+
+import com.netflix.client.IResponse;
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import ru.vershinin.model.GatewayStage;
+import ru.vershinin.service.RequestTimings;
+
+import java.net.URI;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+
+/**
+ * отметка границы этапа внутри Zuul: закрывает этап stage, начавшийся с предыдущей отметки.
+ * экземпляры создаются в RequestTimingConfig
+ */
+public class StageTimingFilter extends ZuulFilter {
+
+    /**
+     * ответ ribbon, который AbstractRibbonCommand кладет в RequestContext
+     */
+    private static final String RIBBON_RESPONSE_KEY = "ribbonResponse";
+
+    private final String filterType;
+
+    private final int filterOrder;
+
+    private final GatewayStage stage;
+
+    /**
+     * @param filterType - тип фильтра zuul
+     * @param filterOrder - порядок фильтра
+     * @param stage - этап, который закрывает фильтр
+     */
+    public StageTimingFilter(String filterType, int filterOrder, GatewayStage stage) {
+        this.filterType = filterType;
+        this.filterOrder = filterOrder;
+        this.stage = stage;
+    }
+
+    @Override
+    public String filterType() {
+        return filterType;
+    }
+
+    @Override
+    public int filterOrder() {
+        return filterOrder;
+    }
+
+    /**
+     * ответ upstream замеряется, только если запрос действительно ушел в upstream
+     */
+    @Override
+    public boolean shouldFilter() {
+        return stage != GatewayStage.UPSTREAM || RequestContext.getCurrentContext().sendZuulResponse();
+    }
+
+    @Override
+    public Object run() {
+        RequestTimings timings = RequestTimings.current();
+        timings.lap(stage, System.nanoTime());
+        RequestContext ctx = RequestContext.getCurrentContext();
+        if (stage == GatewayStage.SECURITY) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && !(authentication instanceof AnonymousAuthenticationToken)) {
+                timings.setPrincipal(authentication.getName());
+            }
+        } else if (stage == GatewayStage.ZUUL_PRE) {
+            timings.setRoute((String) ctx.get(PROXY_KEY));
+        } else if (stage == GatewayStage.UPSTREAM) {
+            //собственные route-фильтры записывают экземпляр сами
+            Object ribbonResponse = ctx.get(RIBBON_RESPONSE_KEY);
+            if (ribbonResponse instanceof IResponse) {
+                URI uri = ((IResponse) ribbonResponse).getRequestedURI();
+                if (uri != null) {
+                    timings.setUpstream(uri.getHost(), uri.getPort());
+                }
+            }
+        }
+        return null;
+    }
+}
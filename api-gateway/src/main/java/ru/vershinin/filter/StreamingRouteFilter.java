@@ -0,0 +1,237 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import ru.vershinin.config.PooledClientHttpRequestFactory;
+import ru.vershinin.service.BufferPool;
+import ru.vershinin.service.RequestTimings;
+import ru.vershinin.service.StreamingRoutes;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.RIBBON_ROUTING_FILTER_ORDER;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.ROUTE_TYPE;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SERVICE_ID_KEY;
+
+/**
+ * маршрутизация потоковых маршрутов (gateway.streaming.routes) вместо RibbonRoutingFilter.
+ * RibbonRoutingFilter копирует тело запроса в массив, чтобы его можно было отправить повторно; здесь тело
+ * передается в upstream по мере чтения, а ответ - клиенту, через буферы фиксированного размера из BufferPool,
+ * поэтому память на запрос не зависит от размера тела. повторных попыток нет: тело уже прочитано.
+ * ответ пишется напрямую в ответ сервлета, SendResponseFilter для таких запросов пропускается по RESPONSE_SENT_KEY.
+ * если upstream обрывается после отправки заголовков клиенту, ответить 502 уже нельзя: исключение сохраняется
+ * в ABORTED_ATTRIBUTE, и фильтр из StreamingConfig закрывает соединение с клиентом
+ */
+@Component
+public class StreamingRouteFilter extends ZuulFilter {
+
+    public static final String RESPONSE_SENT_KEY = "streamingResponseSent";
+
+    public static final String ABORTED_ATTRIBUTE = StreamingRouteFilter.class.getName() + ".aborted";
+
+    private final LoadBalancerClient loadBalancer;
+
+    private final ProxyRequestHelper helper;
+
+    private final HttpClient httpClient;
+
+    private final BufferPool bufferPool;
+
+    private final StreamingRoutes streamingRoutes;
+
+    /**
+     * @param loadBalancer - выбор экземпляра сервиса и учет статистики ribbon
+     * @param helper - фильтрация заголовков, как в RibbonRoutingFilter
+     * @param requestFactory - общий пул соединений Apache HttpClient
+     * @param bufferPool - буферы для копирования тел
+     * @param streamingRoutes - потоковые маршруты
+     */
+    public StreamingRouteFilter(LoadBalancerClient loadBalancer, ProxyRequestHelper helper,
+                                PooledClientHttpRequestFactory requestFactory, BufferPool bufferPool,
+                                StreamingRoutes streamingRoutes) {
+        this.loadBalancer = loadBalancer;
+        this.helper = helper;
+        this.httpClient = requestFactory.getHttpClient();
+        this.bufferPool = bufferPool;
+        this.streamingRoutes = streamingRoutes;
+    }
+
+    @Override
+    public String filterType() {
+        return ROUTE_TYPE;
+    }
+
+    @Override
+    public int filterOrder() {
+        return RIBBON_ROUTING_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public boolean shouldFilter() {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        return ctx.getRouteHost() == null
+                && ctx.get(SERVICE_ID_KEY) != null
+                && ctx.sendZuulResponse()
+                && streamingRoutes.isStreaming((String) ctx.get(PROXY_KEY));
+    }
+
+    @Override
+    public Object run() throws ZuulException {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        String serviceId = (String) ctx.get(SERVICE_ID_KEY);
+        try {
+            ServiceInstance instance = loadBalancer.choose(serviceId);
+            if (instance == null) {
+                throw new ZuulException("No instances available for " + serviceId,
+                        HttpStatus.SERVICE_UNAVAILABLE.value(), "no instances");
+            }
+            //execute ведет статистику ribbon по экземпляру, как и обычная маршрутизация
+            loadBalancer.execute(serviceId, instance, selected -> {
+                RequestTimings.current().setUpstream(selected.getHost(), selected.getPort());
+                forward(ctx, selected);
+                return null;
+            });
+        } catch (IOException ex) {
+            HttpServletResponse response = ctx.getResponse();
+            if (!response.isCommitted()) {
+                //заголовки upstream не должны попасть в ответ об ошибке
+                response.reset();
+                throw new ZuulException(ex, HttpStatus.BAD_GATEWAY.value(), ex.getMessage());
+            }
+            ctx.getRequest().setAttribute(ABORTED_ATTRIBUTE, ex);
+        } finally {
+            //RibbonRoutingFilter не должен отправлять запрос еще раз, ответ уже записан
+            ctx.remove(SERVICE_ID_KEY);
+        }
+        return null;
+    }
+
+    private void forward(RequestContext ctx, ServiceInstance instance) throws IOException {
+        HttpServletRequest request = ctx.getRequest();
+        HttpServletResponse response = ctx.getResponse();
+
+        String uri = instance.getUri() + helper.buildZuulRequestURI(request);
+        if (request.getQueryString() != null) {
+            uri += "?" + request.getQueryString();
+        }
+        RequestBuilder builder = RequestBuilder.create(request.getMethod()).setUri(uri);
+        MultiValueMap<String, String> headers = helper.buildZuulRequestHeaders(request);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            //сжатие ответа определяет клиент, тело передается как есть
+            if (!HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(header.getKey())) {
+                header.getValue().forEach(value -> builder.addHeader(header.getKey(), value));
+            }
+        }
+        if (request.getHeader(HttpHeaders.ACCEPT_ENCODING) != null) {
+            builder.addHeader(HttpHeaders.ACCEPT_ENCODING, request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        }
+        if (request.getContentLengthLong() > 0 || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null) {
+            builder.setEntity(new StreamingEntity(request.getInputStream(), request.getContentLengthLong(),
+                    request.getContentType()));
+        }
+
+        HttpUriRequest upstreamRequest = builder.build();
+        HttpResponse upstreamResponse = httpClient.execute(upstreamRequest);
+        try {
+            ctx.set(RESPONSE_SENT_KEY, true);
+            ctx.setResponseStatusCode(upstreamResponse.getStatusLine().getStatusCode());
+            for (Header header : upstreamResponse.getAllHeaders()) {
+                if (helper.isIncludedHeader(header.getName())) {
+                    response.addHeader(header.getName(), header.getValue());
+                }
+            }
+            HttpEntity entity = upstreamResponse.getEntity();
+            if (entity != null) {
+                if (entity.getContentLength() >= 0) {
+                    response.setContentLengthLong(entity.getContentLength());
+                }
+                try (InputStream in = entity.getContent()) {
+                    copy(in, response.getOutputStream());
+                }
+            }
+        } catch (IOException ex) {
+            //недочитанное соединение не возвращается в пул
+            upstreamRequest.abort();
+            throw ex;
+        } finally {
+            HttpClientUtils.closeQuietly(upstreamResponse);
+        }
+    }
+
+    private void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = bufferPool.acquire();
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * тело запроса клиента, которое HttpClient читает один раз при отправке
+     */
+    private final class StreamingEntity extends AbstractHttpEntity {
+
+        private final InputStream content;
+
+        private final long length;
+
+        private StreamingEntity(InputStream content, long length, String contentType) {
+            this.content = content;
+            this.length = length;
+            setContentType(contentType);
+            setChunked(length < 0);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return content;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            copy(content, out);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+    }
+}
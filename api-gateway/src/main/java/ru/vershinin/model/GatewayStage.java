@@ -0,0 +1,45 @@
+package ru.vershinin.model;
+
+/**
+ * этап обработки запроса в шлюзе, значение тега stage метрики gateway.request.stage
+ */
+public enum GatewayStage {
+    /**
+     * цепочка Spring Security, включая AuthenticationFilter, до первого pre-фильтра Zuul
+     */
+    SECURITY("security"),
+    /**
+     * AuthenticationFilter: поиск в кэше и проверка токена
+     */
+    AUTHENTICATION("authentication"),
+    /**
+     * обращение в auth-service за проверкой токена
+     */
+    JWT_REMOTE("jwt-remote"),
+    /**
+     * pre-фильтры Zuul: определение маршрута, ограничения, кэш ответов
+     */
+    ZUUL_PRE("zuul-pre"),
+    /**
+     * route-фильтр Zuul: ожидание заголовков ответа upstream
+     */
+    UPSTREAM("upstream"),
+    /**
+     * post-фильтры Zuul и передача тела ответа клиенту
+     */
+    RESPONSE("response"),
+    /**
+     * весь запрос
+     */
+    TOTAL("total");
+
+    private final String tag;
+
+    GatewayStage(String tag) {
+        this.tag = tag;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.vershinin.model;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * неизменяемый объект аутентификации по проверенному токену.
+ * различных наборов ролей немного, поэтому списки GrantedAuthority хранятся в одном экземпляре на набор
+ * и используются всеми объектами аутентификации без копирования (UsernamePasswordAuthenticationToken копирует
+ * список при каждом создании). объект хранится в кэше токенов и общий для запросов, поэтому не изменяется
+ */
+public final class JwtAuthentication implements Authentication {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * наборы сверх этого числа не запоминаются, чтобы токены с произвольными ролями не заполняли память
+     */
+    private static final int MAX_AUTHORITY_SETS = 256;
+
+    private static final ConcurrentMap<List<String>, List<GrantedAuthority>> AUTHORITY_SETS = new ConcurrentHashMap<>();
+
+    static {
+        for (UserRole role : UserRole.values()) {
+            authorities(Collections.singletonList("ROLE_" + role.name()));
+        }
+    }
+
+    private final String name;
+
+    private final List<GrantedAuthority> authorities;
+
+    private JwtAuthentication(String name, List<GrantedAuthority> authorities) {
+        this.name = name;
+        this.authorities = authorities;
+    }
+
+    /**
+     * @param name - имя пользователя
+     * @param authorityNames - роли из токена
+     * @return - объект аутентификации с общим списком ролей
+     */
+    public static JwtAuthentication of(String name, List<String> authorityNames) {
+        return new JwtAuthentication(name, authorities(authorityNames == null
+                ? Collections.emptyList()
+                : authorityNames));
+    }
+
+    /**
+     * @param authorityNames - роли из токена
+     * @return - неизменяемый список ролей, один экземпляр на набор
+     */
+    public static List<GrantedAuthority> authorities(List<String> authorityNames) {
+        List<GrantedAuthority> authorities = AUTHORITY_SETS.get(authorityNames);
+        if (authorities != null) {
+            return authorities;
+        }
+        List<GrantedAuthority> created = new ArrayList<>(authorityNames.size());
+        for (String authorityName : authorityNames) {
+            created.add(new SimpleGrantedAuthority(authorityName));
+        }
+        created = Collections.unmodifiableList(created);
+        if (AUTHORITY_SETS.size() >= MAX_AUTHORITY_SETS) {
+            return created;
+        }
+        List<GrantedAuthority> existing = AUTHORITY_SETS.putIfAbsent(List.copyOf(authorityNames), created);
+        return existing != null ? existing : created;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public Object getCredentials() {
+        return null;
+    }
+
+    @Override
+    public Object getDetails() {
+        return null;
+    }
+
+    @Override
+    public Object getPrincipal() {
+        return name;
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return true;
+    }
+
+    @Override
+    public void setAuthenticated(boolean isAuthenticated) {
+        throw new IllegalArgumentException("JwtAuthentication is shared between requests and cannot be changed");
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " [Principal=" + name + ", Granted Authorities=" + authorities + "]";
+    }
+}
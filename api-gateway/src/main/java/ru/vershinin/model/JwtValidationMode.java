@@ -0,0 +1,15 @@
+package ru.vershinin.model;
+
+/**
+ * режим валидации токена в шлюзе
+ */
+public enum JwtValidationMode {
+    /**
+     * каждый токен проверяется в auth-service
+     */
+    REMOTE,
+    /**
+     * токен проверяется в шлюзе, auth-service вызывается только если локальная проверка не может принять решение
+     */
+    LOCAL
+}
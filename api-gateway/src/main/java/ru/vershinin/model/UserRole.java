@@ -1,5 +1,14 @@
 package ru.vershinin.model;
 
 public enum UserRole {
-    USER
+    USER;
+
+    /**
+     * бит роли в компактном токене auth-service (claim "r").
+     * новые роли добавляются только в конец, одинаково во всех сервисах
+     * @return - маска с одним битом
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
 }
@@ -0,0 +1,306 @@
+package ru.vershinin.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.vershinin.model.GatewayStage;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * журнал доступа шлюза: маршрут, пользователь, статус, экземпляр upstream и время этапов каждого запроса.
+ * поток запроса только копирует поля в заранее выделенную ячейку кольцевого буфера (без блокировок:
+ * номер ячейки занимается CAS, готовность публикуется volatile-записью), форматирование и запись в файл
+ * делает отдельный поток порциями. если буфер заполнен, запись отбрасывается и учитывается
+ * в метрике gateway.access-log.dropped, запрос не ждет. включается свойством gateway.access-log.enabled
+ */
+@Component
+@ConditionalOnProperty(value = "gateway.access-log.enabled", havingValue = "true")
+public class AccessLog {
+
+    private static final GatewayStage[] STAGES = GatewayStage.values();
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX")
+            .withZone(ZoneOffset.UTC);
+
+    /**
+     * пауза потока записи, когда буфер пуст: за это время накапливается следующая порция
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Logger log = LoggerFactory.getLogger(AccessLog.class);
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    /**
+     * следующий номер записи, который займет поток запроса
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * следующий номер записи, который прочитает поток записи; ячейки с меньшими номерами свободны
+     */
+    private final AtomicLong consumed = new AtomicLong();
+
+    private final Counter dropped;
+
+    private final AccessLogFile file;
+
+    private final ByteBuffer buffer;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final StringBuilder line = new StringBuilder(512);
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    private boolean failing;
+
+    /**
+     * @param path - файл журнала
+     * @param capacity - число записей в кольцевом буфере, округляется вверх до степени двойки
+     * @param batchSize - размер порции, записываемой в файл за один раз
+     * @param maxFileSize - размер файла, после которого он ротируется
+     * @param maxHistory - число хранимых старых файлов
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public AccessLog(@Value("${gateway.access-log.file:logs/access.log}") String path,
+                     @Value("${gateway.access-log.capacity:65536}") int capacity,
+                     @Value("${gateway.access-log.batch-size:256KB}") DataSize batchSize,
+                     @Value("${gateway.access-log.max-file-size:100MB}") DataSize maxFileSize,
+                     @Value("${gateway.access-log.max-history:10}") int maxHistory,
+                     MeterRegistry meterRegistry) throws IOException {
+        this(Paths.get(path), capacity, (int) batchSize.toBytes(), maxFileSize.toBytes(), maxHistory, meterRegistry);
+    }
+
+    public AccessLog(Path path, int capacity, int batchSize, long maxFileSize, int maxHistory,
+                     MeterRegistry meterRegistry) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.file = new AccessLogFile(path, maxFileSize, maxHistory);
+        this.buffer = ByteBuffer.allocateDirect(batchSize);
+        this.dropped = Counter.builder("gateway.access-log.dropped")
+                .description("Access log records dropped because the ring buffer was full")
+                .register(meterRegistry);
+        Gauge.builder("gateway.access-log.backlog", this, AccessLog::backlog)
+                .description("Access log records waiting to be written")
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::drain, "access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * копирует запрос в кольцевой буфер; не блокируется и не выделяет память
+     * @param request - запрос клиента
+     * @param status - статус ответа
+     * @param timings - замеры и маршрут запроса
+     */
+    public void append(HttpServletRequest request, int status, RequestTimings timings) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.timestamp = System.currentTimeMillis();
+        slot.method = request.getMethod();
+        slot.uri = request.getRequestURI();
+        slot.status = status;
+        slot.route = timings.getRoute();
+        slot.principal = timings.getPrincipal();
+        slot.upstreamHost = timings.getUpstreamHost();
+        slot.upstreamPort = timings.getUpstreamPort();
+        for (GatewayStage stage : STAGES) {
+            slot.stageNanos[stage.ordinal()] = timings.getNanos(stage);
+        }
+        slot.published = sequence;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private double backlog() {
+        return claimed.get() - consumed.get();
+    }
+
+    /**
+     * цикл потока записи: форматирует опубликованные записи по порядку номеров, пока не дойдет
+     * до незаполненной ячейки, и записывает накопленное в файл
+     */
+    private void drain() {
+        long next = 0;
+        while (true) {
+            boolean stopping = !running;
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.published == next) {
+                format(slot);
+                slot.clear();
+                next++;
+                consumed.lazySet(next);
+                continue;
+            }
+            flush();
+            if (stopping) {
+                break;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        try {
+            file.close();
+        } catch (IOException ex) {
+            log.warn("Failed to close access log: {}", ex.getLocalizedMessage());
+        }
+    }
+
+    private void format(Slot slot) {
+        line.setLength(0);
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(slot.timestamp), line);
+        line.append(' ').append(slot.method)
+                .append(' ').append(slot.uri)
+                .append(' ').append(slot.status)
+                .append(" route=").append(slot.route == null ? "-" : slot.route)
+                .append(" user=").append(slot.principal == null ? "-" : slot.principal)
+                .append(" instance=");
+        if (slot.upstreamHost == null) {
+            line.append('-');
+        } else {
+            line.append(slot.upstreamHost).append(':').append(slot.upstreamPort);
+        }
+        for (GatewayStage stage : STAGES) {
+            long nanos = slot.stageNanos[stage.ordinal()];
+            if (nanos >= 0) {
+                line.append(' ').append(stage.getTag()).append('=');
+                appendMillis(nanos);
+            }
+        }
+        line.append('\n');
+        encode();
+    }
+
+    /**
+     * миллисекунды с тремя знаками после точки
+     */
+    private void appendMillis(long nanos) {
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        line.append(micros / 1000).append('.');
+        if (fraction < 100) {
+            line.append('0');
+        }
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    private void encode() {
+        CharBuffer chars = CharBuffer.wrap(line);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            flush();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            file.write(buffer);
+            failing = false;
+        } catch (IOException ex) {
+            //порция теряется; в лог пишется только первая ошибка подряд
+            if (!failing) {
+                log.warn("Failed to write access log: {}", ex.getLocalizedMessage());
+                failing = true;
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * ячейка кольцевого буфера. поля заполняет поток запроса, занявший номер, и публикует их
+     * записью published; поток записи читает поля только после того, как увидит свой номер в published
+     */
+    private static final class Slot {
+
+        private volatile long published = -1;
+
+        private long timestamp;
+
+        private String method;
+
+        private String uri;
+
+        private int status;
+
+        private String route;
+
+        private String principal;
+
+        private String upstreamHost;
+
+        private int upstreamPort;
+
+        private final long[] stageNanos = new long[STAGES.length];
+
+        /**
+         * освобождает строки, чтобы буфер не удерживал их до перезаписи ячейки
+         */
+        private void clear() {
+            method = null;
+            uri = null;
+            route = null;
+            principal = null;
+            upstreamHost = null;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.vershinin.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * файл журнала доступа с ротацией по размеру: если очередная порция не помещается в maxFileSize,
+ * текущий файл переименовывается в access.log.1, прежние сдвигаются на один номер,
+ * файлы с номером больше maxHistory удаляются. используется только потоком записи AccessLog
+ */
+final class AccessLogFile implements Closeable {
+
+    private final Path path;
+
+    private final long maxFileSize;
+
+    private final int maxHistory;
+
+    private FileChannel channel;
+
+    private long size;
+
+    /**
+     * @param path - путь к текущему файлу
+     * @param maxFileSize - максимальный размер файла, байт
+     * @param maxHistory - число хранимых старых файлов
+     */
+    AccessLogFile(Path path, long maxFileSize, int maxHistory) throws IOException {
+        this.path = path;
+        this.maxFileSize = maxFileSize;
+        this.maxHistory = maxHistory;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        open();
+    }
+
+    /**
+     * записывает порцию целиком в один файл
+     * @param buffer - данные от position до limit
+     */
+    void write(ByteBuffer buffer) throws IOException {
+        if (size > 0 && size + buffer.remaining() > maxFileSize) {
+            rotate();
+        }
+        while (buffer.hasRemaining()) {
+            size += channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+        Files.deleteIfExists(archive(maxHistory));
+        for (int i = maxHistory - 1; i >= 1; i--) {
+            Path from = archive(i);
+            if (Files.exists(from)) {
+                Files.move(from, archive(i + 1), REPLACE_EXISTING);
+            }
+        }
+        if (maxHistory > 0) {
+            Files.move(path, archive(1), REPLACE_EXISTING);
+        } else {
+            Files.delete(path);
+        }
+        open();
+    }
+
+    private Path archive(int index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+        size = channel.size();
+    }
+}
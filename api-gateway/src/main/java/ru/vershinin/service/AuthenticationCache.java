@@ -0,0 +1,122 @@
+package ru.vershinin.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ограниченный по размеру кэш проверенных токенов.
+ * ключ - TokenDigest (SHA-256 от токена), сам токен в памяти не хранится.
+ * запись живет до exp токена, но не дольше security.jwt.cache.max-ttl.
+ * счетчики попаданий, промахов и вытеснений доступны в actuator как cache.* с тегом cache=jwt-authentication
+ */
+@Component
+public class AuthenticationCache {
+
+    public static final String CACHE_NAME = "jwt-authentication";
+
+    private final Cache<TokenDigest, CachedAuthentication> cache;
+
+    @Autowired
+    public AuthenticationCache(@Value("${security.jwt.cache.maximum-size:10000}") long maximumSize,
+                               @Value("${security.jwt.cache.max-ttl:5m}") Duration maxTtl,
+                               MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry(maxTtl.toNanos()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * @param token - токен полученный из заголовка запроса
+     * @return - ключ кэша для токена
+     */
+    public TokenDigest digest(String token) {
+        return TokenDigest.of(token, 0);
+    }
+
+    /**
+     * @param header - заголовок Authorization
+     * @param offset - начало токена в заголовке, после префикса
+     * @return - ключ кэша для токена, подстрока с токеном не создается
+     */
+    public TokenDigest digest(String header, int offset) {
+        return TokenDigest.of(header, offset);
+    }
+
+    /**
+     * @param key - ключ, полученный методом digest
+     * @return - объект аутентификации или null, если токена нет в кэше или срок его действия истек
+     */
+    public Authentication getIfPresent(TokenDigest key) {
+        CachedAuthentication cached = cache.getIfPresent(key);
+        return cached == null ? null : cached.authentication;
+    }
+
+    /**
+     * @param key - ключ, полученный методом digest
+     * @param authentication - объект аутентификации, построенный по проверенному токену
+     * @param expiration - срок действия токена, null - запись живет max-ttl
+     */
+    public void put(TokenDigest key, Authentication authentication, Date expiration) {
+        long expiresAtMillis = expiration == null ? Long.MAX_VALUE : expiration.getTime();
+        cache.put(key, new CachedAuthentication(authentication, expiresAtMillis));
+    }
+
+    private static final class CachedAuthentication {
+
+        private final Authentication authentication;
+
+        private final long expiresAtMillis;
+
+        private CachedAuthentication(Authentication authentication, long expiresAtMillis) {
+            this.authentication = authentication;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * время жизни записи - до exp токена, но не больше maxTtl
+     */
+    private static final class TokenExpiry implements Expiry<TokenDigest, CachedAuthentication> {
+
+        private final long maxTtlNanos;
+
+        private TokenExpiry(long maxTtlNanos) {
+            this.maxTtlNanos = maxTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(TokenDigest key, CachedAuthentication value, long currentTime) {
+            if (value.expiresAtMillis == Long.MAX_VALUE) {
+                return maxTtlNanos;
+            }
+            long untilExpiration = TimeUnit.MILLISECONDS.toNanos(value.expiresAtMillis - System.currentTimeMillis());
+            return Math.max(0, Math.min(untilExpiration, maxTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenDigest key, CachedAuthentication value, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(TokenDigest key, CachedAuthentication value, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
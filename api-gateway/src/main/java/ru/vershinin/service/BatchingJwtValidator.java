@@ -0,0 +1,235 @@
+package ru.vershinin.service;
+
+import io.jsonwebtoken.JwtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import ru.vershinin.dto.JwtBatchParseRequestDto;
+import ru.vershinin.dto.JwtBatchParseResponseDto;
+import ru.vershinin.dto.JwtParseResponseDto;
+import ru.vershinin.dto.JwtParseResultDto;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * валидация токенов в auth-service пакетами.
+ * токены, пришедшие в течение окна security.jwt.batch.window (или пока их не наберется max-size),
+ * отправляются одним запросом на /v1/jwt/parse/batch; каждый вызывающий поток ждет свой результат
+ * не дольше security.jwt.batch.timeout, затем проверяет токен отдельным запросом через {@link RemoteJwtValidator}.
+ * так же проверяются токены, пакет которых не удалось отправить (остановка шлюза, прерывание сборщика).
+ * включается свойством security.jwt.batch.enabled
+ */
+@Component
+@ConditionalOnProperty(value = "security.jwt.batch.enabled", havingValue = "true")
+public class BatchingJwtValidator implements JwtValidator {
+
+    private final Logger log = LoggerFactory.getLogger(BatchingJwtValidator.class);
+
+    private final RestTemplate restTemplate;
+
+    private final RemoteJwtValidator directValidator;
+
+    private final String batchUrl;
+
+    private final long timeoutNanos;
+
+    private final long windowNanos;
+
+    private final int maxSize;
+
+    private final BlockingQueue<PendingValidation> pending = new LinkedBlockingQueue<>();
+
+    /**
+     * отправка пакетов; если все потоки заняты, пакет отправляет сам сборщик, и следующий пакет копится в очереди.
+     * после shutdown пакет отклоняется, и его токены проверяются по одному
+     */
+    private final ThreadPoolExecutor senders;
+
+    private final Thread collector;
+
+    private volatile boolean closed;
+
+    /**
+     * @param restTemplate - клиент с балансировкой по service-id
+     * @param directValidator - проверка по одному токену, если пакет не отправлен или не вернулся вовремя
+     * @param batchUrl - адрес пакетной валидации в auth-service
+     * @param timeout - сколько вызывающий поток ждет результат пакета
+     * @param window - сколько ждать остальные токены после первого
+     * @param maxSize - максимальное число токенов в пакете
+     * @param maxInFlight - максимальное число одновременно отправленных пакетов
+     */
+    @Autowired
+    public BatchingJwtValidator(RestTemplate restTemplate,
+                                RemoteJwtValidator directValidator,
+                                @Value("${security.jwt.batch.url:http://auth-service/v1/jwt/parse/batch}") String batchUrl,
+                                @Value("${security.jwt.batch.timeout:1s}") Duration timeout,
+                                @Value("${security.jwt.batch.window:2ms}") Duration window,
+                                @Value("${security.jwt.batch.max-size:64}") int maxSize,
+                                @Value("${security.jwt.batch.max-in-flight:8}") int maxInFlight) {
+        this.restTemplate = restTemplate;
+        this.directValidator = directValidator;
+        this.batchUrl = batchUrl;
+        this.timeoutNanos = timeout.toNanos();
+        this.windowNanos = window.toNanos();
+        this.maxSize = maxSize;
+        this.senders = new ThreadPoolExecutor(maxInFlight, maxInFlight, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), BatchingJwtValidator::runInCollector);
+        this.collector = new Thread(this::collect, "jwt-batch-collector");
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    /**
+     * ставит токен в очередь следующего пакета и ждет результат
+     * @param token - токен полученный из заголовка запроса
+     * @return - имя пользователя и роли
+     */
+    @Override
+    public JwtParseResponseDto parseJwt(String token) {
+        Objects.requireNonNull(token);
+        if (closed) {
+            return directValidator.parseJwt(token);
+        }
+        PendingValidation validation = new PendingValidation(token);
+        pending.add(validation);
+        //сборщик мог остановиться между проверкой и add - тогда токен никто не заберет из очереди
+        if (closed && pending.remove(validation)) {
+            return directValidator.parseJwt(token);
+        }
+        try {
+            return validation.result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            pending.remove(validation);
+            log.debug("JWT batch did not answer in {} ms, validating the token directly",
+                    TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+            return directValidator.parseJwt(token);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RejectedExecutionException) {
+                return directValidator.parseJwt(token);
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            pending.remove(validation);
+            throw new IllegalStateException("interrupted while waiting for JWT batch", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        collector.interrupt();
+        senders.shutdown();
+    }
+
+    /**
+     * пока пул не остановлен, пакет отправляет сам сборщик; после shutdown пакет отклоняется
+     */
+    private static void runInCollector(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("JWT batch senders are shut down");
+        }
+        task.run();
+    }
+
+    private void collect() {
+        List<PendingValidation> batch = new ArrayList<>(maxSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingValidation next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                List<PendingValidation> collected = batch;
+                senders.execute(() -> send(collected));
+                batch = new ArrayList<>(maxSize);
+            } catch (RejectedExecutionException ex) {
+                reject(batch, ex);
+                batch = new ArrayList<>(maxSize);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        //ни один ожидающий поток не должен остаться без ответа: недособранный пакет и очередь проверяются по одному
+        RejectedExecutionException stopped = new RejectedExecutionException("JWT batch collector stopped");
+        reject(batch, stopped);
+        List<PendingValidation> rest = new ArrayList<>();
+        pending.drainTo(rest);
+        reject(rest, stopped);
+    }
+
+    private static void reject(List<PendingValidation> batch, RejectedExecutionException ex) {
+        for (PendingValidation validation : batch) {
+            validation.result.completeExceptionally(ex);
+        }
+    }
+
+    private void send(List<PendingValidation> batch) {
+        try {
+            List<String> tokens = new ArrayList<>(batch.size());
+            for (PendingValidation validation : batch) {
+                tokens.add(validation.token);
+            }
+            JwtBatchParseResponseDto responseDto = restTemplate.postForObject(batchUrl,
+                    new JwtBatchParseRequestDto(tokens), JwtBatchParseResponseDto.class);
+            Objects.requireNonNull(responseDto);
+            List<JwtParseResultDto> results = responseDto.getResults();
+            if (results == null || results.size() != batch.size()) {
+                throw new IllegalStateException("auth-service returned " + (results == null ? 0 : results.size())
+                        + " results for " + batch.size() + " tokens");
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                JwtParseResultDto result = results.get(i);
+                if (result.getError() != null) {
+                    batch.get(i).result.completeExceptionally(new JwtException(result.getError()));
+                } else {
+                    batch.get(i).result.complete(new JwtParseResponseDto(result.getUsername(),
+                            result.getAuthorities(), result.getExpiration()));
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.warn("JWT batch of {} tokens failed: {}", batch.size(), ex.getLocalizedMessage());
+            for (PendingValidation validation : batch) {
+                validation.result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private static final class PendingValidation {
+
+        private final String token;
+
+        private final CompletableFuture<JwtParseResponseDto> result = new CompletableFuture<>();
+
+        private PendingValidation(String token) {
+            this.token = token;
+        }
+    }
+}
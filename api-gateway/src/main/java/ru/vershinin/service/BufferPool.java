@@ -0,0 +1,47 @@
+package ru.vershinin.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * пул буферов одного размера для потоковой передачи тел запросов и ответов.
+ * если свободных буферов нет, выдается новый; в пул возвращается не больше max-pooled буферов
+ */
+@Component
+public class BufferPool {
+
+    private final int bufferSize;
+
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * @param bufferSize - размер одного буфера
+     * @param maxPooled - максимальное число свободных буферов в пуле
+     */
+    @Autowired
+    public BufferPool(@Value("${gateway.streaming.buffer-size:64KB}") DataSize bufferSize,
+                      @Value("${gateway.streaming.max-pooled-buffers:256}") int maxPooled) {
+        this.bufferSize = (int) bufferSize.toBytes();
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,206 @@
+package ru.vershinin.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * адаптивное ограничение числа одновременных запросов к каждому маршруту (AIMD).
+ * пока время ответа upstream не превышает базовое (минимальное наблюдаемое) больше чем в latency-tolerance раз,
+ * лимит растет на единицу за ответ; при медленном ответе, ошибке или 5xx лимит умножается на backoff-ratio,
+ * не чаще одного раза за время ответа. запросы сверх лимита отклоняются сразу, без очереди.
+ * метрики с тегом route: gateway.concurrency.limit, gateway.concurrency.inflight, gateway.concurrency.rejected
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    /**
+     * число ответов, после которого базовое время ответа пересчитывается по минимуму последнего окна
+     */
+    private static final int RTT_WINDOW = 500;
+
+    /**
+     * во сколько раз базовое время ответа может вырасти за одно окно
+     */
+    private static final double RTT_DRIFT = 1.1;
+
+    private final int initialLimit;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final double latencyTolerance;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, RouteLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * @param initialLimit - начальный лимит маршрута
+     * @param minLimit - лимит не опускается ниже этого значения
+     * @param maxLimit - лимит не поднимается выше этого значения
+     * @param backoffRatio - множитель лимита при перегрузке
+     * @param latencyTolerance - во сколько раз время ответа может превышать базовое без признака перегрузки
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public ConcurrencyLimiter(@Value("${gateway.concurrency-limit.initial-limit:50}") int initialLimit,
+                              @Value("${gateway.concurrency-limit.min-limit:5}") int minLimit,
+                              @Value("${gateway.concurrency-limit.max-limit:1000}") int maxLimit,
+                              @Value("${gateway.concurrency-limit.backoff-ratio:0.9}") double backoffRatio,
+                              @Value("${gateway.concurrency-limit.latency-tolerance:2.0}") double latencyTolerance,
+                              MeterRegistry meterRegistry) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param route - идентификатор маршрута zuul
+     * @return - разрешение, которое нужно вернуть через {@link Permit#release(boolean)}, или null, если лимит исчерпан
+     */
+    public Permit tryAcquire(String route) {
+        RouteLimit limit = limits.computeIfAbsent(route, this::newRouteLimit);
+        int inFlight = limit.tryAcquire();
+        if (inFlight < 0) {
+            limit.rejected.increment();
+            return null;
+        }
+        return new Permit(limit, inFlight, System.nanoTime());
+    }
+
+    private RouteLimit newRouteLimit(String route) {
+        RouteLimit limit = new RouteLimit(this, Counter.builder("gateway.concurrency.rejected")
+                .description("Requests rejected with 503 by the adaptive concurrency limiter")
+                .tag("route", route)
+                .register(meterRegistry));
+        Gauge.builder("gateway.concurrency.limit", limit, l -> l.limit)
+                .description("Current adaptive concurrency limit")
+                .tag("route", route)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.inflight", limit.inFlight, AtomicInteger::get)
+                .description("Requests currently in flight to the route")
+                .tag("route", route)
+                .register(meterRegistry);
+        return limit;
+    }
+
+    /**
+     * разрешение на один запрос к upstream
+     */
+    public static final class Permit {
+
+        private final RouteLimit limit;
+
+        private final int inFlightAtStart;
+
+        private final long startNanos;
+
+        private boolean released;
+
+        private Permit(RouteLimit limit, int inFlightAtStart, long startNanos) {
+            this.limit = limit;
+            this.inFlightAtStart = inFlightAtStart;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * освобождает место и учитывает время ответа; повторный вызов ничего не делает
+         * @param dropped - true, если запрос завершился ошибкой, тайм-аутом или ответом 5xx
+         */
+        public void release(boolean dropped) {
+            if (released) {
+                return;
+            }
+            released = true;
+            long now = System.nanoTime();
+            limit.inFlight.decrementAndGet();
+            limit.onSample(now - startNanos, inFlightAtStart, dropped, now);
+        }
+    }
+
+    private static final class RouteLimit {
+
+        private final ConcurrencyLimiter settings;
+
+        private final Counter rejected;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * текущий лимит, читается без блокировки при каждом запросе
+         */
+        private volatile int limit;
+
+        private double estimatedLimit;
+
+        private long baselineRttNanos = Long.MAX_VALUE;
+
+        private long windowMinRttNanos = Long.MAX_VALUE;
+
+        private int windowSamples;
+
+        private long lastDecreaseNanos;
+
+        private RouteLimit(ConcurrencyLimiter settings, Counter rejected) {
+            this.settings = settings;
+            this.rejected = rejected;
+            this.estimatedLimit = settings.initialLimit;
+            this.limit = settings.initialLimit;
+        }
+
+        /**
+         * @return - число запросов в работе до этого, или -1, если лимит исчерпан
+         */
+        private int tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= limit) {
+                    return -1;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return current;
+                }
+            }
+        }
+
+        private synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped, long now) {
+            windowMinRttNanos = Math.min(windowMinRttNanos, rttNanos);
+            if (baselineRttNanos == Long.MAX_VALUE) {
+                baselineRttNanos = rttNanos;
+            }
+            if (++windowSamples >= RTT_WINDOW) {
+                //медленный дрейф вверх, чтобы перегрузка, длящаяся все окно, не стала новой нормой
+                baselineRttNanos = Math.min(windowMinRttNanos, (long) (baselineRttNanos * RTT_DRIFT));
+                windowMinRttNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+
+            long toleratedRttNanos = (long) (baselineRttNanos * settings.latencyTolerance);
+            if (dropped || rttNanos > toleratedRttNanos) {
+                //запросы, начатые до предыдущего снижения, не снижают лимит повторно
+                if (now - lastDecreaseNanos > toleratedRttNanos) {
+                    estimatedLimit = Math.max(settings.minLimit, estimatedLimit * settings.backoffRatio);
+                    lastDecreaseNanos = now;
+                }
+            } else if (inFlightAtStart * 2 >= estimatedLimit) {
+                //растем, только если лимит действительно используется
+                estimatedLimit = Math.min(settings.maxLimit, estimatedLimit + 1);
+            }
+            limit = (int) estimatedLimit;
+        }
+    }
+}
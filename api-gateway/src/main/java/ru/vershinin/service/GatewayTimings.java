@@ -0,0 +1,126 @@
+package ru.vershinin.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.stereotype.Component;
+import ru.vershinin.model.GatewayStage;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * время этапов запроса gateway.request.stage с тегами stage и route: количество, сумма и максимум.
+ * гистограмма для перцентилей - отдельная метрика gateway.request.stage.all только с тегом stage (все запросы):
+ * бакеты у каждого маршрута добавляли бы около 70 рядов на этап, а под тем же именем с route=all
+ * сумма по stage считала бы каждый запрос дважды.
+ * таймеры маршрутов из zuul.routes создаются при старте, остальные маршруты (например, найденные в eureka)
+ * добавляются, пока их не больше max-routes, дальше учитываются как route=other.
+ * запросы без маршрута (actuator, отказ Spring Security) учитываются как route=none
+ */
+@Component
+public class GatewayTimings {
+
+    public static final String METRIC_NAME = "gateway.request.stage";
+
+    public static final String NO_ROUTE = "none";
+
+    public static final String OTHER_ROUTE = "other";
+
+    public static final String ALL_ROUTES_METRIC_NAME = "gateway.request.stage.all";
+
+    private static final GatewayStage[] STAGES = GatewayStage.values();
+
+    private final int maxRoutes;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    private final Timer[] allTimers;
+
+    /**
+     * @param zuulProperties - маршруты zuul.routes
+     * @param maxRoutes - максимальное число различных значений тега route
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public GatewayTimings(ZuulProperties zuulProperties,
+                          @Value("${gateway.timings.max-routes:100}") int maxRoutes,
+                          MeterRegistry meterRegistry) {
+        this(zuulProperties.getRoutes().keySet(), maxRoutes, meterRegistry);
+    }
+
+    public GatewayTimings(Collection<String> routes, int maxRoutes, MeterRegistry meterRegistry) {
+        this.maxRoutes = maxRoutes;
+        this.meterRegistry = meterRegistry;
+        this.allTimers = registerAllRoutes();
+        timers.put(NO_ROUTE, register(NO_ROUTE));
+        timers.put(OTHER_ROUTE, register(OTHER_ROUTE));
+        for (String route : routes) {
+            timers.computeIfAbsent(route, this::register);
+        }
+    }
+
+    /**
+     * записывает время всех этапов запроса, которые он прошел
+     * @param timings - замеры запроса
+     */
+    public void record(RequestTimings timings) {
+        Timer[] routeTimers = timersFor(timings.getRoute());
+        for (GatewayStage stage : STAGES) {
+            if (timings.isRecorded(stage)) {
+                long nanos = timings.getNanos(stage);
+                routeTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+                allTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private Timer[] timersFor(String route) {
+        if (route == null) {
+            return timers.get(NO_ROUTE);
+        }
+        Timer[] routeTimers = timers.get(route);
+        if (routeTimers != null) {
+            return routeTimers;
+        }
+        //два служебных значения не считаются
+        if (timers.size() - 2 >= maxRoutes) {
+            return timers.get(OTHER_ROUTE);
+        }
+        return timers.computeIfAbsent(route, this::register);
+    }
+
+    private Timer[] register(String route) {
+        Timer[] routeTimers = new Timer[STAGES.length];
+        for (GatewayStage stage : STAGES) {
+            routeTimers[stage.ordinal()] = Timer.builder(METRIC_NAME)
+                    .description("Time spent by gateway requests in each processing stage")
+                    .tag("stage", stage.getTag())
+                    .tag("route", route)
+                    .publishPercentileHistogram(false)
+                    .register(meterRegistry);
+        }
+        return routeTimers;
+    }
+
+    private Timer[] registerAllRoutes() {
+        Timer[] stageTimers = new Timer[STAGES.length];
+        for (GatewayStage stage : STAGES) {
+            stageTimers[stage.ordinal()] = Timer.builder(ALL_ROUTES_METRIC_NAME)
+                    .description("Time spent by all gateway requests in each processing stage, with percentile histogram")
+                    .tag("stage", stage.getTag())
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(1000))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(meterRegistry);
+        }
+        return stageTimers;
+    }
+}
@@ -0,0 +1,59 @@
+package ru.vershinin.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.vershinin.dto.JwtParseResponseDto;
+import ru.vershinin.model.GatewayStage;
+import ru.vershinin.model.JwtValidationMode;
+
+import java.util.Optional;
+
+/**
+ * выбирает способ валидации токена в зависимости от security.jwt.validation-mode.
+ * при security.jwt.batch.enabled обращения в auth-service объединяются в пакеты
+ */
+@Service
+public class JwtValidationService {
+
+    private final JwtValidationMode mode;
+
+    private final JwtValidator localValidator;
+
+    private final JwtValidator remoteValidator;
+
+    @Autowired
+    public JwtValidationService(@Value("${security.jwt.validation-mode:REMOTE}") JwtValidationMode mode,
+                                LocalJwtValidator localValidator,
+                                RemoteJwtValidator remoteValidator,
+                                Optional<BatchingJwtValidator> batchingValidator) {
+        this(mode, localValidator, batchingValidator.<JwtValidator>map(validator -> validator).orElse(remoteValidator));
+    }
+
+    public JwtValidationService(JwtValidationMode mode, JwtValidator localValidator, JwtValidator remoteValidator) {
+        this.mode = mode;
+        this.localValidator = localValidator;
+        this.remoteValidator = remoteValidator;
+    }
+
+    /**
+     * в режиме LOCAL проверяет токен в шлюзе и обращается в auth-service только если локальная проверка
+     * не может принять решение; в режиме REMOTE всегда обращается в auth-service
+     * @param token - токен полученный из заголовка запроса
+     * @return - имя пользователя и роли
+     */
+    public JwtParseResponseDto parseJwt(String token) {
+        if (mode == JwtValidationMode.LOCAL) {
+            JwtParseResponseDto responseDto = localValidator.parseJwt(token);
+            if (responseDto != null) {
+                return responseDto;
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            return remoteValidator.parseJwt(token);
+        } finally {
+            RequestTimings.current().add(GatewayStage.JWT_REMOTE, System.nanoTime() - start);
+        }
+    }
+}
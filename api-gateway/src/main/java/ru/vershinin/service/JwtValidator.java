@@ -0,0 +1,17 @@
+package ru.vershinin.service;
+
+import ru.vershinin.dto.JwtParseResponseDto;
+
+/**
+ * проверка токена и получение из него имени пользователя и ролей
+ */
+public interface JwtValidator {
+
+    /**
+     * проверяет подпись и срок действия токена
+     * @param token - токен полученный из заголовка запроса
+     * @return - имя пользователя и роли, либо null, если реализация не может принять решение по данному токену
+     * @throws RuntimeException - если токен недействителен
+     */
+    JwtParseResponseDto parseJwt(String token);
+}
@@ -0,0 +1,101 @@
+package ru.vershinin.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.vershinin.dto.JwtParseResponseDto;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.security.Key;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * валидация токена внутри шлюза, без обращения к auth-service.
+ * использует тот же ключ подписи, что и JwtService в auth-service (security.jwt.signing-key).
+ * роли читаются из списка authorities или из маски r компактного токена (CompactClaims)
+ */
+@Component
+public class LocalJwtValidator implements JwtValidator {
+
+    private static final UndecidableJwtException UNDECIDABLE = new UndecidableJwtException();
+
+    /**
+     * ключ подписи, вычисляется один раз при создании; null - если ключ не задан
+     */
+    private final Key signingKey;
+
+    /**
+     * отдает ключ только для HS256 - для остальных алгоритмов решение принимает auth-service
+     */
+    private final SigningKeyResolver keyResolver = new SigningKeyResolverAdapter() {
+        @Override
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            if (!SignatureAlgorithm.HS256.getValue().equals(header.getAlgorithm())) {
+                throw UNDECIDABLE;
+            }
+            return signingKey;
+        }
+    };
+
+    /**
+     * внедряем зависимость через конструктор, который в свою очередь инициализирует signingKey из файла application.yml
+     * @param signingKey - ключ для генерации hash, пустая строка - локальная проверка недоступна
+     */
+    @Autowired
+    public LocalJwtValidator(@Value("${security.jwt.signing-key:}") String signingKey) {
+        this.signingKey = signingKey.isEmpty()
+                ? null
+                : new SecretKeySpec(signingKey.getBytes(), SignatureAlgorithm.HS256.getJcaName());
+    }
+
+    /**
+     * проверяет подпись HS256 и срок действия токена
+     * @param token - токен полученный из заголовка запроса
+     * @return - имя пользователя и роли, либо null, если ключ не задан или токен подписан другим алгоритмом
+     * @throws io.jsonwebtoken.JwtException - если подпись неверна, токен просрочен или поврежден
+     */
+    @Override
+    public JwtParseResponseDto parseJwt(String token) {
+        Objects.requireNonNull(token);
+        if (signingKey == null) {
+            return null;
+        }
+
+        Claims claims;
+        try {
+            claims = Jwts.parser()
+                    .setSigningKeyResolver(keyResolver)
+                    .parseClaimsJws(token)
+                    .getBody();
+        } catch (UndecidableJwtException ex) {
+            return null;
+        }
+
+        String username = claims.getSubject();
+        //noinspection unchecked
+        List<String> authorities = claims.get("authorities", List.class);
+        Object roles = claims.get(CompactClaims.ROLES);
+        if (authorities == null && roles instanceof Number) {
+            authorities = CompactClaims.authorities(((Number) roles).longValue());
+        }
+
+        return new JwtParseResponseDto(username, authorities, claims.getExpiration());
+    }
+
+    /**
+     * сигнал о том, что локальная проверка не может принять решение; стек не заполняется
+     */
+    private static final class UndecidableJwtException extends RuntimeException {
+
+        private UndecidableJwtException() {
+            super("local verification is not possible", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.vershinin.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * ограничение частоты запросов по паре пользователь + маршрут.
+ * каждое ведро - одно значение long (алгоритм GCRA: теоретическое время следующего запроса), которое
+ * обновляется через CAS без блокировок. ведра хранятся в Caffeine и удаляются после idle-timeout простоя,
+ * общий размер ограничен max-keys. отклоненные запросы считаются в gateway.ratelimit.throttled с тегом route
+ */
+@Component
+public class RateLimiter {
+
+    /**
+     * интервал между запросами при равномерной нагрузке, нс
+     */
+    private final long emissionIntervalNanos;
+
+    /**
+     * насколько теоретическое время может опережать текущее, нс - определяет размер всплеска
+     */
+    private final long burstToleranceNanos;
+
+    private final Cache<String, TokenBucket> buckets;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Counter> throttled = new ConcurrentHashMap<>();
+
+    /**
+     * @param requestsPerSecond - допустимая средняя частота запросов
+     * @param burst - сколько запросов подряд допускается сверх средней частоты
+     * @param idleTimeout - ведро удаляется после такого простоя
+     * @param maxKeys - максимальное число ведер
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public RateLimiter(@Value("${gateway.rate-limit.requests-per-second:50}") double requestsPerSecond,
+                       @Value("${gateway.rate-limit.burst:100}") int burst,
+                       @Value("${gateway.rate-limit.idle-timeout:10m}") Duration idleTimeout,
+                       @Value("${gateway.rate-limit.max-keys:5000000}") long maxKeys,
+                       MeterRegistry meterRegistry) {
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * Math.max(0, burst - 1);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleTimeout)
+                .build();
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("gateway.ratelimit.keys", buckets, Cache::estimatedSize)
+                .description("Token buckets currently tracked")
+                .register(meterRegistry);
+    }
+
+    /**
+     * расходует один токен из ведра пользователя на маршруте
+     * @param principal - имя пользователя
+     * @param route - идентификатор маршрута zuul
+     * @return - 0, если запрос разрешен, иначе через сколько наносекунд можно повторить запрос
+     */
+    public long tryAcquire(String principal, String route) {
+        TokenBucket bucket = buckets.get(principal + '|' + route, key -> new TokenBucket(System.nanoTime()));
+        long waitNanos = bucket.tryAcquire(System.nanoTime(), emissionIntervalNanos, burstToleranceNanos);
+        if (waitNanos > 0) {
+            throttled.computeIfAbsent(route, this::throttledCounter).increment();
+        }
+        return waitNanos;
+    }
+
+    private Counter throttledCounter(String route) {
+        return Counter.builder("gateway.ratelimit.throttled")
+                .description("Requests rejected with 429 by the per-principal rate limiter")
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+
+    /**
+     * ведро GCRA: хранит только теоретическое время прибытия следующего запроса
+     */
+    static final class TokenBucket {
+
+        private static final AtomicLongFieldUpdater<TokenBucket> TAT =
+                AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "theoreticalArrival");
+
+        private volatile long theoreticalArrival;
+
+        TokenBucket(long now) {
+            this.theoreticalArrival = now;
+        }
+
+        long tryAcquire(long now, long emissionInterval, long burstTolerance) {
+            while (true) {
+                long current = theoreticalArrival;
+                long earliest = current - burstTolerance;
+                if (now - earliest < 0) {
+                    return earliest - now;
+                }
+                long next = Math.max(current, now) + emissionInterval;
+                if (TAT.compareAndSet(this, current, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
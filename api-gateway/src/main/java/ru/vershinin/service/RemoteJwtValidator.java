@@ -0,0 +1,48 @@
+package ru.vershinin.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import ru.vershinin.dto.JwtParseRequestDto;
+import ru.vershinin.dto.JwtParseResponseDto;
+
+import java.util.Objects;
+
+/**
+ * валидация токена на стороне auth-service
+ */
+@Component
+public class RemoteJwtValidator implements JwtValidator {
+
+    private final RestTemplate restTemplate;
+
+    /**
+     * адрес валидации токена:auth-service
+     */
+    private final String parseUrl;
+
+    @Autowired
+    public RemoteJwtValidator(RestTemplate restTemplate,
+                              @Value("${security.jwt.parse-url:http://auth-service/v1/jwt/parse}") String parseUrl) {
+        this.restTemplate = restTemplate;
+        this.parseUrl = parseUrl;
+    }
+
+    /**
+     * метод передает токен по указанному ранее URL,где проверяется валидация
+     * реализует связь между сервисами с помощью restTemplate
+     *
+     * @param token - токен полученный из заголовка запроса
+     * @return - для удобного чтения возращает объект JwtParseResponseDto
+     * @see JwtParseResponseDto
+     */
+    @Override
+    public JwtParseResponseDto parseJwt(String token) {
+        JwtParseResponseDto responseDto = restTemplate.postForObject(parseUrl, new JwtParseRequestDto(token),
+                JwtParseResponseDto.class);
+        //Обертка requireNonNull позволяет прямо и быстро определить причину исключения.
+        Objects.requireNonNull(responseDto);
+        return responseDto;
+    }
+}
@@ -0,0 +1,249 @@
+package ru.vershinin.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * настройки и состояние дублирования (hedging) GET-запросов на маршрутах gateway.hedging.routes.
+ * задержка перед вторым запросом - заданный перцентиль времени от первого запроса до первого ответа
+ * по последним WINDOW запросам маршрута, ограниченный min-delay и max-delay (пока статистики мало, используется max-delay).
+ * бюджет: каждый запрос маршрута добавляет budget-percent / 100 токена, второй запрос расходует один токен,
+ * поэтому дублируется не больше budget-percent запросов, и при перегрузке upstream нагрузка растет не больше чем на столько же.
+ * метрики с тегом route: gateway.hedging.fired, gateway.hedging.won, gateway.hedging.budget.exhausted, gateway.hedging.delay
+ */
+@Component
+public class RequestHedging {
+
+    /**
+     * число последних ответов, по которым считается перцентиль
+     */
+    static final int WINDOW = 1024;
+
+    /**
+     * перцентиль пересчитывается после каждых RECALCULATE_EVERY ответов
+     */
+    private static final int RECALCULATE_EVERY = 64;
+
+    /**
+     * баланс бюджета в тысячных долях токена
+     */
+    private static final long TOKEN = 1000;
+
+    /**
+     * максимальный накопленный бюджет - столько вторых запросов подряд допускается после простоя
+     */
+    private static final long MAX_BALANCE = 20 * TOKEN;
+
+    private final Set<String> routes;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final long maxDelayNanos;
+
+    private final long depositPerRequest;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, RouteHedging> states = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param routes - маршруты zuul.routes, GET-запросы которых дублируются
+     * @param percentile - перцентиль времени ответа, после которого отправляется второй запрос
+     * @param minDelay - минимальная задержка второго запроса
+     * @param maxDelay - максимальная задержка второго запроса
+     * @param budgetPercent - доля запросов, которые можно продублировать, %
+     * @param maxThreads - максимальное число одновременных запросов к upstream на дублируемых маршрутах
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public RequestHedging(@Value("${gateway.hedging.routes:}") List<String> routes,
+                          @Value("${gateway.hedging.percentile:0.95}") double percentile,
+                          @Value("${gateway.hedging.min-delay:5ms}") Duration minDelay,
+                          @Value("${gateway.hedging.max-delay:1s}") Duration maxDelay,
+                          @Value("${gateway.hedging.budget-percent:10}") double budgetPercent,
+                          @Value("${gateway.hedging.max-threads:200}") int maxThreads,
+                          MeterRegistry meterRegistry) {
+        this.routes = new HashSet<>(routes);
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.depositPerRequest = Math.round(TOKEN * budgetPercent / 100);
+        this.meterRegistry = meterRegistry;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "hedging-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param route - идентификатор маршрута zuul
+     * @return - true, если для маршрута включено дублирование
+     */
+    public boolean isEnabled(String route) {
+        return route != null && routes.contains(route);
+    }
+
+    /**
+     * @param route - идентификатор маршрута zuul
+     * @return - состояние маршрута
+     */
+    public RouteHedging route(String route) {
+        return states.computeIfAbsent(route, RouteHedging::new);
+    }
+
+    /**
+     * потоки, в которых выполняются запросы к upstream; при нехватке потоков бросает RejectedExecutionException
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * задержка, бюджет и счетчики одного маршрута
+     */
+    public final class RouteHedging {
+
+        private final long[] samples = new long[WINDOW];
+
+        private final AtomicLong recorded = new AtomicLong();
+
+        private final AtomicLong balance = new AtomicLong(MAX_BALANCE);
+
+        private volatile long delayNanos = maxDelayNanos;
+
+        private final Counter fired;
+
+        private final Counter won;
+
+        private final Counter exhausted;
+
+        private RouteHedging(String route) {
+            this.fired = Counter.builder("gateway.hedging.fired")
+                    .description("Second attempts sent after the hedging delay")
+                    .tag("route", route)
+                    .register(meterRegistry);
+            this.won = Counter.builder("gateway.hedging.won")
+                    .description("Requests answered by the second attempt")
+                    .tag("route", route)
+                    .register(meterRegistry);
+            this.exhausted = Counter.builder("gateway.hedging.budget.exhausted")
+                    .description("Second attempts skipped because the hedging budget was spent")
+                    .tag("route", route)
+                    .register(meterRegistry);
+            TimeGauge.builder("gateway.hedging.delay", this, TimeUnit.NANOSECONDS, state -> state.delayNanos)
+                    .description("Current delay before a second attempt")
+                    .tag("route", route)
+                    .register(meterRegistry);
+        }
+
+        public long getDelayNanos() {
+            return delayNanos;
+        }
+
+        /**
+         * пополняет бюджет при каждом запросе маршрута
+         */
+        public void onRequest() {
+            long current;
+            do {
+                current = balance.get();
+                if (current >= MAX_BALANCE) {
+                    return;
+                }
+            } while (!balance.compareAndSet(current, Math.min(MAX_BALANCE, current + depositPerRequest)));
+        }
+
+        /**
+         * расходует токен бюджета на второй запрос
+         * @return - true, если второй запрос можно отправить
+         */
+        public boolean tryHedge() {
+            long current;
+            do {
+                current = balance.get();
+                if (current < TOKEN) {
+                    exhausted.increment();
+                    return false;
+                }
+            } while (!balance.compareAndSet(current, current - TOKEN));
+            return true;
+        }
+
+        /**
+         * второй запрос отправлен
+         */
+        public void onHedgeFired() {
+            fired.increment();
+        }
+
+        /**
+         * возвращает токен, если второй запрос не удалось отправить (в пуле нет свободного потока)
+         */
+        public void refundHedge() {
+            long current;
+            do {
+                current = balance.get();
+            } while (!balance.compareAndSet(current, Math.min(MAX_BALANCE, current + TOKEN)));
+        }
+
+        public void onHedgeWon() {
+            won.increment();
+        }
+
+        /**
+         * время ответа маршрута, один раз на запрос: от отправки первого запроса до первого полученного ответа.
+         * если ответ пришел от второго запроса, первый учитывается как не успевший за это время, а не выбрасывается
+         * @param nanos - время от отправки первого запроса до первого ответа или до тайм-аута
+         */
+        public void record(long nanos) {
+            long index = recorded.getAndIncrement();
+            samples[(int) (index % WINDOW)] = nanos;
+            if ((index + 1) % RECALCULATE_EVERY == 0 && index + 1 >= WINDOW / 4) {
+                recalculate((int) Math.min(index + 1, WINDOW));
+            }
+        }
+
+        /**
+         * гонки с параллельной записью допустимы: перцентиль считается по приблизительной выборке
+         */
+        private synchronized void recalculate(int size) {
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            long value = sorted[(int) Math.max(0, Math.min(size - 1, Math.ceil(percentile * size) - 1))];
+            delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, value));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.vershinin.service;
+
+import ru.vershinin.model.GatewayStage;
+
+import java.util.Arrays;
+
+/**
+ * время этапов текущего запроса, его маршрут, пользователь и экземпляр upstream (для журнала доступа).
+ * объект один на поток и переиспользуется, поэтому замеры ничего не выделяют; запрос целиком обрабатывается в потоке сервлета, включая маршрутизацию Zuul.
+ * в режиме виртуальных потоков (профиль virtual-threads) поток создается на каждый запрос, и вместе с ним
+ * создаются новый объект замеров и его массив (около 120 байт) и карта ThreadLocal нового потока
+ * этапы, идущие друг за другом, закрываются отметками {@link #lap(GatewayStage, long)},
+ * вложенные (проверка токена) добавляются через {@link #add(GatewayStage, long)}
+ */
+public final class RequestTimings {
+
+    private static final GatewayStage[] STAGES = GatewayStage.values();
+
+    private static final ThreadLocal<RequestTimings> CURRENT = ThreadLocal.withInitial(RequestTimings::new);
+
+    private final long[] stageNanos = new long[STAGES.length];
+
+    private long startNanos;
+
+    private long markNanos;
+
+    private String route;
+
+    private String principal;
+
+    private String upstreamHost;
+
+    private int upstreamPort;
+
+    private RequestTimings() {
+    }
+
+    public static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * начинает замер нового запроса
+     * @param now - System.nanoTime()
+     */
+    public void start(long now) {
+        Arrays.fill(stageNanos, -1);
+        startNanos = now;
+        markNanos = now;
+        route = null;
+        principal = null;
+        upstreamHost = null;
+        upstreamPort = -1;
+    }
+
+    /**
+     * добавляет время к этапу
+     * @param stage - этап
+     * @param nanos - длительность, нс
+     */
+    public void add(GatewayStage stage, long nanos) {
+        int index = stage.ordinal();
+        stageNanos[index] = Math.max(0, stageNanos[index]) + nanos;
+    }
+
+    /**
+     * закрывает этап, начавшийся с предыдущей отметки
+     * @param stage - этап
+     * @param now - System.nanoTime()
+     */
+    public void lap(GatewayStage stage, long now) {
+        add(stage, now - markNanos);
+        markNanos = now;
+    }
+
+    /**
+     * закрывает последний этап и весь запрос
+     * @param now - System.nanoTime()
+     */
+    public void finish(long now) {
+        //запрос не дошел до Zuul, например 401 от Spring Security
+        lap(isRecorded(GatewayStage.SECURITY) ? GatewayStage.RESPONSE : GatewayStage.SECURITY, now);
+        stageNanos[GatewayStage.TOTAL.ordinal()] = now - startNanos;
+    }
+
+    public boolean isRecorded(GatewayStage stage) {
+        return stageNanos[stage.ordinal()] >= 0;
+    }
+
+    public long getNanos(GatewayStage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public void setRoute(String route) {
+        this.route = route;
+    }
+
+    public String getPrincipal() {
+        return principal;
+    }
+
+    public void setPrincipal(String principal) {
+        this.principal = principal;
+    }
+
+    public String getUpstreamHost() {
+        return upstreamHost;
+    }
+
+    public int getUpstreamPort() {
+        return upstreamPort;
+    }
+
+    /**
+     * экземпляр upstream, который ответил на запрос
+     * @param host - адрес экземпляра
+     * @param port - порт экземпляра
+     */
+    public void setUpstream(String host, int port) {
+        this.upstreamHost = host;
+        this.upstreamPort = port;
+    }
+}
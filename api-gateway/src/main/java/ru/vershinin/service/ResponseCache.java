@@ -0,0 +1,259 @@
+package ru.vershinin.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * кэш ответов upstream-сервисов для GET-запросов на выбранных маршрутах (gateway.response-cache.routes).
+ * ключ - маршрут, путь с параметрами, заголовок Accept и имя пользователя, поэтому ответы разных пользователей
+ * не смешиваются. ответы с Vary по другим заголовкам запроса не кэшируются (isVaryCovered).
+ * тела хранятся массивами байт, кэш ограничен суммарным объемом gateway.response-cache.max-bytes.
+ * метрики: cache.gets с тегом cache=gateway-response (доля попаданий) и gateway.response.cache.bytes
+ */
+@Component
+public class ResponseCache {
+
+    public static final String CACHE_NAME = "gateway-response";
+
+    /**
+     * примерный объем служебных полей одной записи, байт
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     * заголовки запроса, от которых ответ может зависеть без вреда для кэша: Accept входит в ключ,
+     * а сжатое тело SendResponseFilter распакует для клиента без gzip
+     */
+    private static final Set<String> KEYED_HEADERS = Set.of("accept", "accept-encoding");
+
+    private final Set<String> routes;
+
+    private final Duration ttl;
+
+    private final int maxEntryBytes;
+
+    private final Cache<String, CachedResponse> cache;
+
+    /**
+     * @param routes - маршруты zuul.routes, для которых включен кэш
+     * @param ttl - максимальное время жизни ответа в кэше
+     * @param maxBytes - максимальный суммарный объем ответов в кэше
+     * @param maxEntryBytes - ответы большего размера не кэшируются
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public ResponseCache(@Value("${gateway.response-cache.routes:}") List<String> routes,
+                         @Value("${gateway.response-cache.ttl:30s}") Duration ttl,
+                         @Value("${gateway.response-cache.max-bytes:64MB}") DataSize maxBytes,
+                         @Value("${gateway.response-cache.max-entry-bytes:1MB}") DataSize maxEntryBytes,
+                         MeterRegistry meterRegistry) {
+        this.routes = new HashSet<>(routes);
+        this.ttl = ttl;
+        this.maxEntryBytes = (int) maxEntryBytes.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes.toBytes())
+                .weigher((String key, CachedResponse value) -> value.weight(key))
+                .expireAfter(new ResponseExpiry())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("gateway.response.cache.bytes", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L))
+                .description("Approximate bytes held by cached responses")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param route - идентификатор маршрута zuul
+     * @return - true, если для маршрута включен кэш
+     */
+    public boolean isEnabled(String route) {
+        return route != null && routes.contains(route);
+    }
+
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * @param route - идентификатор маршрута zuul
+     * @param uri - путь запроса
+     * @param query - строка параметров или null
+     * @param accept - заголовок Accept или null
+     * @param principal - имя пользователя или null для анонимного запроса
+     * @return - ключ кэша
+     */
+    public String key(String route, String uri, String query, String accept, String principal) {
+        StringBuilder key = new StringBuilder(128)
+                .append(route).append('|')
+                .append(principal == null ? "" : principal).append('|')
+                .append(accept == null ? "" : accept.trim().toLowerCase(Locale.ROOT)).append('|')
+                .append(uri);
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        return key.toString();
+    }
+
+    /**
+     * ключ не учитывает заголовки из Vary, кроме Accept: ответ, зависящий от других заголовков
+     * (Cookie, Authorization, Accept-Language...), отдавался бы не тем клиентам
+     * @param vary - заголовки Vary ответа upstream через запятую или null
+     * @return - true, если ответ можно кэшировать по ключу из key
+     */
+    public boolean isVaryCovered(String vary) {
+        if (vary == null) {
+            return true;
+        }
+        for (String header : vary.split(",")) {
+            String name = header.trim().toLowerCase(Locale.ROOT);
+            if (!name.isEmpty() && !KEYED_HEADERS.contains(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public CachedResponse get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * @param key - ключ кэша
+     * @param response - ответ upstream
+     * @param cacheControl - заголовок Cache-Control ответа upstream или null
+     */
+    public void put(String key, CachedResponse response, String cacheControl) {
+        Duration entryTtl = ttlFor(cacheControl);
+        if (entryTtl != null) {
+            response.ttlNanos = entryTtl.toNanos();
+            cache.put(key, response);
+        }
+    }
+
+    /**
+     * время жизни ответа с учетом Cache-Control upstream: no-store и no-cache запрещают кэширование,
+     * s-maxage и max-age сокращают ttl маршрута. private допускается, так как ключ включает пользователя
+     * @param cacheControl - заголовок Cache-Control или null
+     * @return - время жизни или null, если ответ кэшировать нельзя
+     */
+    Duration ttlFor(String cacheControl) {
+        if (cacheControl == null) {
+            return ttl;
+        }
+        Duration result = ttl;
+        Duration maxAge = null;
+        for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+            String value = directive.trim();
+            if (value.equals("no-store") || value.equals("no-cache")) {
+                return null;
+            }
+            if (value.startsWith("s-maxage=")) {
+                maxAge = seconds(value.substring("s-maxage=".length()));
+            } else if (value.startsWith("max-age=") && maxAge == null) {
+                maxAge = seconds(value.substring("max-age=".length()));
+            }
+        }
+        if (maxAge != null && maxAge.compareTo(result) < 0) {
+            result = maxAge;
+        }
+        return result.isZero() || result.isNegative() ? null : result;
+    }
+
+    private static Duration seconds(String value) {
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException ex) {
+            return Duration.ZERO;
+        }
+    }
+
+    /**
+     * сохраненный ответ: код, заголовки и тело в виде массива байт
+     */
+    public static final class CachedResponse {
+
+        private final int status;
+
+        private final String[] headerNames;
+
+        private final String[] headerValues;
+
+        private final boolean gzipped;
+
+        private final byte[] body;
+
+        private long ttlNanos;
+
+        public CachedResponse(int status, String[] headerNames, String[] headerValues, boolean gzipped, byte[] body) {
+            this.status = status;
+            this.headerNames = headerNames;
+            this.headerValues = headerValues;
+            this.gzipped = gzipped;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String[] getHeaderNames() {
+            return headerNames;
+        }
+
+        public String[] getHeaderValues() {
+            return headerValues;
+        }
+
+        public boolean isGzipped() {
+            return gzipped;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        private int weight(String key) {
+            long weight = ENTRY_OVERHEAD + 2L * key.length() + body.length;
+            for (int i = 0; i < headerNames.length; i++) {
+                weight += 2L * (headerNames[i].length() + headerValues[i].length());
+            }
+            return (int) Math.min(Integer.MAX_VALUE, weight);
+        }
+    }
+
+    private static final class ResponseExpiry implements Expiry<String, CachedResponse> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedResponse value, long currentTime) {
+            return value.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedResponse value, long currentTime, long currentDuration) {
+            return value.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedResponse value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
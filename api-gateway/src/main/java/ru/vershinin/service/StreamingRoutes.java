@@ -0,0 +1,55 @@
+package ru.vershinin.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * маршруты, тела запросов и ответов которых передаются потоком, без буферизации в шлюзе (gateway.streaming.routes)
+ */
+@Component
+public class StreamingRoutes {
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    private final Set<String> routes;
+
+    private final RouteLocator routeLocator;
+
+    /**
+     * @param routes - маршруты zuul.routes с потоковой передачей
+     * @param routeLocator - поиск маршрута по пути
+     */
+    public StreamingRoutes(@Value("${gateway.streaming.routes:}") List<String> routes, RouteLocator routeLocator) {
+        this.routes = new HashSet<>(routes);
+        this.routeLocator = routeLocator;
+    }
+
+    /**
+     * @param route - идентификатор маршрута zuul
+     * @return - true, если маршрут потоковый
+     */
+    public boolean isStreaming(String route) {
+        return route != null && routes.contains(route);
+    }
+
+    /**
+     * проверка до того, как PreDecorationFilter определил маршрут (разбор multipart, FormBodyWrapperFilter)
+     * @param request - запрос клиента
+     * @return - true, если запрос пойдет по потоковому маршруту
+     */
+    public boolean isStreaming(HttpServletRequest request) {
+        if (routes.isEmpty()) {
+            return false;
+        }
+        Route route = routeLocator.getMatchingRoute(urlPathHelper.getPathWithinApplication(request));
+        return route != null && routes.contains(route.getId());
+    }
+}
@@ -0,0 +1,102 @@
+package ru.vershinin.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import ru.vershinin.config.AuthenticationFilter;
+import ru.vershinin.model.JwtValidationMode;
+import ru.vershinin.service.AuthenticationCache;
+import ru.vershinin.service.JwtValidationService;
+import ru.vershinin.service.LocalJwtValidator;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuthenticationFilter.doFilterInternal: разбор заголовка, кэш токенов и построение объекта аутентификации.
+ * cache=hit - токен уже в кэше, cache=miss - кэш с нулевым временем жизни, каждый раз локальная проверка подписи
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="AuthenticationFilterBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AuthenticationFilterBenchmark {
+
+    @Param({"hit", "miss"})
+    public String cache;
+
+    private BenchmarkedFilter filter;
+
+    private MockHttpServletRequest request;
+
+    private MockHttpServletResponse response;
+
+    private FilterChain chain;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JwtValidationService jwtValidationService = new JwtValidationService(JwtValidationMode.LOCAL,
+                new LocalJwtValidator(JwtValidationBenchmark.SIGNING_KEY),
+                token -> {
+                    throw new IllegalStateException("auth-service is not available in the benchmark");
+                });
+        Duration maxTtl = "hit".equals(cache) ? Duration.ofMinutes(5) : Duration.ZERO;
+        filter = new BenchmarkedFilter(jwtValidationService,
+                new AuthenticationCache(10_000, maxTtl, new SimpleMeterRegistry()));
+
+        request = new MockHttpServletRequest("GET", "/api/v1/protected");
+        request.addHeader(AuthenticationFilter.HEADER,
+                AuthenticationFilter.HEADER_VALUE_PREFIX + " " + JwtValidationBenchmark.mintToken());
+        response = new MockHttpServletResponse();
+        chain = (req, res) -> {
+        };
+    }
+
+    @Benchmark
+    public Authentication doFilterInternal() throws ServletException, IOException {
+        filter.doFilterInternal(request, response, chain);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+
+    /**
+     * открывает doFilterInternal для вызова из бенчмарка, минуя проверку OncePerRequestFilter
+     */
+    private static final class BenchmarkedFilter extends AuthenticationFilter {
+
+        private BenchmarkedFilter(JwtValidationService jwtValidationService, AuthenticationCache authenticationCache) {
+            super(jwtValidationService, authenticationCache);
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                        FilterChain filterChain) throws ServletException, IOException {
+            super.doFilterInternal(request, response, filterChain);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package ru.vershinin.benchmark;
+
+import com.netflix.zuul.ZuulFilter;
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import com.netflix.zuul.monitoring.MonitoringHelper;
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.http2.Http2Protocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerRequest;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestTemplate;
+import ru.vershinin.config.Http2ClientHttpRequestFactory;
+import ru.vershinin.config.PooledClientHttpRequestFactory;
+import ru.vershinin.filter.Http2RouteFilter;
+import ru.vershinin.filter.StreamingRouteFilter;
+import ru.vershinin.service.BufferPool;
+import ru.vershinin.service.StreamingRoutes;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.REQUEST_URI_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SERVICE_ID_KEY;
+
+/**
+ * HTTP/1.1 из пула соединений против h2c при большом числе одновременных запросов к одному экземпляру сервиса
+ * (встроенный Tomcat с Http2Protocol, как у сервисов в профиле h2c).
+ * client=rest-template - проверка токенов через RestTemplate (PooledClientHttpRequestFactory или
+ * Http2ClientHttpRequestFactory), client=zuul - маршрутизация Zuul: для h2c через Http2RouteFilter, для HTTP/1.1
+ * через StreamingRouteFilter на том же пуле Apache HttpClient (RibbonRoutingFilter требует контекста Ribbon).
+ * кроме перцентилей задержки режима SampleTime, после каждой итерации печатается, сколько соединений
+ * открыл клиент:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="Http2Benchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(256)
+@Fork(1)
+public class Http2Benchmark {
+
+    @Param({"http1", "h2c"})
+    public String protocol;
+
+    @Param({"rest-template", "zuul"})
+    public String client;
+
+    @Param({"20"})
+    public int delayMillis;
+
+    /**
+     * адреса клиентских соединений, принятых сервисом за итерацию
+     */
+    private final Set<String> connections = ConcurrentHashMap.newKeySet();
+
+    private Tomcat tomcat;
+
+    private PooledClientHttpRequestFactory pooledRequestFactory;
+
+    private RestTemplate restTemplate;
+
+    private ZuulFilter routeFilter;
+
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("http2-benchmark").toString());
+        Connector connector = new Connector("HTTP/1.1");
+        connector.setPort(0);
+        connector.setProperty("maxThreads", "1000");
+        connector.setProperty("maxConnections", "10000");
+        Http2Protocol http2 = new Http2Protocol();
+        http2.setMaxConcurrentStreams(1000);
+        http2.setMaxConcurrentStreamExecution(1000);
+        connector.addUpgradeProtocol(http2);
+        tomcat.getService().addConnector(connector);
+        tomcat.setConnector(connector);
+
+        Context context = tomcat.addContext("", null);
+        Tomcat.addServlet(context, "protected", new DelayedServlet(delayMillis, connections));
+        context.addServletMappingDecoded("/v1/protected", "protected");
+        tomcat.start();
+        url = "http://localhost:" + connector.getLocalPort() + "/v1/protected";
+
+        ServiceInstance instance = new DefaultServiceInstance("protected-1", "protected-service", "localhost",
+                connector.getLocalPort(), false);
+        LoadBalancerClient loadBalancer = new SingleInstanceLoadBalancer(instance);
+        ProxyRequestHelper helper = new ProxyRequestHelper(new ZuulProperties());
+        //конструктор ZuulException увеличивает счетчик Zuul
+        MonitoringHelper.initMocks();
+        if ("h2c".equals(protocol)) {
+            Http2ClientHttpRequestFactory h2cRequestFactory = new Http2ClientHttpRequestFactory(
+                    Http2ClientHttpRequestFactory.newHttpClient(Duration.ofSeconds(5)), Duration.ofSeconds(10));
+            restTemplate = new RestTemplate(h2cRequestFactory);
+            routeFilter = new Http2RouteFilter(loadBalancer, helper, h2cRequestFactory,
+                    new StreamingRoutes(Collections.emptyList(), null));
+        } else {
+            pooledRequestFactory = new PooledClientHttpRequestFactory(1000, 1000, 5000, 10000, 1000, 30000);
+            restTemplate = new RestTemplate(pooledRequestFactory);
+            routeFilter = new StreamingRouteFilter(loadBalancer, helper, pooledRequestFactory,
+                    new BufferPool(DataSize.ofKilobytes(64), 1024),
+                    new StreamingRoutes(Collections.singletonList("api"), null));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void printConnections() {
+        System.out.printf("%n%s: %d connections opened%n", protocol, connections.size());
+        connections.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (pooledRequestFactory != null) {
+            pooledRequestFactory.destroy();
+        }
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    @Benchmark
+    public int call() throws Exception {
+        if ("zuul".equals(client)) {
+            return route();
+        }
+        return restTemplate.getForObject(url, String.class).length();
+    }
+
+    /**
+     * запрос GET /api/v1/protected через фильтр маршрутизации; тело ответа читается, как это сделал бы
+     * SendResponseFilter
+     */
+    private int route() throws ZuulException, IOException {
+        RequestContext.getCurrentContext().unset();
+        RequestContext ctx = RequestContext.getCurrentContext();
+        try {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            ctx.setRequest(new MockHttpServletRequest("GET", "/api/v1/protected"));
+            ctx.setResponse(response);
+            ctx.set(PROXY_KEY, "api");
+            ctx.set(SERVICE_ID_KEY, "protected-service");
+            ctx.set(REQUEST_URI_KEY, "/v1/protected");
+            routeFilter.run();
+            InputStream body = ctx.getResponseDataStream();
+            if (body == null) {
+                return response.getContentAsByteArray().length;
+            }
+            try (body) {
+                return body.readAllBytes().length;
+            }
+        } finally {
+            ctx.unset();
+        }
+    }
+
+    /**
+     * отвечает после задержки и запоминает адрес соединения клиента
+     */
+    private static final class DelayedServlet extends HttpServlet {
+
+        private final long delayMillis;
+
+        private final Set<String> connections;
+
+        private DelayedServlet(long delayMillis, Set<String> connections) {
+            this.delayMillis = delayMillis;
+            this.connections = connections;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            connections.add(request.getRemoteAddr() + ":" + request.getRemotePort());
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            response.setContentType("text/plain");
+            response.getWriter().write("ok");
+        }
+    }
+
+    private static final class SingleInstanceLoadBalancer implements LoadBalancerClient {
+
+        private final ServiceInstance instance;
+
+        private SingleInstanceLoadBalancer(ServiceInstance instance) {
+            this.instance = instance;
+        }
+
+        @Override
+        public ServiceInstance choose(String serviceId) {
+            return instance;
+        }
+
+        @Override
+        public <T> T execute(String serviceId, LoadBalancerRequest<T> request) throws IOException {
+            return execute(serviceId, instance, request);
+        }
+
+        @Override
+        public <T> T execute(String serviceId, ServiceInstance serviceInstance, LoadBalancerRequest<T> request)
+                throws IOException {
+            try {
+                return request.apply(serviceInstance);
+            } catch (IOException | RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        @Override
+        public URI reconstructURI(ServiceInstance instance, URI original) {
+            return original;
+        }
+    }
+}
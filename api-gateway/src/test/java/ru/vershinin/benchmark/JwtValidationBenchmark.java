@@ -0,0 +1,130 @@
+package ru.vershinin.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.client.RestTemplate;
+import ru.vershinin.dto.JwtParseRequestDto;
+import ru.vershinin.dto.JwtParseResponseDto;
+import ru.vershinin.model.JwtValidationMode;
+import ru.vershinin.model.UserRole;
+import ru.vershinin.service.CompactClaims;
+import ru.vershinin.service.JwtValidationService;
+import ru.vershinin.service.LocalJwtValidator;
+import ru.vershinin.service.RemoteJwtValidator;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * сравнение режимов валидации токена: LOCAL (в шлюзе) и REMOTE (через auth-service).
+ * вместо auth-service поднимается заглушка на localhost, которая проверяет токен тем же ключом.
+ * compact=true - токен с компактными claims auth-service (маска ролей r), размер заголовка печатается перед замером
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JwtValidationBenchmark {
+
+    static final String SIGNING_KEY = "should-be-externally-configured";
+
+    @Param({"LOCAL", "REMOTE"})
+    public JwtValidationMode mode;
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    private HttpServer authServiceStub;
+
+    private ExecutorService stubExecutor;
+
+    private JwtValidationService jwtValidationService;
+
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        LocalJwtValidator localValidator = new LocalJwtValidator(SIGNING_KEY);
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        authServiceStub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        authServiceStub.createContext("/v1/jwt/parse", exchange -> {
+            JwtParseRequestDto requestDto = objectMapper.readValue(exchange.getRequestBody(), JwtParseRequestDto.class);
+            byte[] body = objectMapper.writeValueAsBytes(localValidator.parseJwt(requestDto.getToken()));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        stubExecutor = Executors.newFixedThreadPool(4);
+        authServiceStub.setExecutor(stubExecutor);
+        authServiceStub.start();
+
+        String parseUrl = "http://localhost:" + authServiceStub.getAddress().getPort() + "/v1/jwt/parse";
+        jwtValidationService = new JwtValidationService(mode, localValidator,
+                new RemoteJwtValidator(new RestTemplate(), parseUrl));
+        token = mintToken(compact);
+        System.out.printf("%nAuthorization header: %d bytes%n", "Bearer ".length() + token.length());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        authServiceStub.stop(0);
+        stubExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public JwtParseResponseDto parseJwt() {
+        return jwtValidationService.parseJwt(token);
+    }
+
+    /**
+     * токен в том же формате, что выдает JwtUsernamePasswordAuthenticationFilter в auth-service
+     */
+    static String mintToken() {
+        return mintToken(false);
+    }
+
+    /**
+     * @param compact - маска ролей вместо списка authorities и без iat, как при security.jwt.compact-claims
+     */
+    static String mintToken(boolean compact) {
+        Instant now = Instant.now();
+        JwtBuilder builder = Jwts.builder().setSubject("username");
+        if (compact) {
+            builder.claim(CompactClaims.ROLES, UserRole.USER.bit());
+        } else {
+            builder.claim("authorities", Collections.singletonList("ROLE_" + UserRole.USER.name()))
+                    .setIssuedAt(Date.from(now));
+        }
+        return builder
+                .setExpiration(Date.from(now.plusSeconds(24 * 60 * 60)))
+                .signWith(SignatureAlgorithm.HS256, SIGNING_KEY.getBytes())
+                .compact();
+    }
+}
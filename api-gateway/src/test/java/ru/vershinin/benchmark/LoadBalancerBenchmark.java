@@ -0,0 +1,132 @@
+package ru.vershinin.benchmark;
+
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.IRule;
+import com.netflix.loadbalancer.RoundRobinRule;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vershinin.config.LatencyAwareRule;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * сравнение правил ribbon на локальных экземплярах сервиса, один из которых отвечает медленно (slowMillis),
+ * остальные - за fastMillis. статистика ServerStats ведется так же, как в LoadBalancerContext, через который
+ * ходят Zuul и RestTemplate. в результатах интересны перцентили p0.99 режима SampleTime:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="LoadBalancerBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(32)
+@Fork(1)
+public class LoadBalancerBenchmark {
+
+    @Param({"round-robin", "latency-aware"})
+    public String rule;
+
+    @Param({"4"})
+    public int instances;
+
+    @Param({"2"})
+    public int fastMillis;
+
+    @Param({"100"})
+    public int slowMillis;
+
+    private final List<HttpServer> stubs = new ArrayList<>();
+
+    private ExecutorService stubExecutor;
+
+    private BaseLoadBalancer loadBalancer;
+
+    private HttpClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stubExecutor = Executors.newCachedThreadPool();
+        List<Server> servers = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            long delay = i == 0 ? slowMillis : fastMillis;
+            HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+            stub.createContext("/v1/protected", exchange -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "ok".getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            stub.setExecutor(stubExecutor);
+            stub.start();
+            stubs.add(stub);
+            servers.add(new Server("localhost", stub.getAddress().getPort()));
+        }
+
+        IRule loadBalancerRule = "latency-aware".equals(rule) ? new LatencyAwareRule() : new RoundRobinRule();
+        //без IPing все добавленные экземпляры считаются доступными
+        loadBalancer = new BaseLoadBalancer();
+        loadBalancer.setRule(loadBalancerRule);
+        loadBalancer.addServers(servers);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stubs.forEach(stub -> stub.stop(0));
+        stubExecutor.shutdownNow();
+        loadBalancer.shutdown();
+    }
+
+    @Benchmark
+    public int call() throws Exception {
+        Server server = loadBalancer.chooseServer(null);
+        ServerStats stats = loadBalancer.getLoadBalancerStats().getSingleServerStat(server);
+        stats.incrementActiveRequestsCount();
+        long start = System.nanoTime();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(
+                    URI.create("http://" + server.getHostPort() + "/v1/protected")).build();
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } finally {
+            stats.decrementActiveRequestsCount();
+            stats.incrementNumRequests();
+            stats.noteResponseTime((System.nanoTime() - start) / 1_000_000.0);
+        }
+    }
+}
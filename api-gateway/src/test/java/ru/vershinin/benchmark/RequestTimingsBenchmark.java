@@ -0,0 +1,62 @@
+package ru.vershinin.benchmark;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vershinin.model.GatewayStage;
+import ru.vershinin.service.GatewayTimings;
+import ru.vershinin.service.RequestTimings;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * стоимость замера этапов одного запроса: все отметки, которые ставят фильтры шлюза, и запись
+ * в гистограммы Prometheus. при 50 000 запросов в секунду доля одного ядра, занятая замерами, равна
+ * (нс на операцию) * 50 000 / 10^9; -prof gc показывает, что запись не выделяет память:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="RequestTimingsBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class RequestTimingsBenchmark {
+
+    private GatewayTimings gatewayTimings;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gatewayTimings = new GatewayTimings(Arrays.asList("api", "auth", "mail"), 100,
+                new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+    }
+
+    @Benchmark
+    public RequestTimings recordRequest() {
+        RequestTimings timings = RequestTimings.current();
+        timings.start(System.nanoTime());
+        timings.add(GatewayStage.AUTHENTICATION, 1_000);
+        timings.lap(GatewayStage.SECURITY, System.nanoTime());
+        timings.lap(GatewayStage.ZUUL_PRE, System.nanoTime());
+        timings.setRoute("api");
+        timings.lap(GatewayStage.UPSTREAM, System.nanoTime());
+        timings.finish(System.nanoTime());
+        gatewayTimings.record(timings);
+        return timings;
+    }
+}
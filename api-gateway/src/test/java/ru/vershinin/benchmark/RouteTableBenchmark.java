@@ -0,0 +1,92 @@
+package ru.vershinin.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.AntPathMatcher;
+import ru.vershinin.config.RouteTable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * поиск маршрута: перебор ant-шаблонов, как в SimpleRouteLocator.getZuulRoute, против RouteTable.
+ * маршруты вида /service-N/** с несколькими /service-N/v1/special/**, пути запросов выбираются случайно
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="RouteTableBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RouteTableBenchmark {
+
+    private static final int PATHS = 1024;
+
+    @Param({"10", "100", "1000"})
+    public int routes;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private Map<String, String> routeMap;
+
+    private RouteTable<String> routeTable;
+
+    private String[] paths;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        routeMap = new LinkedHashMap<>();
+        for (int i = 0; i < routes; i++) {
+            if (i % 10 == 0) {
+                //более узкие шаблоны идут раньше общих, как в zuul.routes
+                routeMap.put("/service-" + i + "/v1/special/**", "special-" + i);
+            }
+            routeMap.put("/service-" + i + "/**", "service-" + i);
+        }
+        routeTable = RouteTable.compile(routeMap);
+
+        Random random = new Random(42);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = "/service-" + random.nextInt(routes) + "/v1/resources/" + random.nextInt(1000);
+        }
+    }
+
+    @Benchmark
+    public String antPathMatcher() {
+        String path = nextPath();
+        for (Map.Entry<String, String> route : routeMap.entrySet()) {
+            if (pathMatcher.match(route.getKey(), path)) {
+                return route.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String routeTable() {
+        return routeTable.match(nextPath());
+    }
+
+    private String nextPath() {
+        next = (next + 1) & (PATHS - 1);
+        return paths[next];
+    }
+}
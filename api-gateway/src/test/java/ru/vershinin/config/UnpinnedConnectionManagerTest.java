@@ -0,0 +1,99 @@
+package ru.vershinin.config;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * разрешения повторяют пределы пула: лишний запрос ждет возврата соединения, а не выдачи внутри пула
+ */
+class UnpinnedConnectionManagerTest {
+
+    private static final HttpRoute FIRST = new HttpRoute(new HttpHost("localhost", 8081));
+
+    private static final HttpRoute SECOND = new HttpRoute(new HttpHost("localhost", 8082));
+
+    private final UnpinnedConnectionManager connectionManager = new UnpinnedConnectionManager(pool(3, 2));
+
+    @AfterEach
+    void tearDown() {
+        connectionManager.shutdown();
+    }
+
+    @Test
+    void routeLimitTimesOut() throws Exception {
+        lease(FIRST);
+        lease(FIRST);
+
+        assertThatThrownBy(() -> lease(FIRST)).isInstanceOf(ConnectionPoolTimeoutException.class);
+        assertThat(lease(SECOND)).isNotNull();
+    }
+
+    @Test
+    void totalLimitTimesOut() throws Exception {
+        lease(FIRST);
+        lease(FIRST);
+        lease(SECOND);
+
+        assertThatThrownBy(() -> lease(SECOND)).isInstanceOf(ConnectionPoolTimeoutException.class);
+        assertThat(connectionManager.getTotalStats().getLeased()).isEqualTo(3);
+    }
+
+    @Test
+    void releaseWakesWaitingRequest() throws Exception {
+        HttpClientConnection first = lease(FIRST);
+        lease(FIRST);
+        CompletableFuture<HttpClientConnection> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return connectionManager.requestConnection(FIRST, null).get(5, TimeUnit.SECONDS);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        while (connectionManager.getStats(FIRST).getPending() == 0) {
+            Thread.onSpinWait();
+        }
+
+        connectionManager.releaseConnection(first, null, 0, TimeUnit.MILLISECONDS);
+
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(connectionManager.getStats(FIRST).getLeased()).isEqualTo(2);
+        assertThat(connectionManager.getStats(FIRST).getPending()).isZero();
+    }
+
+    @Test
+    void requestTimedOutOnTotalLimitReturnsRoutePermit() throws Exception {
+        HttpClientConnection first = lease(FIRST);
+        HttpClientConnection second = lease(FIRST);
+        lease(SECOND);
+        //разрешение маршрута SECOND получено, общего нет
+        assertThatThrownBy(() -> lease(SECOND)).isInstanceOf(ConnectionPoolTimeoutException.class);
+
+        connectionManager.releaseConnection(first, null, 0, TimeUnit.MILLISECONDS);
+        connectionManager.releaseConnection(second, null, 0, TimeUnit.MILLISECONDS);
+
+        assertThat(lease(SECOND)).isNotNull();
+        assertThat(connectionManager.getStats(SECOND).getLeased()).isEqualTo(2);
+    }
+
+    private HttpClientConnection lease(HttpRoute route) throws Exception {
+        return connectionManager.requestConnection(route, null).get(50, TimeUnit.MILLISECONDS);
+    }
+
+    private static PoolingHttpClientConnectionManager pool(int maxTotal, int maxPerRoute) {
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        pool.setMaxTotal(maxTotal);
+        pool.setDefaultMaxPerRoute(maxPerRoute);
+        return pool;
+    }
+}
@@ -0,0 +1,263 @@
+package ru.vershinin.config;
+
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.monitoring.MonitoringHelper;
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.cloud.netflix.zuul.filters.post.SendResponseFilter;
+import org.springframework.cloud.netflix.zuul.filters.route.SimpleHostRoutingFilter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.client.RestTemplate;
+import ru.vershinin.model.JwtValidationMode;
+import ru.vershinin.service.AuthenticationCache;
+import ru.vershinin.service.JwtValidationService;
+import ru.vershinin.service.LocalJwtValidator;
+import ru.vershinin.service.RemoteJwtValidator;
+
+import javax.servlet.FilterChain;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.REQUEST_URI_KEY;
+
+/**
+ * проверка токена (LOCAL и REMOTE, с ожиданием одной проверки в SingleFlight) и пересылка запроса Zuul
+ * (SimpleHostRoutingFilter с пулом из фабрики, которую получают Ribbon и Zuul, и SendResponseFilter)
+ * в виртуальных потоках. запросов больше, чем соединений в пулах, поэтому часть запросов ждет соединение.
+ * JFR записывает jdk.VirtualThreadPinned без порога: любая блокировка виртуального потока, удерживающего монитор,
+ * валит тест. выполняется только на JDK 21+
+ */
+class VirtualThreadPinningTest {
+
+    private static final String SIGNING_KEY = "should-be-externally-configured";
+
+    private static final int REQUESTS = 400;
+
+    /**
+     * меньше, чем запросов: одновременные запросы с одним токеном ждут одну проверку
+     */
+    private static final int TOKENS = 40;
+
+    private HttpServer upstream;
+
+    private ExecutorService upstreamExecutor;
+
+    private PooledClientHttpRequestFactory requestFactory;
+
+    private CloseableHttpClient zuulHttpClient;
+
+    @BeforeAll
+    static void initZuulCounters() {
+        MonitoringHelper.initMocks();
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/v1/jwt/parse", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            sleep(10);
+            respond(exchange, "application/json", "{\"username\":\"username\",\"authorities\":[\"ROLE_USER\"]}");
+        });
+        upstream.createContext("/v1/items", exchange -> {
+            sleep(10);
+            respond(exchange, "text/plain", "items");
+        });
+        upstreamExecutor = Executors.newCachedThreadPool();
+        upstream.setExecutor(upstreamExecutor);
+        upstream.start();
+
+        requestFactory = new PooledClientHttpRequestFactory(50, 50, 1000, 5000, 5000, 30_000);
+        zuulHttpClient = HttpClients.custom()
+                .setConnectionManager(new UnpinnedConnectionManagerFactory()
+                        .newConnectionManager(false, 50, 50, -1, TimeUnit.MILLISECONDS, RegistryBuilder
+                                .<ConnectionSocketFactory>create()
+                                .register("http", PlainConnectionSocketFactory.getSocketFactory())))
+                .setDefaultRequestConfig(RequestConfig.custom().setConnectionRequestTimeout(5000).build())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        zuulHttpClient.close();
+        requestFactory.destroy();
+        upstream.stop(0);
+        upstreamExecutor.shutdownNow();
+    }
+
+    @Test
+    void jwtCheckAndZuulForwardDoNotPinVirtualThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21);
+
+        String baseUrl = "http://localhost:" + upstream.getAddress().getPort();
+        LocalJwtValidator localValidator = new LocalJwtValidator(SIGNING_KEY);
+        RemoteJwtValidator remoteValidator = new RemoteJwtValidator(new RestTemplate(requestFactory),
+                baseUrl + "/v1/jwt/parse");
+        AuthenticationFilter local = authenticationFilter(JwtValidationMode.LOCAL, localValidator, remoteValidator);
+        AuthenticationFilter remote = authenticationFilter(JwtValidationMode.REMOTE, localValidator, remoteValidator);
+        ProxyRequestHelper helper = new ProxyRequestHelper(new ZuulProperties());
+        SimpleHostRoutingFilter route = new SimpleHostRoutingFilter(helper, new ZuulProperties(), zuulHttpClient);
+        SendResponseFilter send = new SendResponseFilter(new ZuulProperties());
+        URL routeHost = new URL(baseUrl);
+
+        Path file = Files.createTempFile("virtual-thread-pinning", ".jfr");
+        List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+        List<RecordedEvent> pinned;
+        boolean finished;
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            ExecutorService executor = newVirtualThreadPerTaskExecutor();
+            for (int i = 0; i < REQUESTS; i++) {
+                AuthenticationFilter authenticationFilter = i % 2 == 0 ? local : remote;
+                String token = token(i % TOKENS);
+                responses.add(executor.submit(() -> forward(authenticationFilter, route, send, routeHost, token)));
+            }
+            executor.shutdown();
+            //закрепленные потоки могут занять все носители: тогда запросы выходят только по тайм-аутам пулов
+            finished = executor.awaitTermination(30, TimeUnit.SECONDS);
+
+            recording.stop();
+            recording.dump(file);
+            pinned = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        assertThat(pinned).as("pinned virtual threads:%n%s", describe(pinned)).isEmpty();
+        assertThat(finished).isTrue();
+        for (Future<MockHttpServletResponse> response : responses) {
+            MockHttpServletResponse servletResponse = response.get();
+            assertThat(servletResponse.getStatus()).isEqualTo(200);
+            assertThat(servletResponse.getContentAsString()).isEqualTo("items");
+        }
+    }
+
+    /**
+     * фильтр аутентификации, внутри цепочки - маршрутизация и отправка ответа Zuul
+     * @return - ответ клиенту
+     */
+    private static MockHttpServletResponse forward(AuthenticationFilter authenticationFilter,
+                                                   SimpleHostRoutingFilter route, SendResponseFilter send,
+                                                   URL routeHost, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/items");
+        request.addHeader(AuthenticationFilter.HEADER, AuthenticationFilter.HEADER_VALUE_PREFIX + " " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            assertThat(authentication).isNotNull();
+            RequestContext ctx = RequestContext.getCurrentContext();
+            ctx.setRequest(request);
+            ctx.setResponse(response);
+            ctx.setRouteHost(routeHost);
+            ctx.set(REQUEST_URI_KEY, "/v1/items");
+            route.run();
+            send.run();
+        };
+        try {
+            authenticationFilter.doFilterInternal(request, response, chain);
+        } finally {
+            RequestContext.getCurrentContext().unset();
+            SecurityContextHolder.clearContext();
+        }
+        return response;
+    }
+
+    private static AuthenticationFilter authenticationFilter(JwtValidationMode mode, LocalJwtValidator localValidator,
+                                                             RemoteJwtValidator remoteValidator) {
+        //кэш с нулевым временем жизни: каждый запрос проверяет токен
+        return new AuthenticationFilter(new JwtValidationService(mode, localValidator, remoteValidator),
+                new AuthenticationCache(10_000, Duration.ZERO, new SimpleMeterRegistry()));
+    }
+
+    private static String token(int user) {
+        Instant now = Instant.now();
+        return Jwts.builder()
+                .setSubject("user-" + user)
+                .claim("authorities", Collections.singletonList("ROLE_USER"))
+                .setIssuedAt(Date.from(now))
+                .setExpiration(Date.from(now.plusSeconds(60)))
+                .signWith(SignatureAlgorithm.HS256, SIGNING_KEY.getBytes())
+                .compact();
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor появился в Java 21, тесты компилируются для Java 11
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws ReflectiveOperationException {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+
+    private static String describe(List<RecordedEvent> events) {
+        return events.stream()
+                .map(event -> event.getThread() + " pinned for " + event.getDuration().toMillis() + " ms\n"
+                        + (event.getStackTrace() == null ? "" : event.getStackTrace().getFrames().stream()
+                        .limit(20)
+                        .map(VirtualThreadPinningTest::frame)
+                        .collect(Collectors.joining("\n"))))
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    private static String frame(RecordedFrame frame) {
+        return "    at " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
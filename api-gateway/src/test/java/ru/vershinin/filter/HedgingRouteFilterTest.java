@@ -0,0 +1,326 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import com.netflix.zuul.monitoring.MonitoringHelper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerRequest;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.vershinin.config.PooledClientHttpRequestFactory;
+import ru.vershinin.service.RequestHedging;
+import ru.vershinin.service.StreamingRoutes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.REQUEST_URI_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SERVICE_ID_KEY;
+
+/**
+ * пул дублирования из одного потока: второй запрос не помещается в пул, и ответ или ошибка первого
+ * должны завершить запрос, а не оставить поток запроса ждать без конца.
+ * с пулом побольше второй запрос идет на тот же upstream по адресу 127.0.0.1: upstream отвечает медленно
+ * только на адрес localhost, то есть первому запросу
+ */
+class HedgingRouteFilterTest {
+
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * после стольких ответов задержка впервые пересчитывается из статистики
+     */
+    private static final int RECALCULATED_AFTER = 256;
+
+    private HttpServer upstream;
+
+    private ExecutorService upstreamExecutor;
+
+    private ServiceInstance primary;
+
+    private PooledClientHttpRequestFactory requestFactory;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private RequestHedging requestHedging;
+
+    private AlternatingLoadBalancer loadBalancer;
+
+    private HedgingRouteFilter filter;
+
+    @BeforeAll
+    static void initZuulCounters() {
+        //конструктор ZuulException увеличивает счетчик Zuul
+        MonitoringHelper.initMocks();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/v1/fail", exchange -> {
+            sleep(300);
+            //соединение закрывается без ответа - у клиента IOException; HttpClient повторяет такой GET,
+            //поэтому тайм-аут чтения в тесте больше суммы попыток
+            exchange.close();
+        });
+        upstream.createContext("/v1/slow", exchange -> {
+            sleep(300);
+            byte[] body = "slow".getBytes(StandardCharsets.US_ASCII);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        upstream.createContext("/v1/hang", exchange -> sleep(5_000));
+        upstream.createContext("/v1/race", exchange -> {
+            String host = exchange.getRequestHeaders().getFirst("Host");
+            if (host != null && host.startsWith("localhost")) {
+                sleep(200);
+            }
+            //ответ без тела уходит одной записью в сокет и не ждет отложенного ACK
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        upstream.createContext("/v1/fast", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        //прерванные первые запросы не должны задерживать остальные
+        upstreamExecutor = Executors.newCachedThreadPool();
+        upstream.setExecutor(upstreamExecutor);
+        upstream.start();
+
+        primary = new DefaultServiceInstance("api-1", "protected-service", "localhost",
+                upstream.getAddress().getPort(), false);
+        //второй экземпляр не должен получить запрос: в пуле нет потока
+        filter(new DefaultServiceInstance("api-2", "protected-service", "127.0.0.2", 1, false),
+                1, 100, Duration.ofMillis(50), Duration.ofMillis(50));
+    }
+
+    /**
+     * @param other - экземпляр для второго запроса
+     * @param maxThreads - потоки пула дублирования
+     * @param budgetPercent - доля дублируемых запросов, %
+     * @param minDelay - минимальная задержка второго запроса
+     * @param maxDelay - максимальная задержка второго запроса
+     */
+    private void filter(ServiceInstance other, int maxThreads, double budgetPercent, Duration minDelay,
+                        Duration maxDelay) throws Exception {
+        if (requestHedging != null) {
+            requestHedging.shutdown();
+            requestFactory.destroy();
+        }
+        meterRegistry = new SimpleMeterRegistry();
+        requestHedging = new RequestHedging(Collections.singletonList("api"), 0.95, minDelay, maxDelay,
+                budgetPercent, maxThreads, meterRegistry);
+        requestFactory = new PooledClientHttpRequestFactory(8, 8, 1000, 3000, 1000, 30_000);
+        loadBalancer = new AlternatingLoadBalancer(primary, other);
+        filter = new HedgingRouteFilter(loadBalancer,
+                new ProxyRequestHelper(new ZuulProperties()), requestFactory, requestHedging,
+                new StreamingRoutes(Collections.emptyList(), null));
+    }
+
+    private ServiceInstance sameUpstreamByAddress() {
+        return new DefaultServiceInstance("api-2", "protected-service", "127.0.0.1",
+                upstream.getAddress().getPort(), false);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        RequestContext.getCurrentContext().unset();
+        requestHedging.shutdown();
+        requestFactory.destroy();
+        upstream.stop(0);
+        upstreamExecutor.shutdownNow();
+    }
+
+    @Test
+    void primaryFailureCompletesRequestWhenHedgeIsRejected() {
+        ZuulException ex = assertTimeoutPreemptively(TEST_TIMEOUT,
+                () -> catchThrowableOfType(() -> route("/v1/fail"), ZuulException.class));
+
+        assertThat(ex).isNotNull();
+        assertThat(ex.nStatusCode).isEqualTo(502);
+        assertThat(fired()).isZero();
+    }
+
+    @Test
+    void primaryAnswerIsUsedWhenHedgeIsRejected() {
+        int status = assertTimeoutPreemptively(TEST_TIMEOUT, () -> route("/v1/slow"));
+
+        assertThat(status).isEqualTo(200);
+        assertThat(fired()).isZero();
+    }
+
+    @Test
+    void waitIsBoundedByReadTimeout() {
+        ZuulException ex = assertTimeoutPreemptively(TEST_TIMEOUT,
+                () -> catchThrowableOfType(() -> route("/v1/hang"), ZuulException.class));
+
+        assertThat(ex).isNotNull();
+        assertThat(ex.nStatusCode).isIn(502, 504);
+    }
+
+    @Test
+    void hedgeFiresAndWinsOverSlowPrimary() throws Exception {
+        filter(sameUpstreamByAddress(), 4, 100, Duration.ofMillis(50), Duration.ofMillis(50));
+
+        int status = assertTimeoutPreemptively(TEST_TIMEOUT, () -> route("/v1/race"));
+
+        assertThat(status).isEqualTo(200);
+        assertThat(fired()).isEqualTo(1);
+        assertThat(meterRegistry.counter("gateway.hedging.won", "route", "api").count()).isEqualTo(1);
+    }
+
+    @Test
+    void hedgesStopWhenBudgetIsSpent() throws Exception {
+        //нулевая доля: доступен только начальный запас токенов
+        filter(sameUpstreamByAddress(), 4, 0, Duration.ofMillis(20), Duration.ofMillis(20));
+        int requests = 30;
+
+        assertTimeoutPreemptively(TEST_TIMEOUT, () -> {
+            for (int i = 0; i < requests; i++) {
+                assertThat(route("/v1/race")).isEqualTo(200);
+            }
+        });
+
+        double exhausted = meterRegistry.counter("gateway.hedging.budget.exhausted", "route", "api").count();
+        assertThat(exhausted).isPositive();
+        assertThat(fired() + exhausted).isEqualTo(requests);
+    }
+
+    @Test
+    void delayFollowsFastUpstream() throws Exception {
+        filter(sameUpstreamByAddress(), 4, 10, Duration.ofMillis(1), Duration.ofSeconds(1));
+
+        assertTimeoutPreemptively(TEST_TIMEOUT, () -> {
+            for (int i = 0; i < RECALCULATED_AFTER; i++) {
+                assertThat(route("/v1/fast")).isEqualTo(200);
+            }
+        });
+
+        assertThat(requestHedging.route("api").getDelayNanos()).isLessThan(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(fired()).isZero();
+    }
+
+    @Test
+    void winningHedgesDoNotLowerDelay() throws Exception {
+        //первый запрос всегда медленнее задержки: если бы учитывалось время второго, задержка упала бы до минимума
+        Duration maxDelay = Duration.ofMillis(20);
+        filter(sameUpstreamByAddress(), 4, 100, Duration.ofMillis(1), maxDelay);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            for (int i = 0; i < RECALCULATED_AFTER; i++) {
+                assertThat(route("/v1/race")).isEqualTo(200);
+            }
+        });
+
+        assertThat(fired()).isPositive();
+        assertThat(requestHedging.route("api").getDelayNanos()).isEqualTo(maxDelay.toNanos());
+    }
+
+    private double fired() {
+        return meterRegistry.counter("gateway.hedging.fired", "route", "api").count();
+    }
+
+    /**
+     * assertTimeoutPreemptively выполняет проверку в другом потоке, поэтому RequestContext заполняется здесь же
+     * @return - код ответа
+     */
+    private int route(String upstreamUri) throws ZuulException {
+        RequestContext.getCurrentContext().unset();
+        loadBalancer.reset();
+        RequestContext ctx = RequestContext.getCurrentContext();
+        try {
+            ctx.setRequest(new MockHttpServletRequest("GET", "/api" + upstreamUri));
+            ctx.setResponse(new MockHttpServletResponse());
+            ctx.set(PROXY_KEY, "api");
+            ctx.set(SERVICE_ID_KEY, "protected-service");
+            ctx.set(REQUEST_URI_KEY, upstreamUri);
+            assertThat(filter.shouldFilter()).isTrue();
+            filter.run();
+            return ctx.getResponseStatusCode();
+        } finally {
+            ctx.unset();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * первый вызов choose в запросе возвращает основной экземпляр, следующие - другой
+     */
+    private static final class AlternatingLoadBalancer implements LoadBalancerClient {
+
+        private final ServiceInstance primary;
+
+        private final ServiceInstance other;
+
+        private final AtomicInteger chosen = new AtomicInteger();
+
+        private AlternatingLoadBalancer(ServiceInstance primary, ServiceInstance other) {
+            this.primary = primary;
+            this.other = other;
+        }
+
+        private void reset() {
+            chosen.set(0);
+        }
+
+        @Override
+        public ServiceInstance choose(String serviceId) {
+            return chosen.getAndIncrement() == 0 ? primary : other;
+        }
+
+        @Override
+        public <T> T execute(String serviceId, LoadBalancerRequest<T> request) throws IOException {
+            return execute(serviceId, choose(serviceId), request);
+        }
+
+        @Override
+        public <T> T execute(String serviceId, ServiceInstance serviceInstance, LoadBalancerRequest<T> request)
+                throws IOException {
+            try {
+                return request.apply(serviceInstance);
+            } catch (IOException | RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        @Override
+        public URI reconstructURI(ServiceInstance instance, URI original) {
+            return original;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.context.RequestContext;
+import com.netflix.zuul.exception.ZuulException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+import ru.vershinin.service.ResponseCache;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ключ кэша не содержит заголовков из Vary, кроме Accept: такие ответы не должны попадать в кэш
+ */
+class ResponseCachePostFilterTest {
+
+    private static final String KEY = "api||application/json|/v1/items";
+
+    private ResponseCache responseCache;
+
+    private ResponseCachePostFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        responseCache = new ResponseCache(Collections.singletonList("api"), Duration.ofSeconds(30),
+                DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), new SimpleMeterRegistry());
+        filter = new ResponseCachePostFilter(responseCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContext.getCurrentContext().unset();
+    }
+
+    @Test
+    void responseWithoutVaryIsCached() throws ZuulException {
+        respond();
+
+        assertThat(responseCache.get(KEY)).isNotNull();
+    }
+
+    @Test
+    void varyOnKeyedHeadersIsCached() throws ZuulException {
+        respond("Vary", "Accept", "Vary", "accept-encoding");
+
+        assertThat(responseCache.get(KEY)).isNotNull();
+    }
+
+    @Test
+    void varyOnOtherHeadersIsNotCached() throws ZuulException {
+        respond("Vary", "Accept, Accept-Language");
+
+        assertThat(responseCache.get(KEY)).isNull();
+    }
+
+    @Test
+    void varyInSecondHeaderIsNotCached() throws ZuulException {
+        respond("Vary", "Accept-Encoding", "Vary", "Cookie");
+
+        assertThat(responseCache.get(KEY)).isNull();
+    }
+
+    @Test
+    void varyStarIsNotCached() throws ZuulException {
+        respond("Vary", "*");
+
+        assertThat(responseCache.get(KEY)).isNull();
+    }
+
+    @Test
+    void bodyReachesClientWhenResponseIsNotCached() throws Exception {
+        respond("Vary", "Cookie");
+
+        byte[] body = StreamUtils.copyToByteArray(RequestContext.getCurrentContext().getResponseDataStream());
+        assertThat(new String(body, StandardCharsets.UTF_8)).isEqualTo("[]");
+    }
+
+    /**
+     * @param originHeaders - пары имя, значение заголовков ответа upstream
+     */
+    private void respond(String... originHeaders) throws ZuulException {
+        RequestContext ctx = RequestContext.getCurrentContext();
+        ctx.setRequest(new MockHttpServletRequest("GET", "/api/v1/items"));
+        ctx.setResponse(new MockHttpServletResponse());
+        ctx.set(ResponseCachePreFilter.CACHE_KEY, KEY);
+        ctx.setResponseStatusCode(200);
+        for (int i = 0; i < originHeaders.length; i += 2) {
+            ctx.addOriginResponseHeader(originHeaders[i], originHeaders[i + 1]);
+        }
+        ctx.setResponseDataStream(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(filter.shouldFilter()).isTrue();
+        filter.run();
+    }
+}
@@ -0,0 +1,347 @@
+package ru.vershinin.filter;
+
+import com.netflix.zuul.context.RequestContext;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerRequest;
+import org.springframework.cloud.netflix.zuul.filters.ProxyRequestHelper;
+import org.springframework.cloud.netflix.zuul.filters.ZuulProperties;
+import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import ru.vershinin.config.PooledClientHttpRequestFactory;
+import ru.vershinin.service.BufferPool;
+import ru.vershinin.service.StreamingRoutes;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PROXY_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.REQUEST_URI_KEY;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.SERVICE_ID_KEY;
+
+/**
+ * передача сотен мегабайт через StreamingRouteFilter в обе стороны. тела генерируются и проверяются на лету,
+ * память, выделенная потоком запроса, сравнивается для маленькой и большой передачи - разница должна быть
+ * пренебрежимо мала по сравнению с размером тела
+ */
+class StreamingRouteFilterTest {
+
+    private static final long LARGE_BODY = DataSize.ofMegabytes(512).toBytes();
+
+    private static final long SMALL_BODY = DataSize.ofMegabytes(8).toBytes();
+
+    private static final long ALLOCATION_TOLERANCE = DataSize.ofMegabytes(4).toBytes();
+
+    private HttpServer upstream;
+
+    private PooledClientHttpRequestFactory requestFactory;
+
+    private StreamingRouteFilter filter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/v1/upload", exchange -> {
+            long received = 0;
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = exchange.getRequestBody()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    received += read;
+                }
+            }
+            byte[] body = Long.toString(received).getBytes(StandardCharsets.US_ASCII);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        upstream.createContext("/v1/download", exchange -> {
+            long size = Long.parseLong(exchange.getRequestURI().getQuery().substring("size=".length()));
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, size);
+            byte[] chunk = new byte[64 * 1024];
+            Arrays.fill(chunk, (byte) 'x');
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (long remaining = size; remaining > 0; remaining -= chunk.length) {
+                    out.write(chunk, 0, (int) Math.min(chunk.length, remaining));
+                }
+            }
+        });
+        upstream.createContext("/v1/broken", exchange -> {
+            exchange.sendResponseHeaders(200, DataSize.ofMegabytes(1).toBytes());
+            exchange.getResponseBody().write(new byte[64 * 1024]);
+            //соединение закрывается до конца тела
+            exchange.close();
+        });
+        upstream.start();
+
+        ServiceInstance instance = new DefaultServiceInstance("mail-service-1", "mail-service", "localhost",
+                upstream.getAddress().getPort(), false);
+        requestFactory = new PooledClientHttpRequestFactory(4, 4, 1000, 60_000, 1000, 30_000);
+        filter = new StreamingRouteFilter(new SingleInstanceLoadBalancer(instance),
+                new ProxyRequestHelper(new ZuulProperties()), requestFactory,
+                new BufferPool(DataSize.ofKilobytes(64), 4),
+                new StreamingRoutes(Collections.singletonList("mail"), null));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        RequestContext.getCurrentContext().unset();
+        requestFactory.destroy();
+        upstream.stop(0);
+    }
+
+    @Test
+    void uploadStreamsWithoutBufferingBody() throws Exception {
+        long small = upload(SMALL_BODY);
+        long large = upload(LARGE_BODY);
+
+        assertThat(large - small).isLessThan(ALLOCATION_TOLERANCE);
+    }
+
+    @Test
+    void downloadStreamsWithoutBufferingBody() throws Exception {
+        long small = download(SMALL_BODY);
+        long large = download(LARGE_BODY);
+
+        assertThat(large - small).isLessThan(ALLOCATION_TOLERANCE);
+    }
+
+    @Test
+    void responseIsWrittenOnceAndUpstreamStageIsTimed() throws Exception {
+        download(1024);
+
+        RequestContext ctx = RequestContext.getCurrentContext();
+        assertThat(ctx.getBoolean(StreamingRouteFilter.RESPONSE_SENT_KEY)).isTrue();
+        assertThat(ctx.sendZuulResponse()).isTrue();
+        assertThat(ctx.get(SERVICE_ID_KEY)).isNull();
+    }
+
+    @Test
+    void upstreamFailureAfterCommitAbortsClientConnection() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/mail/v1/broken");
+        CountingResponse response = new CountingResponse();
+        prepareContext(request, response, "/v1/broken");
+
+        filter.run();
+
+        assertThat(response.isCommitted()).isTrue();
+        assertThat(request.getAttribute(StreamingRouteFilter.ABORTED_ATTRIBUTE)).isInstanceOf(IOException.class);
+        assertThat(RequestContext.getCurrentContext().getThrowable()).isNull();
+    }
+
+    /**
+     * @return - байт выделено потоком запроса
+     */
+    private long upload(long size) throws Exception {
+        MockHttpServletRequest request = new GeneratedBodyRequest("/mail/v1/upload", size);
+        CountingResponse response = new CountingResponse();
+        prepareContext(request, response, "/v1/upload");
+
+        long allocated = allocatedBytes();
+        filter.run();
+        allocated = allocatedBytes() - allocated;
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.head()).isEqualTo(Long.toString(size));
+        return allocated;
+    }
+
+    /**
+     * @return - байт выделено потоком запроса
+     */
+    private long download(long size) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/mail/v1/download");
+        request.setQueryString("size=" + size);
+        CountingResponse response = new CountingResponse();
+        prepareContext(request, response, "/v1/download");
+
+        long allocated = allocatedBytes();
+        filter.run();
+        allocated = allocatedBytes() - allocated;
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.count()).isEqualTo(size);
+        return allocated;
+    }
+
+    private void prepareContext(MockHttpServletRequest request, MockHttpServletResponse response, String upstreamUri) {
+        RequestContext.getCurrentContext().unset();
+        RequestContext ctx = RequestContext.getCurrentContext();
+        ctx.setRequest(request);
+        ctx.setResponse(response);
+        ctx.set(PROXY_KEY, "mail");
+        ctx.set(SERVICE_ID_KEY, "mail-service");
+        ctx.set(REQUEST_URI_KEY, upstreamUri);
+        assertThat(filter.shouldFilter()).isTrue();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * запрос, тело которого генерируется при чтении и не хранится в памяти
+     */
+    private static final class GeneratedBodyRequest extends MockHttpServletRequest {
+
+        private final long size;
+
+        private GeneratedBodyRequest(String uri, long size) {
+            super("POST", uri);
+            this.size = size;
+            setContentType("application/octet-stream");
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return size;
+        }
+
+        @Override
+        public int getContentLength() {
+            return size > Integer.MAX_VALUE ? -1 : (int) size;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return new DelegatingServletInputStream(new InputStream() {
+
+                private long remaining = size;
+
+                @Override
+                public int read() {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    remaining--;
+                    return 'x';
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    int count = (int) Math.min(len, remaining);
+                    Arrays.fill(b, off, off + count, (byte) 'x');
+                    remaining -= count;
+                    return count;
+                }
+            });
+        }
+    }
+
+    /**
+     * ответ, который считает байты тела и хранит только его начало
+     */
+    private static final class CountingResponse extends MockHttpServletResponse {
+
+        private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+
+        private long count;
+
+        private final ServletOutputStream outputStream = new ServletOutputStream() {
+
+            @Override
+            public void write(int b) {
+                setCommitted(true);
+                if (count < 64) {
+                    head.write(b);
+                }
+                count++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                setCommitted(true);
+                if (count < 64) {
+                    head.write(b, off, (int) Math.min(len, 64 - count));
+                }
+                count += len;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        private long count() {
+            return count;
+        }
+
+        private String head() {
+            return new String(head.toByteArray(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * балансировщик с одним экземпляром сервиса
+     */
+    private static final class SingleInstanceLoadBalancer implements LoadBalancerClient {
+
+        private final ServiceInstance instance;
+
+        private SingleInstanceLoadBalancer(ServiceInstance instance) {
+            this.instance = instance;
+        }
+
+        @Override
+        public ServiceInstance choose(String serviceId) {
+            return instance;
+        }
+
+        @Override
+        public <T> T execute(String serviceId, LoadBalancerRequest<T> request) throws IOException {
+            return execute(serviceId, instance, request);
+        }
+
+        @Override
+        public <T> T execute(String serviceId, ServiceInstance serviceInstance, LoadBalancerRequest<T> request)
+                throws IOException {
+            try {
+                return request.apply(serviceInstance);
+            } catch (IOException | RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        @Override
+        public URI reconstructURI(ServiceInstance instance, URI original) {
+            return original;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.vershinin.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+import ru.vershinin.dto.JwtParseResponseDto;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * вызывающий поток не должен ждать пакет без конца: после тайм-аута, остановки или прерывания сборщика
+ * токен проверяется отдельным запросом
+ */
+class BatchingJwtValidatorTest {
+
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private BatchingJwtValidator validator;
+
+    @AfterEach
+    void tearDown() {
+        validator.shutdown();
+    }
+
+    @Test
+    void slowBatchFallsBackToDirectValidation() {
+        validator = new BatchingJwtValidator(new SlowRestTemplate(), new DirectValidator(), "http://auth-service",
+                Duration.ofMillis(100), Duration.ofMillis(1), 64, 1);
+
+        JwtParseResponseDto responseDto = assertTimeoutPreemptively(TEST_TIMEOUT, () -> validator.parseJwt("token"));
+
+        assertThat(responseDto.getUsername()).isEqualTo("direct");
+    }
+
+    @Test
+    void tokenAfterShutdownIsValidatedDirectly() {
+        validator = new BatchingJwtValidator(new SlowRestTemplate(), new DirectValidator(), "http://auth-service",
+                Duration.ofMinutes(1), Duration.ofMillis(1), 64, 1);
+        validator.shutdown();
+
+        JwtParseResponseDto responseDto = assertTimeoutPreemptively(TEST_TIMEOUT, () -> validator.parseJwt("token"));
+
+        assertThat(responseDto.getUsername()).isEqualTo("direct");
+    }
+
+    @Test
+    void partialBatchIsReleasedOnShutdown() throws Exception {
+        //окно больше теста: пакет не будет отправлен, пока сборщик ждет остальные токены
+        validator = new BatchingJwtValidator(new SlowRestTemplate(), new DirectValidator(), "http://auth-service",
+                Duration.ofMinutes(1), Duration.ofMinutes(1), 64, 1);
+        CompletableFuture<JwtParseResponseDto> result = CompletableFuture.supplyAsync(() -> validator.parseJwt("token"));
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        validator.shutdown();
+
+        assertThat(result.get(TEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).getUsername()).isEqualTo("direct");
+    }
+
+    /**
+     * auth-service, который не отвечает на пакетный запрос дольше теста
+     */
+    private static final class SlowRestTemplate extends RestTemplate {
+
+        @Override
+        public <T> T postForObject(String url, Object request, Class<T> responseType, Object... uriVariables) {
+            try {
+                TimeUnit.SECONDS.sleep(30);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("batch request interrupted");
+        }
+    }
+
+    private static final class DirectValidator extends RemoteJwtValidator {
+
+        private DirectValidator() {
+            super(new RestTemplate(), "http://auth-service/v1/jwt/parse");
+        }
+
+        @Override
+        public JwtParseResponseDto parseJwt(String token) {
+            return new JwtParseResponseDto("direct", Collections.singletonList("ROLE_USER"));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.vershinin.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.vershinin.model.GatewayStage;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * маршруты получают количество, сумму и максимум, бакеты гистограммы - только у отдельной метрики
+ * gateway.request.stage.all, чтобы сумма gateway.request.stage по stage не считала запросы дважды
+ */
+class GatewayTimingsTest {
+
+    private final PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    @Test
+    void histogramIsPublishedOnlyForAllRoutesMetric() {
+        GatewayTimings gatewayTimings = new GatewayTimings(Arrays.asList("api", "auth"), 100, meterRegistry);
+
+        gatewayTimings.record(upstream("api"));
+
+        assertThat(allRoutesTimer().count()).isEqualTo(1);
+        assertThat(timer("api").count()).isEqualTo(1);
+        String scrape = meterRegistry.scrape();
+        assertThat(scrape).contains("gateway_request_stage_all_seconds_bucket{stage=\"upstream\"");
+        assertThat(scrape).doesNotContain("gateway_request_stage_seconds_bucket");
+    }
+
+    @Test
+    void sumByStageCountsEachRequestOnce() {
+        GatewayTimings gatewayTimings = new GatewayTimings(Arrays.asList("api", "auth"), 100, meterRegistry);
+
+        gatewayTimings.record(upstream("api"));
+        gatewayTimings.record(upstream("auth"));
+        gatewayTimings.record(upstream(null));
+
+        long total = meterRegistry.get(GatewayTimings.METRIC_NAME)
+                .tag("stage", GatewayStage.UPSTREAM.getTag())
+                .timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+        assertThat(total).isEqualTo(3);
+        assertThat(allRoutesTimer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void routeNamedAllIsAnOrdinaryRoute() {
+        GatewayTimings gatewayTimings = new GatewayTimings(Arrays.asList("api", "all"), 100, meterRegistry);
+
+        gatewayTimings.record(upstream("all"));
+
+        assertThat(timer("all").count()).isEqualTo(1);
+        assertThat(timer("other").count()).isZero();
+    }
+
+    private static RequestTimings upstream(String route) {
+        RequestTimings timings = RequestTimings.current();
+        timings.start(0);
+        timings.setRoute(route);
+        timings.lap(GatewayStage.UPSTREAM, 5_000_000);
+        return timings;
+    }
+
+    private Timer timer(String route) {
+        return meterRegistry.get(GatewayTimings.METRIC_NAME)
+                .tag("stage", GatewayStage.UPSTREAM.getTag())
+                .tag("route", route)
+                .timer();
+    }
+
+    private Timer allRoutesTimer() {
+        return meterRegistry.get(GatewayTimings.ALL_ROUTES_METRIC_NAME)
+                .tag("stage", GatewayStage.UPSTREAM.getTag())
+                .timer();
+    }
+}
@@ -1,7 +1,10 @@
 package ru.vershinin.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.http.HttpHeaders;
 import ru.vershinin.dto.LoginDto;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -9,16 +12,21 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.AbstractAuthenticationProcessingFilter;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import ru.vershinin.service.CompactClaims;
+import ru.vershinin.service.PasswordVerificationPool;
 
 import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.stream.Collectors;
 
 public class JwtUsernamePasswordAuthenticationFilter extends AbstractAuthenticationProcessingFilter {
@@ -27,8 +35,17 @@ public class JwtUsernamePasswordAuthenticationFilter extends AbstractAuthenticat
 
     public static final String HEADER_VALUE_PREFIX = "Bearer";
 
+    /**
+     * общий для всех запросов: ObjectReader неизменяемый и потокобезопасный, тип LoginDto разобран заранее
+     */
+    private static final ObjectReader LOGIN_READER = new ObjectMapper().readerFor(LoginDto.class);
+
     private final String signingKey;
 
+    private final PasswordVerificationPool passwordVerificationPool;
+
+    private final boolean compactClaims;
+
     /**
      * Конструктор -
      * Создает сопоставление с предоставленным шаблоном, которое будет соответствовать методу HTTP.
@@ -36,11 +53,17 @@ public class JwtUsernamePasswordAuthenticationFilter extends AbstractAuthenticat
      * (включая предоставленные права доступа) в случае успеха.
      * @param authenticationManager
      * @param signingKey - ключ для генерации уникального hash
+     * @param passwordVerificationPool - пул, в котором проверяется пароль
+     * @param compactClaims - выпускать токены с маской ролей вместо списка (CompactClaims)
      */
-    public JwtUsernamePasswordAuthenticationFilter(AuthenticationManager authenticationManager, String signingKey) {
+    public JwtUsernamePasswordAuthenticationFilter(AuthenticationManager authenticationManager, String signingKey,
+                                                   PasswordVerificationPool passwordVerificationPool,
+                                                   boolean compactClaims) {
         super(new AntPathRequestMatcher("/v1/login", "POST"));
         setAuthenticationManager(authenticationManager);
         this.signingKey = signingKey;
+        this.passwordVerificationPool = passwordVerificationPool;
+        this.compactClaims = compactClaims;
     }
 
     /**
@@ -61,13 +84,32 @@ public class JwtUsernamePasswordAuthenticationFilter extends AbstractAuthenticat
     public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response)
             throws AuthenticationException, IOException {
             // получение объекта loginDto из запроса, в данной реализации получаем имя пользователя, пароль и роль
-        LoginDto loginDto = new ObjectMapper().readValue(request.getInputStream(), LoginDto.class);
-        //
-        return getAuthenticationManager().authenticate(new UsernamePasswordAuthenticationToken(
+        LoginDto loginDto = LOGIN_READER.readValue(request.getInputStream());
+        //проверка пароля (bcrypt) выполняется в отдельном пуле, поток Tomcat только ждет
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                 loginDto.getUsername(),
                 loginDto.getPassword(),
                 Collections.emptyList()
-        ));
+        );
+        return passwordVerificationPool.authenticate(getAuthenticationManager(), authentication);
+    }
+
+    /**
+     * переполненная очередь проверок паролей - сразу 503 с Retry-After, без обработчика ошибок входа
+     * @param request - запрос
+     * @param response - ответ
+     * @param failed - причина отказа
+     */
+    @Override
+    protected void unsuccessfulAuthentication(HttpServletRequest request, HttpServletResponse response,
+                                              AuthenticationException failed) throws IOException, ServletException {
+        if (failed instanceof PasswordVerificationPool.SaturatedException) {
+            SecurityContextHolder.clearContext();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        super.unsuccessfulAuthentication(request, response, failed);
     }
 
     /**
@@ -93,12 +135,20 @@ public class JwtUsernamePasswordAuthenticationFilter extends AbstractAuthenticat
     protected void successfulAuthentication(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
                                             Authentication auth) {
         Instant now = Instant.now();
+        List<String> authorities = auth.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority).collect(Collectors.toList());
         //Строитель для построения JWT.
-        String token = Jwts.builder()
-                .setSubject(auth.getName())//проверяет, существует ли экземпляр Claims как тело JWT, после устанавливает subject поле Claims с указанным значением
-                .claim("authorities", auth.getAuthorities().stream()//гарантирует, что экземпляр Claims существует как тело JWT, после устанавливает указанное свойство в экземпляре Claims
-                        .map(GrantedAuthority::getAuthority).collect(Collectors.toList()))
-                .setIssuedAt(Date.from(now))//отметка времени, когда был создан JWT
+        JwtBuilder builder = Jwts.builder()
+                .setSubject(auth.getName());//проверяет, существует ли экземпляр Claims как тело JWT, после устанавливает subject поле Claims с указанным значением
+        int roles = compactClaims ? CompactClaims.mask(authorities) : -1;
+        if (roles >= 0) {
+            //компактная запись: маска ролей вместо списка строк, без iat
+            builder.claim(CompactClaims.ROLES, roles);
+        } else {
+            builder.claim("authorities", authorities)//гарантирует, что экземпляр Claims существует как тело JWT, после устанавливает указанное свойство в экземпляре Claims
+                    .setIssuedAt(Date.from(now));//отметка времени, когда был создан JWT
+        }
+        String token = builder
                 .setExpiration(Date.from(now.plusSeconds(24 * 60 * 60))) // token expires in 24 hours
                 .signWith(SignatureAlgorithm.HS256, signingKey.getBytes())//Подписываем построенный JWT с использованием указанного алгоритма с указанным ключом, создавая JWS.
                 .compact();//создаем JWT и сериализуем его в компактную URL-безопасную строку в соответствии с правилами компактной сериализации JWT
@@ -1,6 +1,6 @@
 package ru.vershinin.config;
 
-import ru.vershinin.model.UserRole;
+import ru.vershinin.service.PasswordVerificationPool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -8,8 +8,8 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import javax.servlet.http.HttpServletResponse;
@@ -19,25 +19,36 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     private final String signingKey;
 
+    private final PasswordVerificationPool passwordVerificationPool;
+
+    private final boolean compactClaims;
+
     /**
      * внедряем зависимость через конструктор, который в свою очередь инициализирует signingKey из файла application.yml
      * @param signingKey - ключ для генерации hash
+     * @param passwordVerificationPool - пул проверки паролей при входе
+     * @param compactClaims - выпускать токены с компактными claims
      */
     @Autowired
-    public WebSecurityConfiguration(@Value("${security.jwt.signing-key}") String signingKey) {
+    public WebSecurityConfiguration(@Value("${security.jwt.signing-key}") String signingKey,
+                                    PasswordVerificationPool passwordVerificationPool,
+                                    @Value("${security.jwt.compact-claims:false}") boolean compactClaims) {
         this.signingKey = signingKey;
+        this.passwordVerificationPool = passwordVerificationPool;
+        this.compactClaims = compactClaims;
     }
 
     /**
-     * создает пользователя In-Memory authentication
+     * подключает хранилище пользователей; по умолчанию это CompactUserDetailsManager
      * @param auth - объект вспомогательного класса, который упрощает настройку UserDetailService
+     * @param userDetailsService - поиск пользователя по имени при входе
      * @throws Exception
      */
     @Autowired
-    public void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
-        PasswordEncoder encoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
-        auth.inMemoryAuthentication()
-                .withUser("username").password(encoder.encode("password")).roles(UserRole.USER.name());
+    public void configureGlobal(AuthenticationManagerBuilder auth, UserDetailsService userDetailsService)
+            throws Exception {
+        auth.userDetailsService(userDetailsService)
+                .passwordEncoder(PasswordEncoderFactories.createDelegatingPasswordEncoder());
     }
     /**
      * определяет, какие URL пути должны быть защищены, а какие нет
@@ -59,11 +70,13 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .authenticationEntryPoint((request, response, ex) -> response.sendError(HttpServletResponse.SC_UNAUTHORIZED))
         .and()
                 //Обрабатывает отправку формы аутентификации.
-                .addFilterAfter(new JwtUsernamePasswordAuthenticationFilter(authenticationManager(), signingKey), UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(new JwtUsernamePasswordAuthenticationFilter(authenticationManager(), signingKey,
+                        passwordVerificationPool, compactClaims), UsernamePasswordAuthenticationFilter.class)
                 .authorizeRequests()
                 //данные адреса будут доступны всем
                 .antMatchers("/v1/login").permitAll()
                 .antMatchers("/v1/jwt/parse").permitAll()
+                .antMatchers("/v1/jwt/parse/batch").permitAll()
                 .anyRequest().authenticated();
     }
 }
\ No newline at end of file
@@ -1,25 +1,37 @@
 package ru.vershinin.controller;
 
 import ru.vershinin.dto.ErrorDto;
+import ru.vershinin.dto.JwtBatchParseRequestDto;
+import ru.vershinin.dto.JwtBatchParseResponseDto;
 import ru.vershinin.dto.JwtParseRequestDto;
 import ru.vershinin.dto.JwtParseResponseDto;
+import ru.vershinin.dto.JwtParseResultDto;
 import ru.vershinin.service.JwtService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import ru.vershinin.service.JwtValidationResult;
+import ru.vershinin.service.RejectionLog;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RestController
 @RequestMapping("/v1/jwt")
 public class JwtController {
 
-    private final Logger log = LoggerFactory.getLogger(JwtController.class);
+    /**
+     * максимальное число токенов в одном пакетном запросе
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
 
     final JwtService jwtService;
 
-    public JwtController(JwtService jwtService) {
+    private final RejectionLog rejectionLog;
+
+    public JwtController(JwtService jwtService, RejectionLog rejectionLog) {
         this.jwtService = jwtService;
+        this.rejectionLog = rejectionLog;
     }
 
     /**
@@ -27,15 +39,37 @@ public class JwtController {
      */
     @RequestMapping(value = "/parse", method = RequestMethod.POST)
     public ResponseEntity<?> getSomeSensitiveData(@RequestBody JwtParseRequestDto requestDto) {
-        try {
-            JwtParseResponseDto jwtParseResponseDto = jwtService.parseJwt(requestDto.getToken());
-            return new ResponseEntity<>(jwtParseResponseDto, HttpStatus.OK);
+        JwtValidationResult result = jwtService.validate(requestDto.getToken());
+        if (result.isValid()) {
+            return new ResponseEntity<>(result.getClaims(), HttpStatus.OK);
+        }
+        rejectionLog.rejected(result.getError());
+        return new ResponseEntity<>(new ErrorDto(result.getError()), HttpStatus.UNAUTHORIZED);
+    }
 
-        } catch (Exception ex) {
-            log.error("JWT parsing error: {}, token: {}", ex.getLocalizedMessage(), requestDto);
-            ex.printStackTrace();
+    /**
+     * Validate and parse a batch of JWTs, one result per token in request order
+     */
+    @RequestMapping(value = "/parse/batch", method = RequestMethod.POST)
+    public ResponseEntity<?> parseBatch(@RequestBody JwtBatchParseRequestDto requestDto) {
+        List<String> tokens = requestDto.getTokens();
+        if (tokens == null || tokens.size() > MAX_BATCH_SIZE) {
+            return new ResponseEntity<>(new ErrorDto("tokens must contain at most " + MAX_BATCH_SIZE + " items"),
+                    HttpStatus.BAD_REQUEST);
+        }
 
-            return new ResponseEntity<>(new ErrorDto(ex.getLocalizedMessage()), HttpStatus.UNAUTHORIZED);
+        List<JwtParseResultDto> results = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            JwtValidationResult result = jwtService.validate(token);
+            if (result.isValid()) {
+                JwtParseResponseDto parsed = result.getClaims();
+                results.add(new JwtParseResultDto(parsed.getUsername(), parsed.getAuthorities(),
+                        parsed.getExpiration(), null));
+            } else {
+                rejectionLog.rejected(result.getError());
+                results.add(new JwtParseResultDto(null, null, null, result.getError()));
+            }
         }
+        return new ResponseEntity<>(new JwtBatchParseResponseDto(results), HttpStatus.OK);
     }
 }
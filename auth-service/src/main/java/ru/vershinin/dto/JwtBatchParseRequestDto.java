@@ -0,0 +1,23 @@
+package ru.vershinin.dto;
+
+import java.util.List;
+
+public class JwtBatchParseRequestDto {
+
+    private List<String> tokens;
+
+    public JwtBatchParseRequestDto() {
+    }
+
+    public JwtBatchParseRequestDto(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public void setTokens(List<String> tokens) {
+        this.tokens = tokens;
+    }
+}
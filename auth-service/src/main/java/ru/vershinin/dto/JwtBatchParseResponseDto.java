@@ -0,0 +1,26 @@
+package ru.vershinin.dto;
+
+import java.util.List;
+
+public class JwtBatchParseResponseDto {
+
+    /**
+     * результаты в том же порядке, что и токены в запросе
+     */
+    private List<JwtParseResultDto> results;
+
+    public JwtBatchParseResponseDto() {
+    }
+
+    public JwtBatchParseResponseDto(List<JwtParseResultDto> results) {
+        this.results = results;
+    }
+
+    public List<JwtParseResultDto> getResults() {
+        return results;
+    }
+
+    public void setResults(List<JwtParseResultDto> results) {
+        this.results = results;
+    }
+}
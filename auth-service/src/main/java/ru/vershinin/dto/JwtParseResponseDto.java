@@ -1,5 +1,6 @@
 package ru.vershinin.dto;
 
+import java.util.Date;
 import java.util.List;
 
 public class JwtParseResponseDto {
@@ -8,6 +9,8 @@ public class JwtParseResponseDto {
 
     private List<String> authorities;
 
+    private Date expiration;
+
     public JwtParseResponseDto() {
     }
 
@@ -16,6 +19,12 @@ public class JwtParseResponseDto {
         this.authorities = authorities;
     }
 
+    public JwtParseResponseDto(String username, List<String> authorities, Date expiration) {
+        this.username = username;
+        this.authorities = authorities;
+        this.expiration = expiration;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -31,4 +40,12 @@ public class JwtParseResponseDto {
     public void setAuthorities(List<String> authorities) {
         this.authorities = authorities;
     }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Date expiration) {
+        this.expiration = expiration;
+    }
 }
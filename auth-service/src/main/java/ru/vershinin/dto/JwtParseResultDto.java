@@ -0,0 +1,60 @@
+package ru.vershinin.dto;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * результат проверки одного токена в пакетном запросе: либо данные пользователя, либо текст ошибки
+ */
+public class JwtParseResultDto {
+
+    private String username;
+
+    private List<String> authorities;
+
+    private Date expiration;
+
+    private String error;
+
+    public JwtParseResultDto() {
+    }
+
+    public JwtParseResultDto(String username, List<String> authorities, Date expiration, String error) {
+        this.username = username;
+        this.authorities = authorities;
+        this.expiration = expiration;
+        this.error = error;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public List<String> getAuthorities() {
+        return authorities;
+    }
+
+    public void setAuthorities(List<String> authorities) {
+        this.authorities = authorities;
+    }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Date expiration) {
+        this.expiration = expiration;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
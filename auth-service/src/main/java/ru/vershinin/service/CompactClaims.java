@@ -0,0 +1,78 @@
+package ru.vershinin.service;
+
+import ru.vershinin.model.UserRole;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * компактная запись claims (security.jwt.compact-claims): роли - битовая маска UserRole.bit() в claim "r"
+ * вместо списка строк "authorities", без "iat". тело токена становится примерно вдвое короче.
+ * проверка понимает обе записи, поэтому включать и выключать режим можно без отзыва выданных токенов
+ */
+public final class CompactClaims {
+
+    public static final String ROLES = "r";
+
+    private static final UserRole[] ROLES_BY_ORDINAL = UserRole.values();
+
+    private static final int ALL_ROLES = (1 << ROLES_BY_ORDINAL.length) - 1;
+
+    /**
+     * списки ролей для каждой маски, общие для всех токенов
+     */
+    private static final List<List<String>> AUTHORITIES;
+
+    static {
+        List<List<String>> authorities = new ArrayList<>(ALL_ROLES + 1);
+        for (int mask = 0; mask <= ALL_ROLES; mask++) {
+            List<String> list = new ArrayList<>();
+            for (UserRole role : ROLES_BY_ORDINAL) {
+                if ((mask & role.bit()) != 0) {
+                    list.add("ROLE_" + role.name());
+                }
+            }
+            authorities.add(Collections.unmodifiableList(list));
+        }
+        AUTHORITIES = authorities;
+    }
+
+    private CompactClaims() {
+    }
+
+    /**
+     * @param mask - значение claim "r"
+     * @return - роли; неизвестные биты (роли более новой версии) пропускаются
+     */
+    public static List<String> authorities(long mask) {
+        return AUTHORITIES.get((int) (mask & ALL_ROLES));
+    }
+
+    /**
+     * @param authorities - роли пользователя
+     * @return - маска для claim "r" или -1, если среди ролей есть не UserRole - тогда токен выпускается со списком
+     */
+    public static int mask(Collection<String> authorities) {
+        int mask = 0;
+        for (String authority : authorities) {
+            UserRole role = role(authority);
+            if (role == null) {
+                return -1;
+            }
+            mask |= role.bit();
+        }
+        return mask;
+    }
+
+    private static UserRole role(String authority) {
+        for (UserRole role : ROLES_BY_ORDINAL) {
+            if (authority.length() == 5 + role.name().length() && authority.startsWith("ROLE_")
+                    && authority.endsWith(role.name())) {
+                return role;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,206 @@
+package ru.vershinin.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.stereotype.Component;
+import ru.vershinin.model.UserRole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * пользователи auth-service в {@link CompactUserStore}: поиск при входе за O(1) без блокировок,
+ * около 70 байт на пользователя вместе с индексом.
+ * при запуске пользователи загружаются из security.users.file (строки "имя:закодированный пароль:USER,..."),
+ * без файла создается единственный пользователь username/password.
+ * добавление, изменение и удаление через методы {@link UserDetailsManager} применяются сразу, без перезагрузки.
+ * чтобы хранить пользователей в другом месте, достаточно заменить этот бин своим UserDetailsService
+ */
+@Component
+public class CompactUserDetailsManager implements UserDetailsManager {
+
+    /**
+     * средняя длина строки файла с хэшем bcrypt - для оценки числа пользователей по размеру файла
+     */
+    private static final int AVERAGE_LINE = 80;
+
+    private static final int READ_BUFFER = 1 << 20;
+
+    private final Logger log = LoggerFactory.getLogger(CompactUserDetailsManager.class);
+
+    private final CompactUserStore store;
+
+    /**
+     * @param file - файл с пользователями; пустая строка - пользователь по умолчанию
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public CompactUserDetailsManager(@Value("${security.users.file:}") String file, MeterRegistry meterRegistry) {
+        if (file.isEmpty()) {
+            this.store = new CompactUserStore(1);
+            store.put("username", PasswordEncoderFactories.createDelegatingPasswordEncoder().encode("password"),
+                    CompactUserStore.roleMask(List.of(UserRole.USER)), 0);
+        } else {
+            this.store = load(Paths.get(file));
+        }
+        Gauge.builder("auth.users", store, CompactUserStore::size)
+                .description("Users in the user store")
+                .register(meterRegistry);
+        Gauge.builder("auth.users.memory", store, CompactUserStore::memoryBytes)
+                .description("Memory used by user records and their index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("auth.users.wasted", store, CompactUserStore::wastedBytes)
+                .description("Memory held by replaced and deleted user records until the next load")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param store - готовое хранилище
+     */
+    public CompactUserDetailsManager(CompactUserStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) {
+        UserDetails user = store.find(username);
+        if (user == null) {
+            throw new UsernameNotFoundException(username);
+        }
+        return user;
+    }
+
+    @Override
+    public synchronized void createUser(UserDetails user) {
+        if (store.contains(user.getUsername())) {
+            throw new IllegalArgumentException("user should not exist");
+        }
+        put(user, user.getPassword());
+    }
+
+    @Override
+    public synchronized void updateUser(UserDetails user) {
+        if (!store.contains(user.getUsername())) {
+            throw new IllegalArgumentException("user should exist");
+        }
+        put(user, user.getPassword());
+    }
+
+    @Override
+    public synchronized void deleteUser(String username) {
+        store.remove(username);
+    }
+
+    /**
+     * меняет пароль текущего пользователя; старый пароль не проверяется, как в InMemoryUserDetailsManager
+     * без AuthenticationManager
+     * @param oldPassword - старый пароль
+     * @param newPassword - новый закодированный пароль
+     */
+    @Override
+    public synchronized void changePassword(String oldPassword, String newPassword) {
+        Authentication currentUser = SecurityContextHolder.getContext().getAuthentication();
+        if (currentUser == null) {
+            throw new AccessDeniedException("Can't change password as no Authentication object found in context "
+                    + "for current user.");
+        }
+        UserDetails user = store.find(currentUser.getName());
+        if (user == null) {
+            throw new IllegalStateException("Current user doesn't exist in database.");
+        }
+        put(user, newPassword);
+    }
+
+    @Override
+    public boolean userExists(String username) {
+        return store.contains(username);
+    }
+
+    private void put(UserDetails user, String password) {
+        int roles = 0;
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            roles |= roleMask(authority.getAuthority());
+        }
+        int flags = (user.isEnabled() ? 0 : CompactUserStore.DISABLED)
+                | (user.isAccountNonLocked() ? 0 : CompactUserStore.LOCKED)
+                | (user.isAccountNonExpired() ? 0 : CompactUserStore.ACCOUNT_EXPIRED)
+                | (user.isCredentialsNonExpired() ? 0 : CompactUserStore.CREDENTIALS_EXPIRED);
+        store.put(user.getUsername(), password, roles, flags);
+    }
+
+    /**
+     * загрузка файла одним проходом; индекс создается сразу на оценку числа строк
+     * @param path - файл с пользователями
+     * @return - заполненное хранилище
+     */
+    private CompactUserStore load(Path path) {
+        long started = System.nanoTime();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), READ_BUFFER)) {
+            long expected = Files.size(path) / AVERAGE_LINE;
+            CompactUserStore loaded = new CompactUserStore((int) Math.min(expected, Integer.MAX_VALUE / 2));
+            //строка ролей повторяется у тысяч пользователей - маска вычисляется один раз
+            Map<String, Integer> roleMasks = new HashMap<>();
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                int first = line.indexOf(':');
+                int last = line.lastIndexOf(':');
+                if (first <= 0 || last == first) {
+                    throw new IllegalArgumentException(path + ":" + lineNumber + " is not username:password:roles");
+                }
+                int roles = roleMasks.computeIfAbsent(line.substring(last + 1), CompactUserDetailsManager::roleList);
+                loaded.put(line.substring(0, first), line.substring(first + 1, last), roles, 0);
+            }
+            log.info("loaded {} users from {} in {} ms", loaded.size(), path,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            return loaded;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static int roleList(String roles) {
+        int mask = 0;
+        for (String role : roles.split(",")) {
+            if (!role.isBlank()) {
+                mask |= roleMask("ROLE_" + role.trim());
+            }
+        }
+        return mask;
+    }
+
+    private static int roleMask(String authority) {
+        if (!authority.startsWith("ROLE_")) {
+            throw new IllegalArgumentException("only roles are supported: " + authority);
+        }
+        return CompactUserStore.roleMask(List.of(UserRole.valueOf(authority.substring(5))));
+    }
+}
@@ -0,0 +1,472 @@
+package ru.vershinin.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import ru.vershinin.model.UserRole;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * компактное хранилище пользователей для миллионов записей.
+ * записи упакованы подряд в массивы байт по 1 МБ: хэш имени, флаги, роли битами, имя в UTF-8 и пароль;
+ * хэш bcrypt хранится в двоичном виде: 42 байта (вариант, стоимость, 40 байт соли с хэшем) вместо 60 символов,
+ * плюс байт формата, который помнит префикс {bcrypt}.
+ * индекс - открытая адресация с линейным пробированием в long[]: в слоте смещение записи и 24 бита хэша,
+ * поэтому при коллизии запись читается, только если совпали эти биты.
+ * чтение без блокировок: запись сначала заполняется, затем слот публикуется (setRelease/getAcquire).
+ * изменения - под монитором хранилища; измененная запись дописывается заново, старая остается мусором (wastedBytes)
+ */
+public final class CompactUserStore {
+
+    public static final int DISABLED = 1;
+
+    public static final int LOCKED = 2;
+
+    public static final int ACCOUNT_EXPIRED = 4;
+
+    public static final int CREDENTIALS_EXPIRED = 8;
+
+    private static final int CHUNK_BITS = 20;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int OFFSET_BITS = 40;
+
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    /**
+     * слот удаленной записи: смещение 0 при ненулевом слоте; пустой слот - 0
+     */
+    private static final long TOMBSTONE = 1L << OFFSET_BITS;
+
+    private static final double MAX_LOAD = 0.7;
+
+    private static final int MAX_USERNAME_BYTES = 255;
+
+    private static final int MAX_PASSWORD_BYTES = 1024;
+
+    private static final byte RAW = 0;
+
+    private static final byte BCRYPT = 1;
+
+    private static final byte PREFIXED_BCRYPT = 2;
+
+    private static final String BCRYPT_PREFIX = "{bcrypt}";
+
+    /**
+     * $2a$10$ + 22 символа соли + 31 символ хэша
+     */
+    private static final int BCRYPT_LENGTH = 60;
+
+    private static final int BCRYPT_PACKED = 40;
+
+    private static final String BCRYPT_ALPHABET = "./ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    private static final byte[] BCRYPT_VALUES = new byte[128];
+
+    private static final UserRole[] ROLES = UserRole.values();
+
+    /**
+     * списки ролей для каждой комбинации битов, общие для всех пользователей
+     */
+    private static final List<List<GrantedAuthority>> AUTHORITIES;
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    static {
+        if (ROLES.length > 8) {
+            throw new ExceptionInInitializerError("roles are stored in one byte");
+        }
+        Arrays.fill(BCRYPT_VALUES, (byte) -1);
+        for (int i = 0; i < BCRYPT_ALPHABET.length(); i++) {
+            BCRYPT_VALUES[BCRYPT_ALPHABET.charAt(i)] = (byte) i;
+        }
+        List<List<GrantedAuthority>> authorities = new ArrayList<>(1 << ROLES.length);
+        for (int mask = 0; mask < 1 << ROLES.length; mask++) {
+            List<GrantedAuthority> list = new ArrayList<>();
+            for (UserRole role : ROLES) {
+                if ((mask & role.bit()) != 0) {
+                    list.add(new SimpleGrantedAuthority("ROLE_" + role.name()));
+                }
+            }
+            authorities.add(Collections.unmodifiableList(list));
+        }
+        AUTHORITIES = authorities;
+    }
+
+    private volatile long[] slots;
+
+    private volatile byte[][] chunks = new byte[0][];
+
+    /**
+     * конец последней записи; пишется только под монитором
+     */
+    private long position;
+
+    /**
+     * занятые слоты, включая удаленные
+     */
+    private int used;
+
+    private volatile int size;
+
+    private volatile long wastedBytes;
+
+    /**
+     * @param expectedSize - ожидаемое число пользователей, чтобы загрузка обошлась без перестроения индекса
+     */
+    public CompactUserStore(int expectedSize) {
+        this.slots = new long[capacityFor(expectedSize)];
+    }
+
+    /**
+     * @param roles - роли пользователя
+     * @return - битовая маска ролей для {@link #put}
+     */
+    public static int roleMask(Iterable<UserRole> roles) {
+        int mask = 0;
+        for (UserRole role : roles) {
+            mask |= role.bit();
+        }
+        return mask;
+    }
+
+    /**
+     * @param username - имя пользователя
+     * @return - пользователь или null; каждый вызов возвращает новый экземпляр с паролем
+     */
+    public UserDetails find(String username) {
+        long slot = slotOf(username);
+        return slot == 0 ? null : read(slot & OFFSET_MASK);
+    }
+
+    /**
+     * @param username - имя пользователя
+     * @return - true, если пользователь есть
+     */
+    public boolean contains(String username) {
+        return slotOf(username) != 0;
+    }
+
+    /**
+     * добавляет пользователя или заменяет существующего
+     * @param username - имя пользователя, не длиннее 255 байт в UTF-8
+     * @param password - закодированный пароль, например {bcrypt}$2a$10$...
+     * @param roles - битовая маска ролей ({@link #roleMask})
+     * @param flags - DISABLED, LOCKED, ACCOUNT_EXPIRED, CREDENTIALS_EXPIRED
+     * @return - true, если пользователь добавлен, false - если заменен
+     */
+    public synchronized boolean put(String username, String password, int roles, int flags) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        if (name.length == 0 || name.length > MAX_USERNAME_BYTES) {
+            throw new IllegalArgumentException("username must be 1-" + MAX_USERNAME_BYTES + " bytes in UTF-8");
+        }
+        if (password.length() > MAX_PASSWORD_BYTES) {
+            throw new IllegalArgumentException("password hash is longer than " + MAX_PASSWORD_BYTES);
+        }
+        if (roles >>> ROLES.length != 0) {
+            throw new IllegalArgumentException("unknown roles: " + Integer.toBinaryString(roles));
+        }
+        int hash = hash(username);
+        long[] table = slots;
+        int mask = table.length - 1;
+        int free = -1;
+        int i = hash & mask;
+        for (long slot = table[i]; slot != 0; i = (i + 1) & mask, slot = table[i]) {
+            if (matches(slot, hash, name)) {
+                long offset = append(hash, name, password, roles, flags);
+                SLOTS.setRelease(table, i, slot(hash, offset));
+                wastedBytes += recordLength(slot & OFFSET_MASK);
+                return false;
+            }
+            if (free < 0 && (slot & OFFSET_MASK) == 0) {
+                free = i;
+            }
+        }
+        long offset = append(hash, name, password, roles, flags);
+        if (free < 0) {
+            free = i;
+            used++;
+        }
+        SLOTS.setRelease(table, free, slot(hash, offset));
+        size++;
+        if (used > table.length * MAX_LOAD) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * @param username - имя пользователя
+     * @return - true, если пользователь был удален
+     */
+    public synchronized boolean remove(String username) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(username);
+        long[] table = slots;
+        int mask = table.length - 1;
+        for (int i = hash & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (matches(table[i], hash, name)) {
+                wastedBytes += recordLength(table[i] & OFFSET_MASK);
+                SLOTS.setRelease(table, i, TOMBSTONE);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return - число пользователей
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - память хранилища: записи и индекс, байт
+     */
+    public long memoryBytes() {
+        return (long) chunks.length * CHUNK_SIZE + (long) slots.length * Long.BYTES;
+    }
+
+    /**
+     * @return - байты замененных и удаленных записей; освобождаются только при новой загрузке
+     */
+    public long wastedBytes() {
+        return wastedBytes;
+    }
+
+    private long slotOf(String username) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(username);
+        long[] table = slots;
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            long slot = (long) SLOTS.getAcquire(table, i);
+            if (slot == 0 || matches(slot, hash, name)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean matches(long slot, int hash, byte[] name) {
+        long offset = slot & OFFSET_MASK;
+        if (offset == 0 || (slot >>> OFFSET_BITS) != (hash >>> 8)) {
+            return false;
+        }
+        //смещение в слоте на 1 больше, чтобы пустой слот был нулем
+        long position = offset - 1;
+        byte[] chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int at = (int) (position & (CHUNK_SIZE - 1));
+        if (readInt(chunk, at) != hash || (chunk[at + 6] & 0xFF) != name.length) {
+            return false;
+        }
+        return Arrays.equals(chunk, at + 7, at + 7 + name.length, name, 0, name.length);
+    }
+
+    /**
+     * запись: hash(4), flags(1), roles(1), длина имени(1), имя, формат пароля(1), пароль
+     */
+    private long append(int hash, byte[] name, String password, int roles, int flags) {
+        byte[] packed = packBcrypt(password);
+        byte[] raw = packed == null ? password.getBytes(StandardCharsets.UTF_8) : null;
+        int length = 7 + name.length + 1 + (packed != null ? packed.length : 2 + raw.length);
+        byte[] chunk = reserve(length);
+        int at = (int) (position & (CHUNK_SIZE - 1));
+        long offset = position + 1;
+        writeInt(chunk, at, hash);
+        chunk[at + 4] = (byte) flags;
+        chunk[at + 5] = (byte) roles;
+        chunk[at + 6] = (byte) name.length;
+        System.arraycopy(name, 0, chunk, at + 7, name.length);
+        int p = at + 7 + name.length;
+        if (packed != null) {
+            chunk[p] = password.startsWith(BCRYPT_PREFIX) ? PREFIXED_BCRYPT : BCRYPT;
+            System.arraycopy(packed, 0, chunk, p + 1, packed.length);
+        } else {
+            chunk[p] = RAW;
+            chunk[p + 1] = (byte) (raw.length >>> 8);
+            chunk[p + 2] = (byte) raw.length;
+            System.arraycopy(raw, 0, chunk, p + 3, raw.length);
+        }
+        position += length;
+        return offset;
+    }
+
+    /**
+     * место под запись в текущем массиве; запись не пересекает границу массива
+     */
+    private byte[] reserve(int length) {
+        int at = (int) (position & (CHUNK_SIZE - 1));
+        int index = (int) (position >>> CHUNK_BITS);
+        if (index < chunks.length && at + length > CHUNK_SIZE) {
+            position = (long) ++index << CHUNK_BITS;
+        }
+        if (index == chunks.length) {
+            if (position + CHUNK_SIZE > OFFSET_MASK) {
+                throw new IllegalStateException("user store is full");
+            }
+            byte[][] grown = Arrays.copyOf(chunks, index + 1);
+            grown[index] = new byte[CHUNK_SIZE];
+            chunks = grown;
+        }
+        return chunks[index];
+    }
+
+    private UserDetails read(long offset) {
+        long position = offset - 1;
+        byte[] chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int at = (int) (position & (CHUNK_SIZE - 1));
+        int flags = chunk[at + 4];
+        int roles = chunk[at + 5] & 0xFF;
+        int nameLength = chunk[at + 6] & 0xFF;
+        String username = new String(chunk, at + 7, nameLength, StandardCharsets.UTF_8);
+        int p = at + 7 + nameLength;
+        String password;
+        if (chunk[p] == RAW) {
+            int length = ((chunk[p + 1] & 0xFF) << 8) | (chunk[p + 2] & 0xFF);
+            password = new String(chunk, p + 3, length, StandardCharsets.UTF_8);
+        } else {
+            password = unpackBcrypt(chunk, p + 1, chunk[p] == PREFIXED_BCRYPT);
+        }
+        return new User(username, password, (flags & DISABLED) == 0, (flags & ACCOUNT_EXPIRED) == 0,
+                (flags & CREDENTIALS_EXPIRED) == 0, (flags & LOCKED) == 0, AUTHORITIES.get(roles));
+    }
+
+    private int recordLength(long offset) {
+        long position = offset - 1;
+        byte[] chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int at = (int) (position & (CHUNK_SIZE - 1));
+        int p = at + 7 + (chunk[at + 6] & 0xFF);
+        if (chunk[p] != RAW) {
+            return p + 1 + 2 + BCRYPT_PACKED - at;
+        }
+        return p + 3 + (((chunk[p + 1] & 0xFF) << 8) | (chunk[p + 2] & 0xFF)) - at;
+    }
+
+    private void rehash() {
+        long[] table = slots;
+        //удаленные записи не переносятся: если живых мало, хватает таблицы того же размера
+        long[] rebuilt = new long[capacityFor(size)];
+        int mask = rebuilt.length - 1;
+        for (long slot : table) {
+            long offset = slot & OFFSET_MASK;
+            if (offset == 0) {
+                continue;
+            }
+            long position = offset - 1;
+            int hash = readInt(chunks[(int) (position >>> CHUNK_BITS)], (int) (position & (CHUNK_SIZE - 1)));
+            int i = hash & mask;
+            while (rebuilt[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            rebuilt[i] = slot;
+        }
+        used = size;
+        slots = rebuilt;
+    }
+
+    /**
+     * $2a$10$ + соль и хэш: вариант (1 байт), стоимость (1 байт) и 53 символа по 6 бит в 40 байтах
+     * @return - упакованный хэш или null, если пароль в другом формате
+     */
+    private static byte[] packBcrypt(String password) {
+        int from = password.startsWith(BCRYPT_PREFIX) ? BCRYPT_PREFIX.length() : 0;
+        if (password.length() - from != BCRYPT_LENGTH || password.charAt(from) != '$'
+                || password.charAt(from + 1) != '2' || password.charAt(from + 3) != '$'
+                || password.charAt(from + 6) != '$') {
+            return null;
+        }
+        char variant = password.charAt(from + 2);
+        char tens = password.charAt(from + 4);
+        char units = password.charAt(from + 5);
+        if (variant >= 128 || tens < '0' || tens > '9' || units < '0' || units > '9') {
+            return null;
+        }
+        byte[] packed = new byte[2 + BCRYPT_PACKED];
+        packed[0] = (byte) variant;
+        packed[1] = (byte) ((tens - '0') * 10 + units - '0');
+        long bits = 0;
+        int buffered = 0;
+        int length = 2;
+        for (int i = from + 7; i < password.length(); i++) {
+            char c = password.charAt(i);
+            int value = c < 128 ? BCRYPT_VALUES[c] : -1;
+            if (value < 0) {
+                return null;
+            }
+            bits = (bits << 6) | value;
+            buffered += 6;
+            if (buffered >= 8) {
+                buffered -= 8;
+                packed[length++] = (byte) (bits >>> buffered);
+            }
+        }
+        //53 * 6 = 318 бит: последние 6 бит дополняются нулями до байта
+        packed[length] = (byte) (bits << (8 - buffered));
+        return packed;
+    }
+
+    private static String unpackBcrypt(byte[] chunk, int at, boolean prefixed) {
+        int from = prefixed ? BCRYPT_PREFIX.length() : 0;
+        char[] chars = new char[from + BCRYPT_LENGTH];
+        BCRYPT_PREFIX.getChars(0, from, chars, 0);
+        int cost = chunk[at + 1];
+        chars[from] = '$';
+        chars[from + 1] = '2';
+        chars[from + 2] = (char) chunk[at];
+        chars[from + 3] = '$';
+        chars[from + 4] = (char) ('0' + cost / 10);
+        chars[from + 5] = (char) ('0' + cost % 10);
+        chars[from + 6] = '$';
+        int bits = 0;
+        int buffered = 0;
+        int p = at + 2;
+        for (int i = from + 7; i < chars.length; i++) {
+            if (buffered < 6) {
+                bits = (bits << 8) | (chunk[p++] & 0xFF);
+                buffered += 8;
+            }
+            buffered -= 6;
+            chars[i] = BCRYPT_ALPHABET.charAt((bits >>> buffered) & 0x3F);
+        }
+        return new String(chars);
+    }
+
+    private static long slot(int hash, long offset) {
+        return ((long) (hash >>> 8) << OFFSET_BITS) | offset;
+    }
+
+    private static int hash(String username) {
+        int h = username.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int capacityFor(int size) {
+        long needed = (long) Math.ceil(Math.max(size, 16) / MAX_LOAD) + 1;
+        if (needed > 1 << 30) {
+            throw new IllegalArgumentException("too many users: " + size);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private static int readInt(byte[] bytes, int at) {
+        return (bytes[at] << 24) | ((bytes[at + 1] & 0xFF) << 16) | ((bytes[at + 2] & 0xFF) << 8) | (bytes[at + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] bytes, int at, int value) {
+        bytes[at] = (byte) (value >>> 24);
+        bytes[at + 1] = (byte) (value >>> 16);
+        bytes[at + 2] = (byte) (value >>> 8);
+        bytes[at + 3] = (byte) value;
+    }
+}
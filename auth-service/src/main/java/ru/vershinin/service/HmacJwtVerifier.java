@@ -0,0 +1,229 @@
+package ru.vershinin.service;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import ru.vershinin.dto.JwtParseResponseDto;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * быстрая проверка токенов HS256 в том виде, в каком их выпускает JwtUsernamePasswordAuthenticationFilter.
+ * ключ вычисляется один раз, Mac и буферы у каждого потока свои.
+ * порядок проверок - от дешевых к дорогим: структура строки (checkStructure), затем в verify - exp и nbf,
+ * потом подпись по символам компактной строки, и только после нее sub и роли (JwtClaimsParser):
+ * для поддельного токена строки и списки из тела не создаются.
+ * если токен в другом формате (другой заголовок или алгоритм, необычное тело), verify возвращает null -
+ * такой токен проверяет jjwt
+ */
+final class HmacJwtVerifier {
+
+    /**
+     * заголовки, которые выпускает jjwt для HS256; остальные проверяет jjwt
+     */
+    private static final List<String> SUPPORTED_HEADERS = List.of(
+            encode("{\"alg\":\"HS256\"}"),
+            encode("{\"alg\":\"HS256\",\"typ\":\"JWT\"}"),
+            encode("{\"typ\":\"JWT\",\"alg\":\"HS256\"}"));
+
+    private static final int SIGNATURE_BYTES = 32;
+
+    /**
+     * длина подписи HS256 в base64url без дополнения
+     */
+    private static final int SIGNATURE_CHARS = 43;
+
+    private static final byte[] BASE64_URL = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_URL, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_URL[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final SecretKeySpec key;
+
+    private final ThreadLocal<VerifierState> state;
+
+    /**
+     * @param key - ключ подписи
+     */
+    HmacJwtVerifier(byte[] key) {
+        this.key = new SecretKeySpec(key, SignatureAlgorithm.HS256.getJcaName());
+        this.state = ThreadLocal.withInitial(this::newState);
+    }
+
+    /**
+     * проверки без декодирования: три части через точку, непустая подпись, только символы base64url
+     * @param token - компактная строка токена
+     * @return - отказ или null, если структура правильная
+     */
+    JwtValidationResult checkStructure(String token) {
+        if (token == null || token.isEmpty()) {
+            return JwtValidationResult.MISSING;
+        }
+        int dots = 0;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '.') {
+                dots++;
+            } else if ((c >= 128 || BASE64_URL[c] < 0) && c != '=' && c != '+' && c != '/') {
+                //дополнение '=' и символы '+', '/' обычного base64 допускает jjwt - такие токены он и проверяет
+                return JwtValidationResult.NOT_BASE64URL;
+            }
+        }
+        if (dots != 2) {
+            return JwtValidationResult.MALFORMED;
+        }
+        return token.charAt(token.length() - 1) == '.' ? JwtValidationResult.UNSIGNED : null;
+    }
+
+    /**
+     * проверяет exp и nbf, а затем подпись - так же, как Jwts.parser() без допуска расхождения часов.
+     * просроченный токен отклоняется без вычисления подписи: отказ по неподписанным данным безопасен.
+     * до подписи тело только сканируется ради exp и nbf, sub и роли читаются из тела с проверенной подписью
+     * @param token - компактная строка токена, прошедшая checkStructure
+     * @param now - текущее время, мс
+     * @return - результат проверки; null - токен нужно проверить jjwt
+     */
+    JwtValidationResult verify(String token, long now) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.indexOf('.', headerEnd + 1);
+        if (!isSupportedHeader(token, headerEnd)) {
+            return null;
+        }
+        if (token.length() - payloadEnd - 1 != SIGNATURE_CHARS) {
+            return token.endsWith("=") ? null : JwtValidationResult.BAD_SIGNATURE;
+        }
+
+        VerifierState s = state.get();
+        byte[] buffer = s.buffer(payloadEnd);
+        int length = decode(token, headerEnd + 1, payloadEnd, buffer, 0);
+        if (length < 0) {
+            return null;
+        }
+        String payload = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        JwtClaimsParser times;
+        try {
+            times = JwtClaimsParser.scanTimes(payload);
+        } catch (JwtClaimsParser.UnsupportedClaimsException ex) {
+            return null;
+        }
+        Long expiration = times.getExpiration();
+        if (expiration != null && now > expiration * 1000) {
+            return JwtValidationResult.EXPIRED;
+        }
+        if (times.getNotBefore() != null && now < times.getNotBefore() * 1000) {
+            return JwtValidationResult.PREMATURE;
+        }
+
+        if (decode(token, payloadEnd + 1, token.length(), s.signature, 0) != SIGNATURE_BYTES) {
+            //в подписи '+' или '/': jjwt декодирует их как '-' и '_'
+            return null;
+        }
+        //тело уже в строке payload: буфер переиспользуется под символы подписываемой части
+        for (int i = 0; i < payloadEnd; i++) {
+            buffer[i] = (byte) token.charAt(i);
+        }
+        s.mac.update(buffer, 0, payloadEnd);
+        try {
+            s.mac.doFinal(s.expected, 0);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+        if (!MessageDigest.isEqual(s.expected, s.signature)) {
+            return JwtValidationResult.BAD_SIGNATURE;
+        }
+
+        JwtClaimsParser claims;
+        try {
+            claims = JwtClaimsParser.parse(payload);
+        } catch (JwtClaimsParser.UnsupportedClaimsException ex) {
+            //сканирование приняло то же тело, сюда попасть нельзя
+            return null;
+        }
+        return JwtValidationResult.valid(new JwtParseResponseDto(claims.getSubject(), claims.getAuthorities(),
+                expiration == null ? null : new Date(expiration * 1000)));
+    }
+
+    private static boolean isSupportedHeader(String token, int headerEnd) {
+        for (String header : SUPPORTED_HEADERS) {
+            if (header.length() == headerEnd && token.startsWith(header)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * декодирует base64url без дополнения из символов строки
+     * @return - число байт; -1, если встретился недопустимый символ или неполная группа
+     */
+    static int decode(String source, int from, int to, byte[] target, int offset) {
+        int bits = 0;
+        int buffered = 0;
+        int length = offset;
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            int value = c < 128 ? BASE64_URL[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            buffered += 6;
+            if (buffered >= 8) {
+                buffered -= 8;
+                target[length++] = (byte) (bits >> buffered);
+            }
+        }
+        //остаток в 6 бит не образует байт
+        return buffered >= 6 ? -1 : length - offset;
+    }
+
+    private static String encode(String header) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private VerifierState newState() {
+        try {
+            Mac mac = Mac.getInstance(key.getAlgorithm());
+            mac.init(key);
+            return new VerifierState(mac);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Mac и буферы одного потока; Mac после doFinal готов к следующему токену с тем же ключом
+     */
+    private static final class VerifierState {
+
+        private final Mac mac;
+
+        private final byte[] expected = new byte[SIGNATURE_BYTES];
+
+        private final byte[] signature = new byte[SIGNATURE_BYTES];
+
+        private byte[] buffer = new byte[512];
+
+        private VerifierState(Mac mac) {
+            this.mac = mac;
+        }
+
+        private byte[] buffer(int size) {
+            if (buffer.length < size) {
+                buffer = new byte[Integer.highestOneBit(size) * 2];
+            }
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package ru.vershinin.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * разбор тела токена без построения карты claims: читаются только sub, authorities (или маска ролей r), exp и nbf,
+ * остальные значения пропускаются. до проверки подписи тело только сканируется (scanTimes): синтаксис проверяется
+ * так же, но строки и списки не создаются, читаются лишь числа exp и nbf. если тело не похоже на то, что выпускает auth-service
+ * (не те типы значений, дробные даты, ошибки синтаксиса), бросается {@link UnsupportedClaimsException},
+ * и токен разбирает jjwt - он же формирует сообщение об ошибке
+ */
+final class JwtClaimsParser {
+
+    private static final UnsupportedClaimsException UNSUPPORTED = new UnsupportedClaimsException();
+
+    private final String json;
+
+    /**
+     * false - читать только exp, nbf и r, остальные значения пропускать
+     */
+    private final boolean claimsNeeded;
+
+    private int pos;
+
+    private String subject;
+
+    private List<String> authorities;
+
+    private Long roles;
+
+    private Long expiration;
+
+    private Long notBefore;
+
+    private JwtClaimsParser(String json, boolean claimsNeeded) {
+        this.json = json;
+        this.claimsNeeded = claimsNeeded;
+    }
+
+    /**
+     * @param json - тело токена с проверенной подписью
+     * @return - прочитанные claims
+     * @throws UnsupportedClaimsException - если тело нужно разбирать полным парсером
+     */
+    static JwtClaimsParser parse(String json) {
+        return read(json, true);
+    }
+
+    /**
+     * чтение тела до проверки подписи: sub и authorities пропускаются, getSubject и getAuthorities вернут null.
+     * отклоняет те же тела, что и parse
+     * @param json - тело токена
+     * @return - exp и nbf
+     * @throws UnsupportedClaimsException - если тело нужно разбирать полным парсером
+     */
+    static JwtClaimsParser scanTimes(String json) {
+        return read(json, false);
+    }
+
+    private static JwtClaimsParser read(String json, boolean claimsNeeded) {
+        JwtClaimsParser parser = new JwtClaimsParser(json, claimsNeeded);
+        parser.readObject();
+        //jjwt считает claims только тело, которое заканчивается на '}', остальное - неподдерживаемый текстовый JWS
+        if (parser.pos != json.length()) {
+            throw UNSUPPORTED;
+        }
+        return parser;
+    }
+
+    String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @return - роли из списка authorities, а в компактном токене - из маски r
+     */
+    List<String> getAuthorities() {
+        if (authorities == null && roles != null) {
+            return CompactClaims.authorities(roles);
+        }
+        return authorities;
+    }
+
+    /**
+     * @return - exp в секундах или null
+     */
+    Long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * @return - nbf в секундах или null
+     */
+    Long getNotBefore() {
+        return notBefore;
+    }
+
+    private void readObject() {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            switch (key) {
+                case "sub":
+                    if (peek() == 'n') {
+                        subject = readNull();
+                    } else if (claimsNeeded) {
+                        subject = readString();
+                    } else {
+                        skipString();
+                    }
+                    break;
+                case "authorities":
+                    authorities = peek() == 'n' ? readNull() : readStringArray();
+                    break;
+                case CompactClaims.ROLES:
+                    roles = peek() == 'n' ? readNull() : readLong();
+                    break;
+                case "exp":
+                    expiration = peek() == 'n' ? readNull() : readLong();
+                    break;
+                case "nbf":
+                    notBefore = peek() == 'n' ? readNull() : readLong();
+                    break;
+                default:
+                    skipValue();
+            }
+            skipWhitespace();
+            char next = next();
+            if (next == '}') {
+                return;
+            }
+            if (next != ',') {
+                throw UNSUPPORTED;
+            }
+        }
+    }
+
+    /**
+     * @return - список строк; при сканировании - null, строки только проверяются
+     */
+    private List<String> readStringArray() {
+        expect('[');
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return claimsNeeded ? Collections.emptyList() : null;
+        }
+        List<String> values = claimsNeeded ? new ArrayList<>(2) : null;
+        while (true) {
+            skipWhitespace();
+            if (values != null) {
+                values.add(readString());
+            } else {
+                skipString();
+            }
+            skipWhitespace();
+            char next = next();
+            if (next == ']') {
+                return values;
+            }
+            if (next != ',') {
+                throw UNSUPPORTED;
+            }
+        }
+    }
+
+    private String readString() {
+        expect('"');
+        int start = pos;
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return json.substring(start, pos - 1);
+            }
+            if (c == '\\') {
+                pos = start;
+                return readEscapedString();
+            }
+            if (c < 0x20) {
+                throw UNSUPPORTED;
+            }
+        }
+    }
+
+    private String readEscapedString() {
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c < 0x20) {
+                throw UNSUPPORTED;
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escape = next();
+            if (escape == 'u') {
+                value.append((char) readUnicodeEscape());
+                continue;
+            }
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    value.append(escape);
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                default:
+                    throw UNSUPPORTED;
+            }
+        }
+    }
+
+    /**
+     * проверяет строку по тем же правилам, что readString, не создавая ее
+     */
+    private void skipString() {
+        expect('"');
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c < 0x20) {
+                throw UNSUPPORTED;
+            }
+            if (c != '\\') {
+                continue;
+            }
+            char escape = next();
+            if (escape == 'u') {
+                readUnicodeEscape();
+            } else if ("\"\\/bfnrt".indexOf(escape) < 0) {
+                throw UNSUPPORTED;
+            }
+        }
+    }
+
+    /**
+     * @return - код символа из четырех шестнадцатеричных цифр escape-последовательности u
+     */
+    private int readUnicodeEscape() {
+        if (pos + 4 > json.length()) {
+            throw UNSUPPORTED;
+        }
+        int code = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(json.charAt(pos++), 16);
+            if (digit < 0) {
+                throw UNSUPPORTED;
+            }
+            code = code * 16 + digit;
+        }
+        return code;
+    }
+
+    /**
+     * целое число; дробные и экспоненциальные значения оставляются jjwt
+     */
+    private Long readLong() {
+        int start = pos;
+        if (peek() == '-') {
+            pos++;
+        }
+        while (pos < json.length() && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') {
+            pos++;
+        }
+        int digits = pos - start - (json.charAt(start) == '-' ? 1 : 0);
+        if (digits == 0 || digits > 18) {
+            throw UNSUPPORTED;
+        }
+        char next = peek();
+        if (next == '.' || next == 'e' || next == 'E') {
+            throw UNSUPPORTED;
+        }
+        return Long.parseLong(json, start, pos, 10);
+    }
+
+    private <T> T readNull() {
+        if (!json.startsWith("null", pos)) {
+            throw UNSUPPORTED;
+        }
+        pos += 4;
+        return null;
+    }
+
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else {
+            //число, true, false, null
+            int start = pos;
+            while (pos < json.length() && "+-.0123456789eEtrufalsn".indexOf(json.charAt(pos)) >= 0) {
+                pos++;
+            }
+            if (pos == start) {
+                throw UNSUPPORTED;
+            }
+        }
+    }
+
+    private void skipContainer() {
+        int depth = 0;
+        do {
+            char c = peek();
+            if (c == '"') {
+                skipString();
+                continue;
+            }
+            pos++;
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private char peek() {
+        if (pos >= json.length()) {
+            throw UNSUPPORTED;
+        }
+        return json.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    /**
+     * тело токена нужно разбирать полным парсером; стек не заполняется
+     */
+    static final class UnsupportedClaimsException extends RuntimeException {
+
+        private UnsupportedClaimsException() {
+            super("claims are not supported by the fast parser", null, false, false);
+        }
+    }
+}
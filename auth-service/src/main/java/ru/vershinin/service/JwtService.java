@@ -1,51 +1,136 @@
 package ru.vershinin.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import ru.vershinin.dto.JwtParseResponseDto;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.PrematureJwtException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
-import java.util.Objects;
 
+/**
+ * проверка токенов для /v1/jwt/parse без исключений на пути отказа. порядок - от дешевых проверок к дорогим:
+ * структура строки, кэш отклоненных токенов (RejectedTokenCache), затем токены, выпущенные
+ * JwtUsernamePasswordAuthenticationFilter, проверяет HmacJwtVerifier (exp до подписи), остальные - Jwts.parser().
+ * метрика auth.jwt.validations с тегами result (valid, invalid) и engine (structure, cache, hmac, jjwt);
+ * число проверок в секунду: rate(auth_jwt_validations_total[1m]) в /actuator/prometheus
+ */
 @Service
 public class JwtService {
 
-    private final String signingKey;
+    /**
+     * ключ вычисляется один раз при создании
+     */
+    private final byte[] signingKey;
+
+    private final HmacJwtVerifier verifier;
+
+    private final RejectedTokenCache rejectedTokenCache;
+
+    private final Counter structureInvalid;
+
+    private final Counter cacheInvalid;
+
+    private final Counter hmacValid;
+
+    private final Counter hmacInvalid;
+
+    private final Counter jjwtValid;
+
+    private final Counter jjwtInvalid;
 
     /**
      * внедряем зависимость через конструктор, который в свою очередь инициализирует signingKey из файла application.yml
      * @param signingKey - ключ для генерации hash
+     * @param rejectedTokenCache - кэш отклоненных токенов
+     * @param meterRegistry - реестр метрик
      */
     @Autowired
-    public JwtService(@Value("${security.jwt.signing-key}") String signingKey) {
-        this.signingKey = signingKey;
+    public JwtService(@Value("${security.jwt.signing-key}") String signingKey, RejectedTokenCache rejectedTokenCache,
+                      MeterRegistry meterRegistry) {
+        this.signingKey = signingKey.getBytes();
+        this.verifier = new HmacJwtVerifier(this.signingKey);
+        this.rejectedTokenCache = rejectedTokenCache;
+        this.structureInvalid = validations(meterRegistry, "invalid", "structure");
+        this.cacheInvalid = validations(meterRegistry, "invalid", "cache");
+        this.hmacValid = validations(meterRegistry, "valid", "hmac");
+        this.hmacInvalid = validations(meterRegistry, "invalid", "hmac");
+        this.jjwtValid = validations(meterRegistry, "valid", "jjwt");
+        this.jjwtInvalid = validations(meterRegistry, "invalid", "jjwt");
+    }
+
+    /**
+     * проверяет подпись и срок действия токена
+     * @param token - токен для проверки валидации
+     * @return - claims или причина отказа
+     */
+    public JwtValidationResult validate(String token) {
+        JwtValidationResult result = verifier.checkStructure(token);
+        if (result != null) {
+            structureInvalid.increment();
+            return result;
+        }
+        TokenDigest key = TokenDigest.of(token);
+        result = rejectedTokenCache.getIfPresent(key);
+        if (result != null) {
+            cacheInvalid.increment();
+            return result;
+        }
+
+        result = verifier.verify(token, System.currentTimeMillis());
+        if (result != null) {
+            (result.isValid() ? hmacValid : hmacInvalid).increment();
+        } else {
+            result = parseWithJjwt(token);
+            (result.isValid() ? jjwtValid : jjwtInvalid).increment();
+        }
+        rejectedTokenCache.put(key, result);
+        return result;
     }
 
     /**
      * Синтаксический анализатор для чтения строк JWT, используемый для преобразования их в Jwtобъект, представляющий расширенный JWT.
      * @see <a href="https://javadox.com/io.jsonwebtoken/jjwt/0.4/io/jsonwebtoken/JwtParser.html">Java JWT</a>
-     * Обертка requireNonNull позволяет прямо и быстро определить причину исключения.
+     * полная проверка jjwt для токенов, которые не разбирает HmacJwtVerifier; исключения здесь редки
      * @param token - токен для проверки валидации
      * @return
      */
-    public JwtParseResponseDto parseJwt(String token) {
-        Objects.requireNonNull(token);
-        //Набор утверждений JWT .
-        //В конечном итоге это карта JSON, и к ней могут быть добавлены любые значения,
-        // но для удобства стандартные имена JWT предоставляются как типобезопасные методы получения и установки.
-        //Возвращает новый JwtBuilder экземпляр, который можно настроить и затем использовать для создания компактных сериализованных строк JWT
-        Claims claims = Jwts.parser()
-                .setSigningKey(signingKey.getBytes())
-                .parseClaimsJws(token)
-                .getBody();
-
-        String username = claims.getSubject();//Возвращает значение JWT
-        //noinspection unchecked
-        List<String> authorities = claims.get("authorities", List.class);
-
-        return new JwtParseResponseDto(username, authorities);
+    private JwtValidationResult parseWithJjwt(String token) {
+        try {
+            //Набор утверждений JWT .
+            //В конечном итоге это карта JSON, и к ней могут быть добавлены любые значения,
+            // но для удобства стандартные имена JWT предоставляются как типобезопасные методы получения и установки.
+            Claims claims = Jwts.parser()
+                    .setSigningKey(signingKey)
+                    .parseClaimsJws(token)
+                    .getBody();
+
+            String username = claims.getSubject();//Возвращает значение JWT
+            //noinspection unchecked
+            List<String> authorities = claims.get("authorities", List.class);
+            Object roles = claims.get(CompactClaims.ROLES);
+            if (authorities == null && roles instanceof Number) {
+                authorities = CompactClaims.authorities(((Number) roles).longValue());
+            }
+
+            return JwtValidationResult.valid(new JwtParseResponseDto(username, authorities, claims.getExpiration()));
+        } catch (PrematureJwtException ex) {
+            return JwtValidationResult.notYetValid(String.valueOf(ex.getLocalizedMessage()));
+        } catch (JwtException | IllegalArgumentException ex) {
+            return JwtValidationResult.invalid(String.valueOf(ex.getLocalizedMessage()));
+        }
+    }
+
+    private static Counter validations(MeterRegistry meterRegistry, String result, String engine) {
+        return Counter.builder("auth.jwt.validations")
+                .description("Validated JWTs")
+                .tag("result", result)
+                .tag("engine", engine)
+                .register(meterRegistry);
     }
 }
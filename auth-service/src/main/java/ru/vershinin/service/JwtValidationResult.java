@@ -0,0 +1,82 @@
+package ru.vershinin.service;
+
+import ru.vershinin.dto.JwtParseResponseDto;
+
+/**
+ * результат проверки токена без исключений: либо claims, либо текст ошибки.
+ * частые отказы - готовые экземпляры, поэтому отклонение токена ничего не выделяет
+ */
+public final class JwtValidationResult {
+
+    static final JwtValidationResult MISSING = invalid("JWT String argument cannot be null or empty.");
+
+    static final JwtValidationResult MALFORMED = invalid("JWT strings must contain exactly 2 period characters.");
+
+    static final JwtValidationResult UNSIGNED = invalid("Unsigned Claims JWTs are not supported.");
+
+    static final JwtValidationResult NOT_BASE64URL = invalid("JWT contains characters outside of Base64URL.");
+
+    static final JwtValidationResult BAD_SIGNATURE = invalid("JWT signature does not match locally computed "
+            + "signature. JWT validity cannot be asserted and should not be trusted.");
+
+    static final JwtValidationResult EXPIRED = invalid("JWT expired.");
+
+    static final JwtValidationResult PREMATURE = new JwtValidationResult(null,
+            "JWT must not be accepted before its nbf time.", false);
+
+    private final JwtParseResponseDto claims;
+
+    private final String error;
+
+    private final boolean permanent;
+
+    private JwtValidationResult(JwtParseResponseDto claims, String error, boolean permanent) {
+        this.claims = claims;
+        this.error = error;
+        this.permanent = permanent;
+    }
+
+    /**
+     * @param claims - имя пользователя, роли и срок действия
+     * @return
+     */
+    public static JwtValidationResult valid(JwtParseResponseDto claims) {
+        return new JwtValidationResult(claims, null, true);
+    }
+
+    /**
+     * токен никогда не станет действительным
+     * @param error - причина отказа
+     * @return
+     */
+    public static JwtValidationResult invalid(String error) {
+        return new JwtValidationResult(null, error, true);
+    }
+
+    /**
+     * @param error - причина отказа, токен может стать действительным позже (nbf)
+     * @return
+     */
+    public static JwtValidationResult notYetValid(String error) {
+        return new JwtValidationResult(null, error, false);
+    }
+
+    public boolean isValid() {
+        return claims != null;
+    }
+
+    public JwtParseResponseDto getClaims() {
+        return claims;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return - true, если повторная проверка того же токена даст тот же результат и отказ можно кэшировать
+     */
+    public boolean isPermanent() {
+        return permanent;
+    }
+}
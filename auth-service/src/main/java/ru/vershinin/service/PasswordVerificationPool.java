@@ -0,0 +1,150 @@
+package ru.vershinin.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * проверка пароля при входе (bcrypt) в отдельном ограниченном пуле: вход занимает не больше threads ядер,
+ * и /v1/jwt/parse, от которого зависит шлюз, сохраняет время ответа при всплеске входов.
+ * если в очереди уже queue-capacity проверок, вход сразу отклоняется {@link SaturatedException} (503).
+ * метрики: auth.password.verification (время проверки, тег result), auth.password.queue.wait,
+ * auth.password.queue.size, auth.password.rejected
+ */
+@Component
+public class PasswordVerificationPool {
+
+    private final ThreadPoolExecutor executor;
+
+    private final Timer succeeded;
+
+    private final Timer failed;
+
+    private final Timer queueWait;
+
+    private final Counter rejected;
+
+    /**
+     * @param threads - число потоков проверки, 0 - половина доступных процессоров
+     * @param queueCapacity - максимальное число проверок, ожидающих потока
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public PasswordVerificationPool(@Value("${security.login.threads:0}") int threads,
+                                    @Value("${security.login.queue-capacity:100}") int queueCapacity,
+                                    MeterRegistry meterRegistry) {
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-verification-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.succeeded = verificationTimer(meterRegistry, "success");
+        this.failed = verificationTimer(meterRegistry, "failure");
+        this.queueWait = Timer.builder("auth.password.queue.wait")
+                .description("Time a login waits for a password verification thread")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.password.rejected")
+                .description("Logins rejected with 503 because the password verification queue was full")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.queue.size", executor, pool -> pool.getQueue().size())
+                .description("Password verifications waiting for a thread")
+                .register(meterRegistry);
+    }
+
+    /**
+     * выполняет authenticationManager.authenticate в пуле и ждет результат
+     * @param authenticationManager - проверка имени и пароля
+     * @param authentication - имя и пароль из запроса
+     * @return - аутентифицированный пользователь
+     * @throws SaturatedException - если очередь заполнена
+     * @throws AuthenticationException - если имя или пароль неверны
+     */
+    public Authentication authenticate(AuthenticationManager authenticationManager, Authentication authentication) {
+        long queued = System.nanoTime();
+        Future<Authentication> result;
+        try {
+            result = executor.submit(() -> {
+                long started = System.nanoTime();
+                queueWait.record(started - queued, TimeUnit.NANOSECONDS);
+                try {
+                    Authentication authenticated = authenticationManager.authenticate(authentication);
+                    succeeded.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    return authenticated;
+                } catch (RuntimeException ex) {
+                    failed.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    throw ex;
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new SaturatedException();
+        }
+
+        try {
+            return result.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AuthenticationServiceException(cause.getMessage(), cause);
+        } catch (InterruptedException ex) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("interrupted", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static Timer verificationTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("auth.password.verification")
+                .description("Time spent verifying login passwords")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * очередь проверок паролей заполнена; стек не заполняется
+     */
+    public static final class SaturatedException extends AuthenticationServiceException {
+
+        private SaturatedException() {
+            super("password verification queue is full");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
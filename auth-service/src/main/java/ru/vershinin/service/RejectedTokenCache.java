@@ -0,0 +1,61 @@
+package ru.vershinin.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * ограниченный кэш отклоненных токенов с коротким временем жизни: при потоке одних и тех же просроченных
+ * или поддельных токенов каждый из них проверяется один раз за ttl.
+ * ключ - TokenDigest (SHA-256 от токена), сам токен в памяти не хранится.
+ * счетчики доступны в actuator как cache.* с тегом cache=jwt-rejected
+ */
+@Component
+public class RejectedTokenCache {
+
+    public static final String CACHE_NAME = "jwt-rejected";
+
+    private final Cache<TokenDigest, JwtValidationResult> cache;
+
+    /**
+     * @param maximumSize - максимальное число токенов
+     * @param ttl - время жизни записи
+     * @param meterRegistry - реестр метрик
+     */
+    @Autowired
+    public RejectedTokenCache(@Value("${security.jwt.rejected-cache.maximum-size:100000}") long maximumSize,
+                              @Value("${security.jwt.rejected-cache.ttl:1m}") Duration ttl,
+                              MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * @param key - ключ токена
+     * @return - сохраненный отказ или null
+     */
+    public JwtValidationResult getIfPresent(TokenDigest key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * сохраняет отказ, если он не зависит от времени проверки
+     * @param key - ключ токена
+     * @param result - результат проверки
+     */
+    public void put(TokenDigest key, JwtValidationResult result) {
+        if (!result.isValid() && result.isPermanent()) {
+            cache.put(key, result);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.vershinin.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * журнал отклоненных токенов с ограничением частоты: не больше max-per-second строк в секунду,
+ * остальные отказы только считаются, и их число выводится в следующей строке.
+ * токен и стек в журнал не попадают - при потоке неверных токенов журнал не должен стоить больше проверки
+ */
+@Component
+public class RejectionLog {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Logger log = LoggerFactory.getLogger(RejectionLog.class);
+
+    private final int maxPerSecond;
+
+    /**
+     * начало текущей секунды, System.nanoTime()
+     */
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+    private final AtomicLong loggedInWindow = new AtomicLong();
+
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * @param maxPerSecond - максимальное число строк в секунду
+     */
+    @Autowired
+    public RejectionLog(@Value("${security.jwt.rejection-log.max-per-second:10}") int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    /**
+     * @param error - причина отказа
+     */
+    public void rejected(String error) {
+        if (!log.isWarnEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= SECOND_NANOS && windowStart.compareAndSet(start, now)) {
+            loggedInWindow.set(0);
+        }
+        if (loggedInWindow.incrementAndGet() > maxPerSecond) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        long skipped = suppressed.getAndSet(0);
+        if (skipped > 0) {
+            log.warn("JWT rejected: {} ({} more rejections not logged)", error, skipped);
+        } else {
+            log.warn("JWT rejected: {}", error);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ru.vershinin.service;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ключ кэша отклоненных токенов: первые 128 бит SHA-256 от токена.
+ * хэш считается прямо по символам токена через буферы потока, поэтому на запрос создается
+ * только сам ключ - без массива байт и строки Base64
+ */
+public final class TokenDigest {
+
+    /**
+     * токены длиннее хэшируются через временный массив
+     */
+    private static final int MAX_BUFFER = 8192;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final long high;
+
+    private final long low;
+
+    private TokenDigest(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param token - токен
+     * @return - ключ кэша для токена
+     */
+    public static TokenDigest of(String token) {
+        Buffers buffers = BUFFERS.get();
+        int length = token.length();
+        byte[] bytes = buffers.bytes(length);
+        //токен - ASCII, остальные символы заменяются на '?' как в String.getBytes(US_ASCII)
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            bytes[i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+        buffers.sha256.update(bytes, 0, length);
+        try {
+            buffers.sha256.digest(buffers.hash, 0, buffers.hash.length);
+        } catch (DigestException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return new TokenDigest(readLong(buffers.hash, 0), readLong(buffers.hash, 8));
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TokenDigest)) {
+            return false;
+        }
+        TokenDigest other = (TokenDigest) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        //биты SHA-256 распределены равномерно
+        return (int) high;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    private static final class Buffers {
+
+        private final MessageDigest sha256;
+
+        private final byte[] hash = new byte[32];
+
+        private byte[] bytes = new byte[1024];
+
+        private Buffers() {
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private byte[] bytes(int length) {
+            if (length <= bytes.length) {
+                return bytes;
+            }
+            if (length > MAX_BUFFER) {
+                return new byte[length];
+            }
+            bytes = new byte[MAX_BUFFER];
+            return bytes;
+        }
+    }
+}
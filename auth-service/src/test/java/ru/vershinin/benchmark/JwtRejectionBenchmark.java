@@ -0,0 +1,109 @@
+package ru.vershinin.benchmark;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vershinin.service.JwtService;
+import ru.vershinin.service.JwtValidationResult;
+import ru.vershinin.service.RejectedTokenCache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * отказ в /v1/jwt/parse при потоке неверных токенов.
+ * badSignature и expired - разные токены, без кэша отклоненных: подделка проверяется подписью,
+ * просроченный отклоняется по exp до подписи; repeatedBadSignature - один и тот же токен, ответ из кэша;
+ * malformed - строка не из трех частей; jjwtBadSignature - прежний путь: исключение jjwt со стеком
+ * (без log.error и printStackTrace, которые стоили еще больше)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JwtRejectionBenchmark {
+
+    private static final int TOKENS = 1024;
+
+    private JwtService uncached;
+
+    private JwtService cached;
+
+    private final String[] forged = new String[TOKENS];
+
+    private final String[] expired = new String[TOKENS];
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        uncached = new JwtService(JwtServiceBenchmark.SIGNING_KEY,
+                new RejectedTokenCache(0, Duration.ofMinutes(1), meterRegistry), meterRegistry);
+        cached = new JwtService(JwtServiceBenchmark.SIGNING_KEY,
+                new RejectedTokenCache(100_000, Duration.ofMinutes(1), meterRegistry), meterRegistry);
+        Instant now = Instant.now();
+        for (int i = 0; i < TOKENS; i++) {
+            forged[i] = mintToken("user-" + i, now.plusSeconds(3600), "another-key");
+            expired[i] = mintToken("user-" + i, now.minusSeconds(3600), JwtServiceBenchmark.SIGNING_KEY);
+        }
+    }
+
+    @Benchmark
+    public JwtValidationResult badSignature() {
+        return uncached.validate(forged[next++ & (TOKENS - 1)]);
+    }
+
+    @Benchmark
+    public JwtValidationResult expired() {
+        return uncached.validate(expired[next++ & (TOKENS - 1)]);
+    }
+
+    @Benchmark
+    public JwtValidationResult repeatedBadSignature() {
+        return cached.validate(forged[0]);
+    }
+
+    @Benchmark
+    public JwtValidationResult malformed() {
+        return uncached.validate("not-a-jwt");
+    }
+
+    @Benchmark
+    public Object jjwtBadSignature() {
+        try {
+            return Jwts.parser()
+                    .setSigningKey(JwtServiceBenchmark.SIGNING_KEY.getBytes())
+                    .parseClaimsJws(forged[next++ & (TOKENS - 1)])
+                    .getBody();
+        } catch (RuntimeException ex) {
+            return ex;
+        }
+    }
+
+    private static String mintToken(String username, Instant expiration, String key) {
+        return Jwts.builder()
+                .setSubject(username)
+                .claim("authorities", Collections.singletonList("ROLE_USER"))
+                .setIssuedAt(Date.from(expiration.minusSeconds(24 * 60 * 60)))
+                .setExpiration(Date.from(expiration))
+                .signWith(SignatureAlgorithm.HS256, key.getBytes())
+                .compact();
+    }
+}
@@ -0,0 +1,105 @@
+package ru.vershinin.benchmark;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vershinin.dto.JwtParseResponseDto;
+import ru.vershinin.model.UserRole;
+import ru.vershinin.service.CompactClaims;
+import ru.vershinin.service.JwtService;
+import ru.vershinin.service.RejectedTokenCache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * проверка и разбор токена в JwtService - то, что выполняет /v1/jwt/parse на каждый запрос шлюза.
+ * parseJwtJjwt - прежняя реализация: новый Jwts.parser() и ключ из строки на каждый вызов, полная карта claims.
+ * compact=true - токен с компактными claims (security.jwt.compact-claims), размер заголовка печатается перед замером.
+ * в несколько потоков: -Djmh.args="JwtServiceBenchmark -t 8 -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    static final String SIGNING_KEY = "should-be-externally-configured";
+
+    @Param({"false", "true"})
+    private boolean compact;
+
+    private JwtService jwtService;
+
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        jwtService = new JwtService(SIGNING_KEY, new RejectedTokenCache(10_000, Duration.ofMinutes(1), meterRegistry),
+                meterRegistry);
+        token = mintToken(compact);
+        System.out.printf("%nAuthorization header: %d bytes%n", "Bearer ".length() + token.length());
+    }
+
+    @Benchmark
+    public JwtParseResponseDto parseJwt() {
+        return jwtService.validate(token).getClaims();
+    }
+
+    @Benchmark
+    public JwtParseResponseDto parseJwtJjwt() {
+        Claims claims = Jwts.parser()
+                .setSigningKey(SIGNING_KEY.getBytes())
+                .parseClaimsJws(token)
+                .getBody();
+        //noinspection unchecked
+        return new JwtParseResponseDto(claims.getSubject(), claims.get("authorities", List.class),
+                claims.getExpiration());
+    }
+
+    /**
+     * токен в том же формате, что выдает JwtUsernamePasswordAuthenticationFilter
+     */
+    static String mintToken() {
+        return mintToken(false);
+    }
+
+    /**
+     * @param compact - маска ролей вместо списка authorities и без iat, как при security.jwt.compact-claims
+     */
+    static String mintToken(boolean compact) {
+        Instant now = Instant.now();
+        JwtBuilder builder = Jwts.builder().setSubject("username");
+        if (compact) {
+            builder.claim(CompactClaims.ROLES, UserRole.USER.bit());
+        } else {
+            builder.claim("authorities", Collections.singletonList("ROLE_" + UserRole.USER.name()))
+                    .setIssuedAt(Date.from(now));
+        }
+        return builder
+                .setExpiration(Date.from(now.plusSeconds(24 * 60 * 60)))
+                .signWith(SignatureAlgorithm.HS256, SIGNING_KEY.getBytes())
+                .compact();
+    }
+}
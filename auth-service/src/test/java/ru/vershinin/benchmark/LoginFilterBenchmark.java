@@ -0,0 +1,114 @@
+package ru.vershinin.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import ru.vershinin.config.JwtUsernamePasswordAuthenticationFilter;
+import ru.vershinin.model.UserRole;
+import ru.vershinin.service.PasswordVerificationPool;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * вход пользователя в JwtUsernamePasswordAuthenticationFilter без проверки пароля:
+ * attemptAuthentication - чтение LoginDto из тела запроса и передача в пул проверки паролей,
+ * successfulAuthentication - выпуск токена.
+ * AuthenticationManager заменен заглушкой, чтобы в замер не попадал bcrypt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LoginFilterBenchmark {
+
+    private static final List<GrantedAuthority> AUTHORITIES =
+            Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + UserRole.USER.name()));
+
+    private static final byte[] LOGIN_BODY =
+            "{\"username\":\"username\",\"password\":\"password\"}".getBytes(StandardCharsets.UTF_8);
+
+    private PasswordVerificationPool passwordVerificationPool;
+
+    private BenchmarkedFilter filter;
+
+    private MockHttpServletRequest request;
+
+    private MockHttpServletResponse response;
+
+    private Authentication authentication;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AuthenticationManager authenticationManager = auth ->
+                new UsernamePasswordAuthenticationToken(auth.getPrincipal(), null, AUTHORITIES);
+        passwordVerificationPool = new PasswordVerificationPool(1, 100, new SimpleMeterRegistry());
+        filter = new BenchmarkedFilter(authenticationManager, JwtServiceBenchmark.SIGNING_KEY,
+                passwordVerificationPool);
+        request = new MockHttpServletRequest("POST", "/v1/login");
+        request.setContentType("application/json");
+        response = new MockHttpServletResponse();
+        authentication = new UsernamePasswordAuthenticationToken("username", null, AUTHORITIES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        passwordVerificationPool.shutdown();
+    }
+
+    @Benchmark
+    public Authentication readLoginDto() throws IOException {
+        //новый поток тела запроса
+        request.setContent(LOGIN_BODY);
+        return filter.attemptAuthentication(request, response);
+    }
+
+    @Benchmark
+    public String mintToken() {
+        response.reset();
+        filter.successfulAuthentication(request, response, null, authentication);
+        return response.getHeader(JwtUsernamePasswordAuthenticationFilter.HEADER);
+    }
+
+    /**
+     * открывает successfulAuthentication для вызова из бенчмарка
+     */
+    private static final class BenchmarkedFilter extends JwtUsernamePasswordAuthenticationFilter {
+
+        private BenchmarkedFilter(AuthenticationManager authenticationManager, String signingKey,
+                                  PasswordVerificationPool passwordVerificationPool) {
+            super(authenticationManager, signingKey, passwordVerificationPool, false);
+        }
+
+        @Override
+        protected void successfulAuthentication(HttpServletRequest request, HttpServletResponse response,
+                                                FilterChain chain, Authentication auth) {
+            super.successfulAuthentication(request, response, chain, auth);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ru.vershinin.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import ru.vershinin.model.UserRole;
+import ru.vershinin.service.JwtService;
+import ru.vershinin.service.JwtValidationResult;
+import ru.vershinin.service.PasswordVerificationPool;
+import ru.vershinin.service.RejectedTokenCache;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * время проверки токена во время всплеска входов: 8 потоков входят с bcrypt, 2 потока проверяют токены.
+ * pooled=false - пароль проверяется в потоке запроса, как раньше; pooled=true - в PasswordVerificationPool,
+ * лишние входы получают отказ вместо очереди к процессору. смотреть на перцентили storm:parseJwt
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class LoginStormBenchmark {
+
+    @Param({"false", "true"})
+    private boolean pooled;
+
+    private AuthenticationManager authenticationManager;
+
+    private PasswordVerificationPool passwordVerificationPool;
+
+    private JwtService jwtService;
+
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PasswordEncoder encoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setPasswordEncoder(encoder);
+        provider.setUserDetailsService(new InMemoryUserDetailsManager(User.withUsername("username")
+                .password(encoder.encode("password"))
+                .roles(UserRole.USER.name())
+                .build()));
+        authenticationManager = new ProviderManager(Collections.singletonList(provider));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        passwordVerificationPool = new PasswordVerificationPool(0, 16, meterRegistry);
+        jwtService = new JwtService(JwtServiceBenchmark.SIGNING_KEY,
+                new RejectedTokenCache(10_000, Duration.ofMinutes(1), meterRegistry), meterRegistry);
+        token = JwtServiceBenchmark.mintToken();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        passwordVerificationPool.shutdown();
+    }
+
+    @Benchmark
+    @Group("storm")
+    @GroupThreads(8)
+    public Object login() {
+        UsernamePasswordAuthenticationToken authentication =
+                new UsernamePasswordAuthenticationToken("username", "password", Collections.emptyList());
+        try {
+            return pooled
+                    ? passwordVerificationPool.authenticate(authenticationManager, authentication)
+                    : authenticationManager.authenticate(authentication);
+        } catch (AuthenticationException ex) {
+            //503 при заполненной очереди
+            return ex;
+        }
+    }
+
+    @Benchmark
+    @Group("storm")
+    @GroupThreads(2)
+    public JwtValidationResult parseJwt() {
+        return jwtService.validate(token);
+    }
+}
@@ -0,0 +1,85 @@
+package ru.vershinin.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.UserDetails;
+import ru.vershinin.model.UserRole;
+import ru.vershinin.service.CompactUserStore;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * поиск пользователя при входе в CompactUserStore на 1 и 10 млн пользователей.
+ * хэши паролей - случайные строки в формате bcrypt: настоящий bcrypt для миллионов пользователей считался бы часами.
+ * время заполнения и память на пользователя печатаются перед измерением
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UserStoreBenchmark {
+
+    private static final int NAMES = 1 << 16;
+
+    private static final String BCRYPT_ALPHABET = "./ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    @Param({"1000000", "10000000"})
+    private int users;
+
+    private CompactUserStore store;
+
+    /**
+     * случайные существующие имена, чтобы поиск шел по всему индексу, а не по кэшу процессора
+     */
+    private final String[] existing = new String[NAMES];
+
+    private final String[] missing = new String[NAMES];
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        int roles = CompactUserStore.roleMask(List.of(UserRole.USER));
+        long started = System.nanoTime();
+        store = new CompactUserStore(users);
+        char[] hash = "{bcrypt}$2a$10$".concat(" ".repeat(53)).toCharArray();
+        for (int i = 0; i < users; i++) {
+            for (int c = hash.length - 53; c < hash.length; c++) {
+                hash[c] = BCRYPT_ALPHABET.charAt(random.nextInt(BCRYPT_ALPHABET.length()));
+            }
+            store.put("user-" + i, new String(hash), roles, 0);
+        }
+        long elapsed = System.nanoTime() - started;
+        System.out.printf("%n%d users loaded in %d ms, %d bytes per user%n", users,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), store.memoryBytes() / users);
+        for (int i = 0; i < NAMES; i++) {
+            existing[i] = "user-" + random.nextInt(users);
+            missing[i] = "nobody-" + i;
+        }
+    }
+
+    @Benchmark
+    public UserDetails find() {
+        return store.find(existing[next++ & (NAMES - 1)]);
+    }
+
+    @Benchmark
+    public UserDetails findMissing() {
+        return store.find(missing[next++ & (NAMES - 1)]);
+    }
+}
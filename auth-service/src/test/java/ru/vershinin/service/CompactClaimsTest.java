@@ -0,0 +1,59 @@
+package ru.vershinin.service;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.vershinin.model.UserRole;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * значения маски ролей - часть формата токена: их читают api-gateway и reactive-gateway со своими копиями
+ * UserRole и CompactClaims, поэтому они закреплены здесь и в тесте api-gateway
+ */
+class CompactClaimsTest {
+
+    private static final String KEY = "should-be-externally-configured";
+
+    @Test
+    void roleBitsAreFixed() {
+        assertThat(UserRole.USER.bit()).isEqualTo(1);
+        assertThat(CompactClaims.ROLES).isEqualTo("r");
+        assertThat(CompactClaims.mask(List.of("ROLE_USER"))).isEqualTo(1);
+        assertThat(CompactClaims.authorities(1)).containsExactly("ROLE_USER");
+        assertThat(CompactClaims.authorities(0)).isEmpty();
+    }
+
+    @Test
+    void unknownAuthoritiesKeepTheList() {
+        assertThat(CompactClaims.mask(List.of("ROLE_USER", "SCOPE_read"))).isEqualTo(-1);
+    }
+
+    @Test
+    void maskRoundTripsThroughToken() {
+        int mask = CompactClaims.mask(List.of("ROLE_USER"));
+        String token = Jwts.builder()
+                .setSubject("username")
+                .claim(CompactClaims.ROLES, mask)
+                .setExpiration(new Date(System.currentTimeMillis() + 3_600_000))
+                .signWith(SignatureAlgorithm.HS256, KEY.getBytes())
+                .compact();
+        String payload = new String(Base64.getUrlDecoder().decode(token.split("\\.")[1]), StandardCharsets.UTF_8);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        JwtService jwtService = new JwtService(KEY,
+                new RejectedTokenCache(100, Duration.ofMinutes(1), meterRegistry), meterRegistry);
+
+        JwtValidationResult result = jwtService.validate(token);
+
+        assertThat(payload).contains("\"r\":1");
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.getClaims().getAuthorities()).containsExactly("ROLE_USER");
+    }
+}
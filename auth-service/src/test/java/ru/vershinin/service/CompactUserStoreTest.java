@@ -0,0 +1,220 @@
+package ru.vershinin.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import ru.vershinin.model.UserRole;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * хранилище должно возвращать пароль ровно в том виде, в котором его положили: bcrypt упаковывается
+ * в двоичный вид, остальные форматы хранятся как есть
+ */
+class CompactUserStoreTest {
+
+    private static final int USER = CompactUserStore.roleMask(List.of(UserRole.USER));
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /**
+     * заголовок записи (7 байт), байт формата и упакованный bcrypt (42 байта)
+     */
+    private static final int BCRYPT_RECORD = 7 + 1 + 42;
+
+    @Test
+    void bcryptRoundTrips() {
+        String hash = new BCryptPasswordEncoder(4).encode("password");
+        CompactUserStore store = new CompactUserStore(16);
+
+        store.put("bare", hash, USER, 0);
+        store.put("prefixed", "{bcrypt}" + hash, USER, 0);
+        store.put("2b", "$2b$12$" + hash.substring(7), USER, 0);
+        store.put("2y", "{bcrypt}$2y$31$" + hash.substring(7), USER, 0);
+
+        assertThat(store.find("bare").getPassword()).isEqualTo(hash);
+        assertThat(store.find("prefixed").getPassword()).isEqualTo("{bcrypt}" + hash);
+        assertThat(store.find("2b").getPassword()).isEqualTo("$2b$12$" + hash.substring(7));
+        assertThat(store.find("2y").getPassword()).isEqualTo("{bcrypt}$2y$31$" + hash.substring(7));
+        assertThat(new BCryptPasswordEncoder().matches("password", store.find("bare").getPassword())).isTrue();
+    }
+
+    @Test
+    void everySaltAndHashCharacterRoundTrips() {
+        String alphabet = "./ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        CompactUserStore store = new CompactUserStore(16);
+        for (int shift = 0; shift < alphabet.length(); shift++) {
+            StringBuilder hash = new StringBuilder("$2a$10$");
+            for (int i = 0; i < 53; i++) {
+                hash.append(alphabet.charAt((shift + i) % alphabet.length()));
+            }
+            store.put("user", hash.toString(), USER, 0);
+
+            assertThat(store.find("user").getPassword()).isEqualTo(hash.toString());
+        }
+    }
+
+    @Test
+    void otherFormatsAreStoredRaw() {
+        String hash = new BCryptPasswordEncoder(4).encode("password");
+        List<String> passwords = List.of(
+                "{noop}password",
+                "",
+                "пароль",
+                //похоже на bcrypt, но символ вне алфавита
+                "$2a$10$" + hash.substring(7, 59) + "!",
+                //на символ короче
+                "{bcrypt}" + hash.substring(0, 59),
+                "$2a$1x$" + hash.substring(7),
+                "{bcrypt}{bcrypt}" + hash);
+        CompactUserStore store = new CompactUserStore(16);
+        for (int i = 0; i < passwords.size(); i++) {
+            store.put("user-" + i, passwords.get(i), USER, 0);
+        }
+
+        for (int i = 0; i < passwords.size(); i++) {
+            assertThat(store.find("user-" + i).getPassword()).isEqualTo(passwords.get(i));
+        }
+    }
+
+    @Test
+    void flagsAndRolesAreRead() {
+        CompactUserStore store = new CompactUserStore(16);
+        store.put("locked", "{noop}password", USER, CompactUserStore.LOCKED | CompactUserStore.CREDENTIALS_EXPIRED);
+        store.put("disabled", "{noop}password", 0, CompactUserStore.DISABLED | CompactUserStore.ACCOUNT_EXPIRED);
+
+        UserDetails locked = store.find("locked");
+        UserDetails disabled = store.find("disabled");
+
+        assertThat(locked.isEnabled()).isTrue();
+        assertThat(locked.isAccountNonLocked()).isFalse();
+        assertThat(locked.isCredentialsNonExpired()).isFalse();
+        assertThat(locked.isAccountNonExpired()).isTrue();
+        assertThat(locked.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_USER");
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.isAccountNonExpired()).isFalse();
+        assertThat(disabled.isAccountNonLocked()).isTrue();
+        assertThat(disabled.getAuthorities()).isEmpty();
+    }
+
+    @Test
+    void putReplacesExistingUser() {
+        String hash = new BCryptPasswordEncoder(4).encode("password");
+        CompactUserStore store = new CompactUserStore(16);
+
+        assertThat(store.put("alice", "{bcrypt}" + hash, USER, 0)).isTrue();
+        assertThat(store.put("alice", "{noop}changed", 0, CompactUserStore.LOCKED)).isFalse();
+
+        UserDetails alice = store.find("alice");
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(alice.getPassword()).isEqualTo("{noop}changed");
+        assertThat(alice.getAuthorities()).isEmpty();
+        assertThat(alice.isAccountNonLocked()).isFalse();
+        //старая запись с упакованным bcrypt стала мусором
+        assertThat(store.wastedBytes()).isEqualTo(BCRYPT_RECORD + "alice".length());
+    }
+
+    @Test
+    void removeKeepsOtherUsersReachable() {
+        CompactUserStore store = new CompactUserStore(16);
+        //таблица из 32 слотов заполнена на две трети: цепочки пробирования проходят через удаленные слоты
+        for (int i = 0; i < 22; i++) {
+            store.put("user-" + i, "{noop}" + i, USER, 0);
+        }
+
+        for (int i = 0; i < 22; i += 2) {
+            assertThat(store.remove("user-" + i)).isTrue();
+        }
+
+        assertThat(store.remove("user-0")).isFalse();
+        assertThat(store.remove("nobody")).isFalse();
+        assertThat(store.size()).isEqualTo(11);
+        for (int i = 0; i < 22; i++) {
+            assertThat(store.contains("user-" + i)).isEqualTo(i % 2 == 1);
+        }
+        assertThat(store.find("user-21").getPassword()).isEqualTo("{noop}21");
+    }
+
+    @Test
+    void removedSlotIsReused() {
+        //2048 слотов: без повторного использования удаленных слотов 1434-е добавление перестроило бы
+        //индекс под одного пользователя, и память уменьшилась бы
+        CompactUserStore store = new CompactUserStore(1000);
+        store.put("user", "{noop}password", USER, 0);
+        long memory = store.memoryBytes();
+
+        for (int i = 0; i < 5000; i++) {
+            store.remove("user");
+            store.put("user", "{noop}password-" + i, USER, 0);
+        }
+
+        assertThat(store.memoryBytes()).isEqualTo(memory);
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.find("user").getPassword()).isEqualTo("{noop}password-4999");
+        assertThat(store.wastedBytes()).isPositive();
+    }
+
+    @Test
+    void indexGrowsWithUsers() {
+        CompactUserStore store = new CompactUserStore(16);
+        long memory = store.memoryBytes();
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(store.put("user-" + i, "{noop}" + i, USER, 0)).isTrue();
+        }
+
+        assertThat(store.size()).isEqualTo(10_000);
+        assertThat(store.memoryBytes()).isGreaterThan(memory + 10_000 * Long.BYTES);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(store.find("user-" + i).getPassword()).isEqualTo("{noop}" + i);
+        }
+        assertThat(store.find("user-10000")).isNull();
+    }
+
+    @Test
+    void indexShrinksWhenMostSlotsAreRemoved() {
+        CompactUserStore store = new CompactUserStore(1000);
+        for (int i = 0; i < 1000; i++) {
+            store.put("user-" + i, "{noop}" + i, USER, 0);
+        }
+        for (int i = 10; i < 1000; i++) {
+            store.remove("user-" + i);
+        }
+        long memory = store.memoryBytes();
+
+        //новые имена занимают пустые слоты, пока загрузка с удаленными не превысит предел
+        int added = 0;
+        while (store.memoryBytes() >= memory && added < 100_000) {
+            store.put("churn-" + added, "{noop}churn", USER, 0);
+            store.remove("churn-" + added);
+            added++;
+        }
+
+        assertThat(store.memoryBytes()).isLessThan(memory);
+        assertThat(store.size()).isEqualTo(10);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(store.contains("user-" + i)).isEqualTo(i < 10);
+        }
+        assertThat(store.contains("churn-0")).isFalse();
+    }
+
+    @Test
+    void recordsDoNotCrossChunks() {
+        //записи около 1 КБ: граница массива приходится на середину записи примерно каждые 1000 пользователей
+        String padding = "x".repeat(1000);
+        CompactUserStore store = new CompactUserStore(3000);
+        for (int i = 0; i < 3000; i++) {
+            store.put("user-" + i, "{noop}" + i + padding, USER, 0);
+        }
+
+        assertThat(store.memoryBytes()).isGreaterThan(2L * CHUNK_SIZE);
+        for (int i = 0; i < 3000; i++) {
+            UserDetails user = store.find("user-" + i);
+            assertThat(user.getUsername()).isEqualTo("user-" + i);
+            assertThat(user.getPassword()).isEqualTo("{noop}" + i + padding);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package ru.vershinin.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.vershinin.dto.JwtParseResponseDto;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HmacJwtVerifier и JwtClaimsParser должны принимать те же решения, что и Jwts.parser().
+ * для каждого токена результат JwtService.validate сравнивается с jjwt; там, где решение обязан принять
+ * быстрый путь, дополнительно проверяется, что verify не вернул null
+ */
+class HmacJwtVerifierTest {
+
+    private static final String KEY = "should-be-externally-configured";
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    private static final String HEADER = "{\"alg\":\"HS256\"}";
+
+    private final HmacJwtVerifier verifier = new HmacJwtVerifier(KEY.getBytes());
+
+    private final JwtService jwtService = newJwtService();
+
+    private final long now = System.currentTimeMillis() / 1000;
+
+    @Test
+    void issuedTokensAreAccepted() {
+        String token = Jwts.builder()
+                .setSubject("username")
+                .claim("authorities", List.of("ROLE_USER"))
+                .setIssuedAt(new Date())
+                .setExpiration(new Date((now + 3600) * 1000))
+                .signWith(SignatureAlgorithm.HS256, KEY.getBytes())
+                .compact();
+
+        assertFastPathEquivalent(token);
+        assertThat(jwtService.validate(token).isValid()).isTrue();
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"r\":1,\"exp\":" + (now + 3600) + "}"));
+    }
+
+    @Test
+    void tamperedSignature() {
+        String token = sign(HEADER, claims("username"));
+        int middle = token.lastIndexOf('.') + 10;
+        String tampered = token.substring(0, middle) + (token.charAt(middle) == 'A' ? 'B' : 'A')
+                + token.substring(middle + 1);
+
+        assertFastPathEquivalent(tampered);
+        assertThat(jwtService.validate(tampered).isValid()).isFalse();
+        //последний символ подписи несет 4 бита данных и 2 незначащих: оба парсера их игнорируют одинаково
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        char last = token.charAt(token.length() - 1);
+        String lastChar = token.substring(0, token.length() - 1) + alphabet.charAt(alphabet.indexOf(last) ^ 1);
+        assertFastPathEquivalent(lastChar);
+    }
+
+    @Test
+    void tamperedPayload() {
+        String token = sign(HEADER, claims("username"));
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + encode(claims("admin")) + "." + parts[2];
+
+        assertFastPathEquivalent(forged);
+        assertThat(jwtService.validate(forged).isValid()).isFalse();
+    }
+
+    @Test
+    void algNone() {
+        String unsigned = encode("{\"alg\":\"none\"}") + "." + encode(claims("username")) + ".";
+        assertEquivalent(unsigned);
+        assertThat(jwtService.validate(unsigned).isValid()).isFalse();
+
+        String signedNone = sign("{\"alg\":\"none\"}", claims("username"));
+        assertEquivalent(signedNone);
+        assertThat(jwtService.validate(signedNone).isValid()).isFalse();
+    }
+
+    @Test
+    void unknownAndOtherAlgorithms() {
+        assertEquivalent(sign("{\"alg\":\"HS999\"}", claims("username")));
+        assertEquivalent(sign("{\"alg\":\"HS512\"}", claims("username")));
+        assertEquivalent(sign("{\"alg\":\"hs256\"}", claims("username")));
+        assertEquivalent(sign("{\"alg\":\"RS256\"}", claims("username")));
+        assertEquivalent(sign("{}", claims("username")));
+    }
+
+    @Test
+    void extraHeaderFields() {
+        assertFastPathEquivalent(sign("{\"alg\":\"HS256\",\"typ\":\"JWT\"}", claims("username")));
+        assertFastPathEquivalent(sign("{\"typ\":\"JWT\",\"alg\":\"HS256\"}", claims("username")));
+        assertEquivalent(sign("{\"alg\":\"HS256\",\"kid\":\"1\"}", claims("username")));
+        assertEquivalent(sign("{\"alg\":\"HS256\",\"zip\":\"DEF\"}", claims("username")));
+        assertEquivalent(sign("{\"alg\":\"HS256\",\"crit\":[\"exp\"]}", claims("username")));
+        assertEquivalent(sign("{ \"alg\" : \"HS256\" }", claims("username")));
+    }
+
+    @Test
+    void escapedStringsAndUnicodeInSubject() {
+        assertFastPathEquivalent(sign(HEADER, claims("us\\\"er\\\\name\\/")));
+        assertFastPathEquivalent(sign(HEADER, claims("\\u0443\\u0441\\u0435\\u0440")));
+        assertFastPathEquivalent(sign(HEADER, claims("\\ud83d\\ude00 smile")));
+        assertFastPathEquivalent(sign(HEADER, claims("юзер 😀")));
+        assertFastPathEquivalent(sign(HEADER, claims("tab\\tnew\\nline\\b\\f\\r")));
+        assertEquivalent(sign(HEADER, claims("bad \\x escape")));
+        assertEquivalent(sign(HEADER, claims("short \\u12")));
+        assertEquivalent(sign(HEADER, "{\"sub\":\"raw\ttab\",\"exp\":" + (now + 3600) + "}"));
+    }
+
+    @Test
+    void duplicateKeys() {
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"first\",\"sub\":\"second\",\"exp\":" + (now + 3600) + "}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":" + (now - 3600)
+                + ",\"exp\":" + (now + 3600) + "}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":" + (now + 3600)
+                + ",\"exp\":" + (now - 3600) + "}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"authorities\":[\"ROLE_USER\"],"
+                + "\"authorities\":[\"ROLE_ADMIN\"],\"exp\":" + (now + 3600) + "}"));
+    }
+
+    @Test
+    void fractionalAndBoundaryDates() {
+        assertEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":" + (now + 3600) + ".5}"));
+        assertEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":" + (now - 3600) + ".5}"));
+        assertEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":4.1e9}"));
+        assertEquivalent(sign(HEADER, "{\"sub\":\"username\",\"nbf\":" + (now + 3600) + ".25}"));
+        assertEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":1234567890123456789012}"));
+
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":" + (now - 1) + "}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":" + (now + 2) + "}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":0}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":-1}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":9007199254740}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\"}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"exp\":null}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"nbf\":" + (now + 3600) + "}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"nbf\":" + (now - 2) + "}"));
+        assertFastPathEquivalent(sign(HEADER, "{\"sub\":\"username\",\"nbf\":" + (now + 3600)
+                + ",\"exp\":" + (now - 3600) + "}"));
+    }
+
+    @Test
+    void truncatedAndExtraSegments() {
+        String token = sign(HEADER, claims("username"));
+        String[] parts = token.split("\\.");
+
+        assertEquivalent(token.substring(0, token.length() - 1));
+        assertEquivalent(token.substring(0, token.length() - 2));
+        assertEquivalent(parts[0] + "." + parts[1] + ".");
+        assertEquivalent(parts[0] + "." + parts[1]);
+        assertEquivalent(parts[0]);
+        assertEquivalent(token + ".");
+        assertEquivalent(token + "." + parts[2]);
+        assertEquivalent(parts[0] + "." + parts[1].substring(0, parts[1].length() - 1) + "." + parts[2]);
+        assertEquivalent(parts[0] + ".." + parts[2]);
+        assertEquivalent("." + parts[1] + "." + parts[2]);
+        assertEquivalent(token + "=");
+        assertEquivalent(token.replace('-', '+').replace('_', '/'));
+        assertEquivalent(token.substring(0, token.length() - 1) + "*");
+        assertEquivalent(sign(HEADER, claims("username") + "  "));
+        assertEquivalent(sign(HEADER, claims("username") + "x"));
+        assertEquivalent(sign(HEADER, "{\"sub\":\"username\""));
+    }
+
+    @Test
+    void subjectAndRolesAreNotReadBeforeSignature() {
+        String payload = "{\"sub\":\"admin\",\"authorities\":[\"ROLE_ADMIN\"],\"nbf\":" + (now - 60)
+                + ",\"exp\":" + (now + 3600) + "}";
+
+        JwtClaimsParser times = JwtClaimsParser.scanTimes(payload);
+        JwtClaimsParser claims = JwtClaimsParser.parse(payload);
+
+        assertThat(times.getSubject()).isNull();
+        assertThat(times.getAuthorities()).isNull();
+        assertThat(times.getExpiration()).isEqualTo(now + 3600);
+        assertThat(times.getNotBefore()).isEqualTo(now - 60);
+        assertThat(claims.getSubject()).isEqualTo("admin");
+        assertThat(claims.getAuthorities()).containsExactly("ROLE_ADMIN");
+    }
+
+    @Test
+    void scanRejectsTheSameBodiesAsParse() {
+        List<String> payloads = List.of(
+                claims("bad \\x escape"),
+                claims("short \\u12"),
+                "{\"sub\":\"raw\ttab\"}",
+                "{\"sub\":1}",
+                "{\"authorities\":[\"ROLE_USER\",1]}",
+                "{\"authorities\":\"ROLE_USER\"}",
+                "{\"other\":\"bad \\q\"}",
+                "{\"other\":[\"bad \\q\"]}",
+                "{\"sub\":\"username\"}x",
+                "{\"sub\":\"username\"");
+
+        for (String payload : payloads) {
+            assertThat(supported(() -> JwtClaimsParser.scanTimes(payload))).as(payload)
+                    .isEqualTo(supported(() -> JwtClaimsParser.parse(payload)))
+                    .isFalse();
+        }
+        String escaped = claims("us\\\"er \\u0443 \\/ \\t");
+        assertThat(supported(() -> JwtClaimsParser.scanTimes(escaped))).isTrue();
+        assertThat(supported(() -> JwtClaimsParser.parse(escaped))).isTrue();
+    }
+
+    private static boolean supported(Runnable parse) {
+        try {
+            parse.run();
+            return true;
+        } catch (JwtClaimsParser.UnsupportedClaimsException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * решение принимает быстрый путь, и оно совпадает с jjwt
+     */
+    private void assertFastPathEquivalent(String token) {
+        assertThat(verifier.checkStructure(token)).as(token).isNull();
+        JwtValidationResult fast = verifier.verify(token, System.currentTimeMillis());
+        assertThat(fast).as("fast path declined " + token).isNotNull();
+        assertThat(outcome(fast)).as(token).isEqualTo(jjwt(token));
+        assertEquivalent(token);
+    }
+
+    private void assertEquivalent(String token) {
+        assertThat(outcome(jwtService.validate(token))).as(token).isEqualTo(jjwt(token));
+    }
+
+    private static String outcome(JwtValidationResult result) {
+        if (result.isValid()) {
+            JwtParseResponseDto claims = result.getClaims();
+            return "valid " + claims.getUsername() + " " + claims.getAuthorities() + " " + claims.getExpiration();
+        }
+        return result.isPermanent() ? "invalid" : "premature";
+    }
+
+    /**
+     * решение jjwt, приведенное к виду outcome
+     */
+    private static String jjwt(String token) {
+        try {
+            Claims claims = Jwts.parser()
+                    .setSigningKey(KEY.getBytes())
+                    .parseClaimsJws(token)
+                    .getBody();
+            //noinspection unchecked
+            List<String> authorities = claims.get("authorities", List.class);
+            Object roles = claims.get(CompactClaims.ROLES);
+            if (authorities == null && roles instanceof Number) {
+                authorities = CompactClaims.authorities(((Number) roles).longValue());
+            }
+            return "valid " + claims.getSubject() + " " + authorities + " " + claims.getExpiration();
+        } catch (PrematureJwtException ex) {
+            return "premature";
+        } catch (JwtException | IllegalArgumentException ex) {
+            return "invalid";
+        }
+    }
+
+    private String claims(String subject) {
+        return "{\"sub\":\"" + subject + "\",\"authorities\":[\"ROLE_USER\"],\"exp\":" + (now + 3600) + "}";
+    }
+
+    private static String sign(String header, String payload) {
+        String signed = encode(header) + "." + encode(payload);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(KEY.getBytes(), "HmacSHA256"));
+            return signed + "." + BASE64_URL.encodeToString(mac.doFinal(signed.getBytes(StandardCharsets.US_ASCII)));
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String encode(String json) {
+        return BASE64_URL.encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JwtService newJwtService() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new JwtService(KEY, new RejectedTokenCache(1000, Duration.ofMinutes(1), meterRegistry), meterRegistry);
+    }
+}
@@ -0,0 +1,58 @@
+package ru.vershinin.service;
+
+import org.junit.jupiter.api.Test;
+import ru.vershinin.dto.JwtParseResponseDto;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * результат несет либо claims, либо причину отказа; кэшировать можно только отказы, которые не зависят от времени
+ */
+class JwtValidationResultTest {
+
+    @Test
+    void validCarriesClaims() {
+        JwtParseResponseDto claims = new JwtParseResponseDto("username", List.of("ROLE_USER"), new Date(0));
+
+        JwtValidationResult result = JwtValidationResult.valid(claims);
+
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.getClaims()).isSameAs(claims);
+        assertThat(result.getError()).isNull();
+    }
+
+    @Test
+    void invalidIsPermanent() {
+        JwtValidationResult result = JwtValidationResult.invalid("JWT expired.");
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.getClaims()).isNull();
+        assertThat(result.getError()).isEqualTo("JWT expired.");
+        assertThat(result.isPermanent()).isTrue();
+    }
+
+    @Test
+    void notYetValidIsNotPermanent() {
+        JwtValidationResult result = JwtValidationResult.notYetValid("JWT must not be accepted before its nbf time.");
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.isPermanent()).isFalse();
+        assertThat(JwtValidationResult.PREMATURE.isPermanent()).isFalse();
+    }
+
+    @Test
+    void predefinedRejections() {
+        List<JwtValidationResult> rejections = List.of(JwtValidationResult.MISSING, JwtValidationResult.MALFORMED,
+                JwtValidationResult.UNSIGNED, JwtValidationResult.NOT_BASE64URL, JwtValidationResult.BAD_SIGNATURE,
+                JwtValidationResult.EXPIRED);
+
+        for (JwtValidationResult rejection : rejections) {
+            assertThat(rejection.isValid()).isFalse();
+            assertThat(rejection.isPermanent()).isTrue();
+            assertThat(rejection.getError()).isNotBlank();
+        }
+    }
+}
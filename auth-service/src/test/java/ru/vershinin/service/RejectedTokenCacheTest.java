@@ -0,0 +1,74 @@
+package ru.vershinin.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.vershinin.dto.JwtParseResponseDto;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * в кэше оказываются только окончательные отказы: действительный токен и токен до nbf проверяются заново
+ */
+class RejectedTokenCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RejectedTokenCache cache = new RejectedTokenCache(1000, Duration.ofMinutes(1), meterRegistry);
+
+    @Test
+    void permanentRejectionIsCached() {
+        TokenDigest key = TokenDigest.of("forged.token.signature");
+
+        cache.put(key, JwtValidationResult.BAD_SIGNATURE);
+
+        assertThat(cache.getIfPresent(key)).isSameAs(JwtValidationResult.BAD_SIGNATURE);
+        assertThat(cache.getIfPresent(TokenDigest.of("other.token.signature"))).isNull();
+    }
+
+    @Test
+    void prematureTokenIsNotCached() {
+        TokenDigest key = TokenDigest.of("premature.token.signature");
+
+        cache.put(key, JwtValidationResult.PREMATURE);
+
+        assertThat(cache.getIfPresent(key)).isNull();
+    }
+
+    @Test
+    void validTokenIsNotCached() {
+        TokenDigest key = TokenDigest.of("valid.token.signature");
+
+        cache.put(key, JwtValidationResult.valid(new JwtParseResponseDto("username", List.of("ROLE_USER"),
+                new Date())));
+
+        assertThat(cache.getIfPresent(key)).isNull();
+    }
+
+    @Test
+    void entriesExpireAfterTtl() throws InterruptedException {
+        RejectedTokenCache shortLived = new RejectedTokenCache(1000, Duration.ofMillis(50), new SimpleMeterRegistry());
+        TokenDigest key = TokenDigest.of("expired.token.signature");
+        shortLived.put(key, JwtValidationResult.EXPIRED);
+
+        Thread.sleep(100);
+
+        assertThat(shortLived.getIfPresent(key)).isNull();
+    }
+
+    @Test
+    void hitsAndMissesAreCounted() {
+        TokenDigest key = TokenDigest.of("forged.token.signature");
+        cache.getIfPresent(key);
+        cache.put(key, JwtValidationResult.BAD_SIGNATURE);
+        cache.getIfPresent(key);
+
+        assertThat(meterRegistry.get("cache.gets").tag("cache", RejectedTokenCache.CACHE_NAME)
+                .tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", RejectedTokenCache.CACHE_NAME)
+                .tag("result", "miss").functionCounter().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.vershinin.service;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * не больше max-per-second строк в секунду; число пропущенных отказов выводится в следующей строке
+ */
+class RejectionLogTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(RejectionLog.class);
+
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+    }
+
+    @Test
+    void linesPerSecondAreLimited() {
+        RejectionLog rejectionLog = new RejectionLog(2);
+
+        for (int i = 0; i < 10; i++) {
+            rejectionLog.rejected("JWT expired.");
+        }
+
+        assertThat(appender.list).hasSize(2);
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage)
+                .containsOnly("JWT rejected: JWT expired.");
+    }
+
+    @Test
+    void suppressedRejectionsAreReportedInNextWindow() throws InterruptedException {
+        RejectionLog rejectionLog = new RejectionLog(1);
+        rejectionLog.rejected("JWT expired.");
+        rejectionLog.rejected("JWT expired.");
+        rejectionLog.rejected("JWT expired.");
+
+        Thread.sleep(1100);
+        rejectionLog.rejected("JWT signature does not match.");
+
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage).containsExactly(
+                "JWT rejected: JWT expired.",
+                "JWT rejected: JWT signature does not match. (2 more rejections not logged)");
+    }
+}
@@ -0,0 +1,62 @@
+package ru.vershinin.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * задержка и ошибки заглушки сервиса: каждый ответ задерживается на latency плюс случайные 0..jitter мс,
+ * доля errorRate ответов - 500
+ */
+final class FaultInjection {
+
+    private final long latencyMillis;
+
+    private final long jitterMillis;
+
+    private final double errorRate;
+
+    /**
+     * @param latencyMillis - постоянная задержка ответа, мс
+     * @param jitterMillis - случайная добавка к задержке, мс
+     * @param errorRate - доля ответов с ошибкой, от 0 до 1
+     */
+    FaultInjection(long latencyMillis, long jitterMillis, double errorRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * читает настройки из системных свойств с префиксом, например -Dprotected.latency=20
+     * @param prefix - имя сервиса
+     * @param defaultLatencyMillis - задержка по умолчанию, мс
+     * @return
+     */
+    static FaultInjection fromSystemProperties(String prefix, long defaultLatencyMillis) {
+        return new FaultInjection(Long.getLong(prefix + ".latency", defaultLatencyMillis),
+                Long.getLong(prefix + ".jitter", 0),
+                Double.parseDouble(System.getProperty(prefix + ".error-rate", "0")));
+    }
+
+    /**
+     * выдерживает задержку ответа
+     * @return - true, если ответ должен быть ошибкой
+     */
+    boolean apply() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+
+    @Override
+    public String toString() {
+        return latencyMillis + "+0.." + jitterMillis + " ms, " + (errorRate * 100) + "% errors";
+    }
+}
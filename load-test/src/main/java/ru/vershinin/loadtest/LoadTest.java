@@ -0,0 +1,118 @@
+package ru.vershinin.loadtest;
+
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.vershinin.ApiGatewayApplication;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * нагрузочный тест api-gateway без eureka, kafka и smtp: заглушки auth-service и protected-service
+ * поднимаются в этом же процессе, шлюз запускается с профилем stub и статическими списками серверов ribbon.
+ * нагрузка - открытая модель (OpenModelLoad) ступенями по частоте; по каждой ступени печатаются пропускная
+ * способность и перцентили задержек, строки дописываются в CSV для сравнения прогонов.
+ * <pre>
+ * mvn -f api-gateway install -DskipTests
+ * mvn -f load-test compile exec:java -Drates=100,200,400,800 -Dduration=30
+ * </pre>
+ * параметры (системные свойства):
+ * rates - сценариев в секунду на ступенях, duration и warmup - длительность ступени и прогрева, с;
+ * requests-per-login - запросов к protected-service на один вход; max-in-flight - лимит одновременных сценариев;
+ * protected.latency, protected.jitter (мс), protected.error-rate и то же для auth - задержки и ошибки заглушек;
+ * csv - файл результатов; run - метка прогона в CSV; gateway.args - аргументы шлюза через пробел,
+ * например "--security.jwt.validation-mode=REMOTE --gateway.rate-limit.enabled=true"
+ */
+public class LoadTest {
+
+    static final String SIGNING_KEY = System.getProperty("signing.key", "should-be-externally-configured");
+
+    public static void main(String[] args) throws Exception {
+        double[] rates = Arrays.stream(System.getProperty("rates", "100,200,400,800").split(","))
+                .mapToDouble(Double::parseDouble)
+                .toArray();
+        Duration duration = Duration.ofSeconds(Long.getLong("duration", 30));
+        Duration warmup = Duration.ofSeconds(Long.getLong("warmup", 10));
+        int requestsPerLogin = Integer.getInteger("requests-per-login", 1);
+        int maxInFlight = Integer.getInteger("max-in-flight", 10_000);
+        FaultInjection authFaults = FaultInjection.fromSystemProperties("auth", 5);
+        FaultInjection protectedFaults = FaultInjection.fromSystemProperties("protected", 20);
+        Path csv = Paths.get(System.getProperty("csv", "target/load-test.csv"));
+        String run = System.getProperty("run", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+
+        ExecutorService stubExecutor = Executors.newCachedThreadPool();
+        HttpServer authService = StubServices.startAuthService(stubExecutor, authFaults, SIGNING_KEY);
+        HttpServer protectedService = StubServices.startProtectedService(stubExecutor, protectedFaults);
+        ConfigurableApplicationContext gateway = startGateway(authService, protectedService);
+        try {
+            String gatewayUrl = "http://localhost:" + gateway.getEnvironment().getProperty("local.server.port");
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newFixedThreadPool(8))
+                    .build();
+            OpenModelLoad load = new OpenModelLoad(client, gatewayUrl, requestsPerLogin, maxInFlight);
+
+            System.out.printf("auth-service %s, protected-service %s, %d protected request(s) per login, "
+                    + "%d s per step%n", authFaults, protectedFaults, requestsPerLogin, duration.getSeconds());
+            load.run(rates[0], warmup);
+            System.out.println(StepResult.header());
+            List<String> lines = new ArrayList<>();
+            for (double rate : rates) {
+                StepResult result = load.run(rate, duration);
+                System.out.println(result.row());
+                lines.add(result.csv(run));
+            }
+            writeCsv(csv, lines);
+            System.out.println("results appended to " + csv.toAbsolutePath());
+        } finally {
+            gateway.close();
+            authService.stop(0);
+            protectedService.stop(0);
+            stubExecutor.shutdownNow();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * аргументы командной строки имеют приоритет над application-stub.yml, поэтому адреса заглушек передаются так
+     */
+    private static ConfigurableApplicationContext startGateway(HttpServer authService, HttpServer protectedService) {
+        List<String> gatewayArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--auth-service.ribbon.listOfServers=localhost:" + authService.getAddress().getPort(),
+                "--protected-service.ribbon.listOfServers=localhost:" + protectedService.getAddress().getPort(),
+                "--security.jwt.signing-key=" + SIGNING_KEY,
+                "--logging.level.root=WARN"));
+        String extra = System.getProperty("gateway.args", "").trim();
+        if (!extra.isEmpty()) {
+            gatewayArgs.addAll(Arrays.asList(extra.split("\\s+")));
+        }
+        return new SpringApplicationBuilder(ApiGatewayApplication.class)
+                .profiles("stub")
+                .run(gatewayArgs.toArray(new String[0]));
+    }
+
+    private static void writeCsv(Path csv, List<String> lines) throws IOException {
+        if (csv.getParent() != null) {
+            Files.createDirectories(csv.getParent());
+        }
+        if (!Files.exists(csv)) {
+            Files.write(csv, List.of(StepResult.CSV_HEADER), StandardCharsets.UTF_8);
+        }
+        Files.write(csv, lines, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,128 @@
+package ru.vershinin.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * открытая модель нагрузки: сценарии начинаются с постоянной частотой, независимо от того, успевает ли шлюз.
+ * сценарий - вход через POST /auth/v1/login и requestsPerLogin запросов GET /api/v1/protected с полученным токеном.
+ * время сценария и входа считается от запланированного начала, поэтому отставание генератора или очередь
+ * в шлюзе не прячут задержку (coordinated omission)
+ */
+final class OpenModelLoad {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+
+    private final URI loginUri;
+
+    private final URI protectedUri;
+
+    private final int requestsPerLogin;
+
+    private final int maxInFlight;
+
+    private final AtomicLong sessions = new AtomicLong();
+
+    /**
+     * @param client - клиент генератора нагрузки
+     * @param gatewayUrl - адрес шлюза
+     * @param requestsPerLogin - запросов к protected-service на один вход
+     * @param maxInFlight - максимальное число одновременных сценариев, сверх него сценарии не начинаются
+     */
+    OpenModelLoad(HttpClient client, String gatewayUrl, int requestsPerLogin, int maxInFlight) {
+        this.client = client;
+        this.loginUri = URI.create(gatewayUrl + "/auth/v1/login");
+        this.protectedUri = URI.create(gatewayUrl + "/api/v1/protected");
+        this.requestsPerLogin = requestsPerLogin;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @param rate - сценариев в секунду
+     * @param duration - длительность ступени
+     * @return - результаты ступени; возвращается после завершения всех начатых сценариев
+     */
+    StepResult run(double rate, Duration duration) throws InterruptedException {
+        StepResult result = new StepResult(rate, duration);
+        AtomicInteger inFlight = new AtomicInteger();
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long intended = start; intended < end; intended += intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                result.dropped.incrementAndGet();
+                continue;
+            }
+            login(intended, result, inFlight);
+        }
+        long deadline = System.nanoTime() + REQUEST_TIMEOUT.toNanos() * (requestsPerLogin + 1);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return result;
+    }
+
+    private void login(long intended, StepResult result, AtomicInteger inFlight) {
+        String body = "{\"username\":\"user-" + sessions.incrementAndGet() + "\",\"password\":\"password\"}";
+        HttpRequest request = HttpRequest.newBuilder(loginUri)
+                .header("Content-Type", "application/json")
+                .timeout(REQUEST_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+            Optional<String> authorization = ex == null && response.statusCode() == 200
+                    ? response.headers().firstValue("Authorization")
+                    : Optional.empty();
+            if (authorization.isEmpty()) {
+                fail(result, inFlight);
+                return;
+            }
+            StepResult.record(result.login, System.nanoTime() - intended);
+            callProtected(intended, authorization.get(), requestsPerLogin, result, inFlight);
+        });
+    }
+
+    private void callProtected(long intended, String authorization, int remaining, StepResult result,
+                               AtomicInteger inFlight) {
+        HttpRequest request = HttpRequest.newBuilder(protectedUri)
+                .header("Authorization", authorization)
+                .timeout(REQUEST_TIMEOUT)
+                .build();
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+            long now = System.nanoTime();
+            if (ex != null || response.statusCode() != 200) {
+                fail(result, inFlight);
+                return;
+            }
+            StepResult.record(result.protectedResource, now - sent);
+            if (remaining > 1) {
+                callProtected(intended, authorization, remaining - 1, result, inFlight);
+            } else {
+                StepResult.record(result.flow, now - intended);
+                result.completed.incrementAndGet();
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    private static void fail(StepResult result, AtomicInteger inFlight) {
+        result.errors.incrementAndGet();
+        inFlight.decrementAndGet();
+    }
+}
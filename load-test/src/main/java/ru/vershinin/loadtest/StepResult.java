@@ -0,0 +1,79 @@
+package ru.vershinin.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * результаты одной ступени нагрузки: гистограммы задержек в микросекундах и счетчики
+ */
+final class StepResult {
+
+    static final String CSV_HEADER = "run,target_rate,throughput,errors,dropped,"
+            + "flow_p50_ms,flow_p99_ms,flow_p999_ms,login_p50_ms,login_p99_ms,protected_p50_ms,protected_p99_ms,"
+            + "protected_p999_ms";
+
+    private final double targetRate;
+
+    private final Duration duration;
+
+    /**
+     * весь сценарий: от запланированного начала входа до ответа последнего запроса к protected-service
+     */
+    final Histogram flow = new ConcurrentHistogram(3);
+
+    final Histogram login = new ConcurrentHistogram(3);
+
+    final Histogram protectedResource = new ConcurrentHistogram(3);
+
+    final AtomicLong completed = new AtomicLong();
+
+    final AtomicLong errors = new AtomicLong();
+
+    /**
+     * сценарии, которые не были начаты из-за лимита одновременных сценариев
+     */
+    final AtomicLong dropped = new AtomicLong();
+
+    StepResult(double targetRate, Duration duration) {
+        this.targetRate = targetRate;
+        this.duration = duration;
+    }
+
+    static void record(Histogram histogram, long nanos) {
+        histogram.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    double throughput() {
+        return completed.get() / (duration.toMillis() / 1000.0);
+    }
+
+    static String header() {
+        return String.format("%10s %10s %8s %8s %10s %10s %10s %10s %10s %10s",
+                "rate/s", "done/s", "errors", "dropped",
+                "flow p50", "flow p99", "flow p999", "prot p50", "prot p99", "prot p999");
+    }
+
+    String row() {
+        return String.format("%10.0f %10.1f %8d %8d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f",
+                targetRate, throughput(), errors.get(), dropped.get(),
+                millis(flow, 50), millis(flow, 99), millis(flow, 99.9),
+                millis(protectedResource, 50), millis(protectedResource, 99), millis(protectedResource, 99.9));
+    }
+
+    String csv(String run) {
+        return String.format(Locale.ROOT, "%s,%.0f,%.1f,%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f",
+                run, targetRate, throughput(), errors.get(), dropped.get(),
+                millis(flow, 50), millis(flow, 99), millis(flow, 99.9),
+                millis(login, 50), millis(login, 99),
+                millis(protectedResource, 50), millis(protectedResource, 99), millis(protectedResource, 99.9));
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getTotalCount() == 0 ? Double.NaN : histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,107 @@
+package ru.vershinin.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * заглушки auth-service и protected-service в том же процессе, на JDK HttpServer.
+ * отвечают так же, как настоящие сервисы на запросы, которые шлюз передает в сценарии login -> protected
+ */
+final class StubServices {
+
+    private StubServices() {
+    }
+
+    /**
+     * POST /v1/login выдает токен в заголовке Authorization, POST /v1/jwt/parse проверяет токен тем же ключом
+     * (нужен шлюзу в режиме security.jwt.validation-mode=REMOTE)
+     */
+    static HttpServer startAuthService(ExecutorService executor, FaultInjection faults, String signingKey)
+            throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+        server.createContext("/v1/login", exchange -> {
+            String body = readBody(exchange.getRequestBody());
+            if (faults.apply()) {
+                respond(exchange, 500, "{\"message\":\"injected error\"}");
+                return;
+            }
+            String username = body.replaceAll(".*\"username\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+            exchange.getResponseHeaders().add("Authorization", "Bearer " + mintToken(username, signingKey));
+            respond(exchange, 200, "");
+        });
+        server.createContext("/v1/jwt/parse", exchange -> {
+            String body = readBody(exchange.getRequestBody());
+            if (faults.apply()) {
+                respond(exchange, 500, "{\"message\":\"injected error\"}");
+                return;
+            }
+            String token = body.replaceAll(".*\"token\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+            try {
+                Claims claims = Jwts.parser().setSigningKey(signingKey.getBytes()).parseClaimsJws(token).getBody();
+                respond(exchange, 200, "{\"username\":\"" + claims.getSubject() + "\",\"authorities\":[\"ROLE_USER\"],"
+                        + "\"expiration\":" + claims.getExpiration().getTime() + "}");
+            } catch (RuntimeException ex) {
+                respond(exchange, 401, "{\"message\":\"invalid token\"}");
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    /**
+     * GET /v1/protected
+     */
+    static HttpServer startProtectedService(ExecutorService executor, FaultInjection faults) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+        server.createContext("/v1/protected", exchange -> {
+            readBody(exchange.getRequestBody());
+            if (faults.apply()) {
+                respond(exchange, 500, "injected error");
+                return;
+            }
+            respond(exchange, 200, "https://youtu.be/s35rVw1zskA");
+        });
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    private static String mintToken(String username, String signingKey) {
+        Instant now = Instant.now();
+        return Jwts.builder()
+                .setSubject(username)
+                .claim("authorities", Collections.singletonList("ROLE_USER"))
+                .setIssuedAt(Date.from(now))
+                .setExpiration(Date.from(now.plusSeconds(24 * 60 * 60)))
+                .signWith(SignatureAlgorithm.HS256, signingKey.getBytes())
+                .compact();
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
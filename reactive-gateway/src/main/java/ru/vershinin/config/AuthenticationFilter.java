@@ -0,0 +1,163 @@
+package ru.vershinin.config;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import ru.vershinin.dto.JwtParseResponseDto;
+import ru.vershinin.service.JwtValidationService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * неблокирующий аналог AuthenticationFilter из api-gateway.
+ * проверенные токены хранятся в кэше до exp токена, но не дольше max-ttl; одновременные проверки
+ * одного токена объединяются в одну - все ожидающие получают тот же результат или ту же ошибку.
+ * фильтр добавляется только в цепочку Spring Security, поэтому не объявлен как бин
+ */
+public class AuthenticationFilter implements WebFilter {
+
+    public static final String HEADER = "Authorization";
+
+    public static final String HEADER_VALUE_PREFIX = "Bearer";
+
+    public static final String CACHE_NAME = "jwt-authentication";
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final JwtValidationService jwtValidationService;
+
+    private final AsyncCache<String, CachedAuthentication> cache;
+
+    /**
+     * @param jwtValidationService - валидация токена
+     * @param maximumSize - максимальное число токенов в кэше
+     * @param maxTtl - максимальное время жизни записи
+     * @param meterRegistry - реестр метрик, счетчики кэша публикуются с тегом cache=jwt-authentication
+     */
+    public AuthenticationFilter(JwtValidationService jwtValidationService, long maximumSize, Duration maxTtl,
+                                MeterRegistry meterRegistry) {
+        this.jwtValidationService = jwtValidationService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry(maxTtl.toNanos()))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+    }
+
+    /**
+     * получает токен из заголовка запроса и передает дальше по цепочке контекст безопасности с объектом аутентификации;
+     * если токен недействителен, запрос идет дальше без аутентификации
+     * @param exchange - запрос и ответ
+     * @param chain - оставшаяся цепочка фильтров
+     * @return
+     */
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        //получаем токен из заголовка запроса
+        String header = exchange.getRequest().getHeaders().getFirst(HEADER);
+        if (header == null) {
+            return chain.filter(exchange);
+        }
+        //обрезаем префикс
+        String token = header.replace(HEADER_VALUE_PREFIX + " ", "");
+
+        return authenticate(token)
+                .map(Optional::of)
+                .onErrorReturn(Optional.empty())
+                .flatMap(auth -> auth.isPresent()
+                        ? chain.filter(exchange).subscriberContext(ReactiveSecurityContextHolder.withAuthentication(auth.get()))
+                        : chain.filter(exchange));
+    }
+
+    private Mono<Authentication> authenticate(String token) {
+        return Mono.defer(() -> Mono.fromFuture(cache.get(digest(token), (key, executor) -> jwtValidationService
+                        .parseJwt(token)
+                        .map(AuthenticationFilter::toCachedAuthentication)
+                        .toFuture())))
+                .map(cached -> cached.authentication);
+    }
+
+    private static CachedAuthentication toCachedAuthentication(JwtParseResponseDto responseDto) {
+        Authentication authentication = new UsernamePasswordAuthenticationToken(
+                responseDto.getUsername(),
+                null,
+                responseDto.getAuthorities().stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList())
+        );
+        long expiresAtMillis = responseDto.getExpiration() == null
+                ? Long.MAX_VALUE
+                : responseDto.getExpiration().getTime();
+        return new CachedAuthentication(authentication, expiresAtMillis);
+    }
+
+    private static String digest(String token) {
+        byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    private static final class CachedAuthentication {
+
+        private final Authentication authentication;
+
+        private final long expiresAtMillis;
+
+        private CachedAuthentication(Authentication authentication, long expiresAtMillis) {
+            this.authentication = authentication;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * время жизни записи - до exp токена, но не больше maxTtl
+     */
+    private static final class TokenExpiry implements Expiry<String, CachedAuthentication> {
+
+        private final long maxTtlNanos;
+
+        private TokenExpiry(long maxTtlNanos) {
+            this.maxTtlNanos = maxTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, CachedAuthentication value, long currentTime) {
+            if (value.expiresAtMillis == Long.MAX_VALUE) {
+                return maxTtlNanos;
+            }
+            long untilExpiration = TimeUnit.MILLISECONDS.toNanos(value.expiresAtMillis - System.currentTimeMillis());
+            return Math.max(0, Math.min(untilExpiration, maxTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedAuthentication value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedAuthentication value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.vershinin.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import reactor.core.publisher.Mono;
+import ru.vershinin.model.UserRole;
+import ru.vershinin.service.JwtValidationService;
+
+import java.time.Duration;
+
+@EnableWebFluxSecurity
+public class WebSecurityConfiguration {
+
+    /**
+     * определяет, какие URL пути должны быть защищены, а какие нет - те же правила, что в api-gateway
+     * @param http - объект ServerHttpSecurity, позволяет настроить безопасность для неблокирующего веб-стека
+     * @param jwtValidationService - валидация токена
+     * @param cacheMaximumSize - максимальное число токенов в кэше
+     * @param cacheMaxTtl - максимальное время жизни записи в кэше
+     * @param meterRegistry - реестр метрик
+     * @return
+     */
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                         JwtValidationService jwtValidationService,
+                                                         @Value("${security.jwt.cache.maximum-size:10000}") long cacheMaximumSize,
+                                                         @Value("${security.jwt.cache.max-ttl:5m}") Duration cacheMaxTtl,
+                                                         MeterRegistry meterRegistry) {
+        AuthenticationFilter authenticationFilter =
+                new AuthenticationFilter(jwtValidationService, cacheMaximumSize, cacheMaxTtl, meterRegistry);
+        return http
+                //выключаем csrf
+                .csrf().disable()
+                .httpBasic().disable()
+                .formLogin().disable()
+                .logout().disable()
+                //не храним контекст безопасности между запросами
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                //Код состояния (401), указывающий, что запрос требует аутентификации HTTP.
+                .exceptionHandling()
+                .authenticationEntryPoint((exchange, ex) ->
+                        Mono.fromRunnable(() -> exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED)))
+                .and()
+                .addFilterAt(authenticationFilter, SecurityWebFiltersOrder.AUTHENTICATION)
+                .authorizeExchange()
+                    .pathMatchers("/auth/**").permitAll()
+                    .anyExchange().hasRole(UserRole.USER.name())
+                .and()
+                .build();
+    }
+}
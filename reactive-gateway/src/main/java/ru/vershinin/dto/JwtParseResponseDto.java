@@ -0,0 +1,54 @@
+package ru.vershinin.dto;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * класс парсер для получения имя пользователя и роли
+ */
+public class JwtParseResponseDto {
+
+    private String username;
+
+    private List<String> authorities;
+
+    private Date expiration;
+
+    public JwtParseResponseDto() {
+    }
+
+    public JwtParseResponseDto(String username, List<String> authorities) {
+        this.username = username;
+        this.authorities = authorities;
+    }
+
+    public JwtParseResponseDto(String username, List<String> authorities, Date expiration) {
+        this.username = username;
+        this.authorities = authorities;
+        this.expiration = expiration;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public List<String> getAuthorities() {
+        return authorities;
+    }
+
+    public void setAuthorities(List<String> authorities) {
+        this.authorities = authorities;
+    }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Date expiration) {
+        this.expiration = expiration;
+    }
+}
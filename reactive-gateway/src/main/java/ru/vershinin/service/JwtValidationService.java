@@ -0,0 +1,65 @@
+package ru.vershinin.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import ru.vershinin.dto.JwtParseRequestDto;
+import ru.vershinin.dto.JwtParseResponseDto;
+import ru.vershinin.model.JwtValidationMode;
+
+/**
+ * выбирает способ валидации токена в зависимости от security.jwt.validation-mode.
+ * обращение к auth-service выполняется без блокировки потока
+ */
+@Service
+public class JwtValidationService {
+
+    private final JwtValidationMode mode;
+
+    private final LocalJwtValidator localValidator;
+
+    private final WebClient webClient;
+
+    /**
+     * адрес валидации токена:auth-service
+     */
+    private final String parseUrl;
+
+    @Autowired
+    public JwtValidationService(@Value("${security.jwt.validation-mode:REMOTE}") JwtValidationMode mode,
+                                LocalJwtValidator localValidator,
+                                @LoadBalanced WebClient.Builder webClientBuilder,
+                                @Value("${security.jwt.parse-url:http://auth-service/v1/jwt/parse}") String parseUrl) {
+        this.mode = mode;
+        this.localValidator = localValidator;
+        this.webClient = webClientBuilder.build();
+        this.parseUrl = parseUrl;
+    }
+
+    /**
+     * в режиме LOCAL проверяет токен в шлюзе и обращается в auth-service только если локальная проверка
+     * не может принять решение; в режиме REMOTE всегда обращается в auth-service
+     * @param token - токен полученный из заголовка запроса
+     * @return - имя пользователя и роли, ошибка - если токен недействителен
+     */
+    public Mono<JwtParseResponseDto> parseJwt(String token) {
+        Mono<JwtParseResponseDto> remote = Mono.defer(() -> parseJwtRemote(token));
+        if (mode == JwtValidationMode.LOCAL) {
+            return Mono.fromCallable(() -> localValidator.parseJwt(token)).switchIfEmpty(remote);
+        }
+        return remote;
+    }
+
+    private Mono<JwtParseResponseDto> parseJwtRemote(String token) {
+        return webClient.post()
+                .uri(parseUrl)
+                .bodyValue(new JwtParseRequestDto(token))
+                .retrieve()
+                .bodyToMono(JwtParseResponseDto.class)
+                //пустой ответ считаем ошибкой, как requireNonNull в api-gateway
+                .single();
+    }
+}
@@ -0,0 +1,225 @@
+package ru.vershinin.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * сравнение пропускной способности и задержек api-gateway (Zuul) и reactive-gateway при медленном upstream.
+ * поднимает заглушки auth-service (localhost:9081) и protected-service (localhost:9082, отвечает с задержкой),
+ * после чего нагружает переданные адреса шлюзов запросами GET /api/v1/protected с фиксированным числом
+ * одновременных запросов. шлюзы запускаются отдельно с профилем stub:
+ * <pre>
+ * api-gateway:      mvn spring-boot:run -Dspring-boot.run.profiles=stub            (порт 8080)
+ * reactive-gateway: mvn spring-boot:run -Dspring-boot.run.profiles=stub            (порт 8090)
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="http://localhost:8080 http://localhost:8090"
+ * </pre>
+ * параметры: -Dupstream.delay=200 (мс), -Dconcurrency=50,200,800, -Dduration=20 (с)
+ */
+public class GatewayComparisonBenchmark {
+
+    static final String SIGNING_KEY = System.getProperty("signing.key", "should-be-externally-configured");
+
+    public static void main(String[] args) throws Exception {
+        List<String> gateways = args.length == 0 ? Collections.singletonList("http://localhost:8080") : Arrays.asList(args);
+        long upstreamDelay = Long.getLong("upstream.delay", 200);
+        int[] concurrencyLevels = Arrays.stream(System.getProperty("concurrency", "50,200,800").split(","))
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        Duration duration = Duration.ofSeconds(Long.getLong("duration", 20));
+
+        ExecutorService stubExecutor = Executors.newCachedThreadPool();
+        HttpServer authStub = startAuthStub(stubExecutor);
+        HttpServer protectedStub = startProtectedStub(stubExecutor, upstreamDelay);
+        try {
+            String authorization = "Bearer " + mintToken();
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newFixedThreadPool(8))
+                    .build();
+
+            System.out.printf("upstream delay %d ms, %d s per run%n", upstreamDelay, duration.getSeconds());
+            System.out.printf("%-28s %12s %12s %10s %10s %10s %10s%n",
+                    "gateway", "concurrency", "req/s", "errors", "p50 ms", "p99 ms", "max ms");
+            for (String gateway : gateways) {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(gateway + "/api/v1/protected"))
+                        .header("Authorization", authorization)
+                        .timeout(Duration.ofSeconds(30))
+                        .build();
+                //прогрев
+                run(client, request, concurrencyLevels[0], Duration.ofSeconds(5));
+                for (int concurrency : concurrencyLevels) {
+                    Result result = run(client, request, concurrency, duration);
+                    System.out.printf("%-28s %12d %12.1f %10d %10.1f %10.1f %10.1f%n",
+                            gateway, concurrency, result.throughput(duration), result.errors.get(),
+                            result.percentile(0.50), result.percentile(0.99), result.percentile(1.0));
+                }
+            }
+        } finally {
+            authStub.stop(0);
+            protectedStub.stop(0);
+            stubExecutor.shutdownNow();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * замкнутая модель нагрузки: каждый из concurrency клиентов отправляет следующий запрос сразу после ответа
+     */
+    static Result run(HttpClient client, HttpRequest request, int concurrency, Duration duration)
+            throws InterruptedException {
+        Result result = new Result(1 << 22);
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicInteger active = new AtomicInteger(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            send(client, request, result, deadline, active);
+        }
+        while (active.get() > 0) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return result;
+    }
+
+    private static void send(HttpClient client, HttpRequest request, Result result, long deadline,
+                             AtomicInteger active) {
+        long start = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+            long end = System.nanoTime();
+            if (ex != null || response.statusCode() != 200) {
+                result.errors.incrementAndGet();
+            } else {
+                result.record(end - start);
+            }
+            if (end < deadline) {
+                send(client, request, result, deadline, active);
+            } else {
+                active.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * заглушка auth-service: POST /v1/jwt/parse проверяет токен тем же ключом
+     */
+    static HttpServer startAuthStub(ExecutorService executor) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 9081), 1024);
+        server.createContext("/v1/jwt/parse", exchange -> {
+            String body = readBody(exchange.getRequestBody());
+            String token = body.replaceAll(".*\"token\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+            try {
+                Claims claims = Jwts.parser().setSigningKey(SIGNING_KEY.getBytes()).parseClaimsJws(token).getBody();
+                respond(exchange, 200, "{\"username\":\"" + claims.getSubject() + "\",\"authorities\":[\"ROLE_USER\"],"
+                        + "\"expiration\":" + claims.getExpiration().getTime() + "}");
+            } catch (RuntimeException ex) {
+                respond(exchange, 401, "{\"message\":\"invalid token\"}");
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    /**
+     * заглушка protected-service: GET /v1/protected отвечает после задержки delayMillis
+     */
+    static HttpServer startProtectedStub(ExecutorService executor, long delayMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 9082), 4096);
+        server.createContext("/v1/protected", exchange -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "https://youtu.be/s35rVw1zskA");
+        });
+        server.setExecutor(executor);
+        server.start();
+        return server;
+    }
+
+    static String mintToken() {
+        Instant now = Instant.now();
+        return Jwts.builder()
+                .setSubject("username")
+                .claim("authorities", Collections.singletonList("ROLE_USER"))
+                .setIssuedAt(Date.from(now))
+                .setExpiration(Date.from(now.plusSeconds(24 * 60 * 60)))
+                .signWith(SignatureAlgorithm.HS256, SIGNING_KEY.getBytes())
+                .compact();
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * задержки успешных запросов одного прогона
+     */
+    static final class Result {
+
+        private final long[] latencies;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        Result(int capacity) {
+            this.latencies = new long[capacity];
+        }
+
+        void record(long latencyNanos) {
+            int index = count.getAndIncrement();
+            if (index < latencies.length) {
+                latencies[index] = latencyNanos;
+            }
+        }
+
+        double throughput(Duration duration) {
+            return (double) count.get() / duration.getSeconds();
+        }
+
+        double percentile(double quantile) {
+            int size = Math.min(count.get(), latencies.length);
+            if (size == 0) {
+                return Double.NaN;
+            }
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(size - 1, Math.ceil(quantile * size) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
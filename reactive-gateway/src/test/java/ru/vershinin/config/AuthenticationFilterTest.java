@@ -0,0 +1,119 @@
+package ru.vershinin.config;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import ru.vershinin.model.JwtValidationMode;
+import ru.vershinin.service.JwtValidationService;
+import ru.vershinin.service.LocalJwtValidator;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * одновременные запросы с одним токеном дают одно обращение к auth-service, недействительный токен
+ * пропускается без аутентификации, в режиме LOCAL auth-service вызывается только для чужих алгоритмов
+ */
+class AuthenticationFilterTest {
+
+    private static final String KEY = "should-be-externally-configured";
+
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+
+    private final List<Authentication> authentications = new CopyOnWriteArrayList<>();
+
+    private final WebFilterChain chain = exchange -> ReactiveSecurityContextHolder.getContext()
+            .map(SecurityContext::getAuthentication)
+            .doOnNext(authentications::add)
+            .then();
+
+    @Test
+    void concurrentRequestsShareOneRemoteCall() {
+        AuthenticationFilter filter = filter(JwtValidationMode.REMOTE, okResponse());
+
+        Mono.when(filter.filter(exchange("token"), chain), filter.filter(exchange("token"), chain),
+                filter.filter(exchange("token"), chain)).block(Duration.ofSeconds(5));
+
+        assertThat(remoteCalls).hasValue(1);
+        assertThat(authentications).hasSize(3);
+        assertThat(authentications).extracting(Authentication::getName).containsOnly("username");
+    }
+
+    @Test
+    void rejectedTokenPassesUnauthenticated() {
+        AuthenticationFilter filter = filter(JwtValidationMode.REMOTE,
+                Mono.just(ClientResponse.create(HttpStatus.UNAUTHORIZED).build()));
+
+        filter.filter(exchange("token"), chain).block(Duration.ofSeconds(5));
+
+        assertThat(remoteCalls).hasValue(1);
+        assertThat(authentications).isEmpty();
+    }
+
+    @Test
+    void localModeCallsAuthServiceOnlyForOtherAlgorithms() {
+        AuthenticationFilter filter = filter(JwtValidationMode.LOCAL, okResponse());
+
+        filter.filter(exchange(token(SignatureAlgorithm.HS256)), chain).block(Duration.ofSeconds(5));
+        assertThat(remoteCalls).hasValue(0);
+
+        filter.filter(exchange(token(SignatureAlgorithm.HS512)), chain).block(Duration.ofSeconds(5));
+        assertThat(remoteCalls).hasValue(1);
+
+        assertThat(authentications).hasSize(2);
+        assertThat(authentications.get(0).getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER");
+    }
+
+    private AuthenticationFilter filter(JwtValidationMode mode, Mono<ClientResponse> response) {
+        WebClient.Builder webClientBuilder = WebClient.builder().exchangeFunction(request -> {
+            remoteCalls.incrementAndGet();
+            //ответ задерживается, чтобы проверки одного токена пересеклись
+            return response.delayElement(Duration.ofMillis(100));
+        });
+        JwtValidationService jwtValidationService = new JwtValidationService(mode, new LocalJwtValidator(KEY),
+                webClientBuilder, "http://auth-service/v1/jwt/parse");
+        return new AuthenticationFilter(jwtValidationService, 100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    private static Mono<ClientResponse> okResponse() {
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body("{\"username\":\"username\",\"authorities\":[\"ROLE_USER\"]}")
+                .build());
+    }
+
+    private static MockServerWebExchange exchange(String token) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/protected")
+                .header(AuthenticationFilter.HEADER, AuthenticationFilter.HEADER_VALUE_PREFIX + " " + token));
+    }
+
+    private static String token(SignatureAlgorithm algorithm) {
+        return Jwts.builder()
+                .setSubject("username")
+                .claim("authorities", Collections.singletonList("ROLE_USER"))
+                .setExpiration(new Date(System.currentTimeMillis() + 3_600_000))
+                .signWith(algorithm, KEY.getBytes())
+                .compact();
+    }
+}
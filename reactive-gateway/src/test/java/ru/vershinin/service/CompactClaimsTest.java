@@ -0,0 +1,42 @@
+package ru.vershinin.service;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.Test;
+import ru.vershinin.dto.JwtParseResponseDto;
+import ru.vershinin.model.UserRole;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * маска ролей в claim "r" выпускается auth-service по его копии UserRole; значения закреплены здесь, в api-gateway и в auth-service
+ */
+class CompactClaimsTest {
+
+    private static final String KEY = "should-be-externally-configured";
+
+    @Test
+    void roleBitsAreFixed() {
+        assertThat(UserRole.USER.bit()).isEqualTo(1);
+        assertThat(CompactClaims.ROLES).isEqualTo("r");
+        assertThat(CompactClaims.authorities(1)).containsExactly("ROLE_USER");
+        assertThat(CompactClaims.authorities(0)).isEmpty();
+    }
+
+    @Test
+    void compactTokenIsReadByLocalValidator() {
+        String token = Jwts.builder()
+                .setSubject("username")
+                .claim(CompactClaims.ROLES, UserRole.USER.bit())
+                .setExpiration(new Date(System.currentTimeMillis() + 3_600_000))
+                .signWith(SignatureAlgorithm.HS256, KEY.getBytes())
+                .compact();
+
+        JwtParseResponseDto responseDto = new LocalJwtValidator(KEY).parseJwt(token);
+
+        assertThat(responseDto.getUsername()).isEqualTo("username");
+        assertThat(responseDto.getAuthorities()).containsExactly("ROLE_USER");
+    }
+}
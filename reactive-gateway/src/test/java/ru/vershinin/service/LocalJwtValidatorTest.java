@@ -0,0 +1,78 @@
+package ru.vershinin.service;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import org.junit.jupiter.api.Test;
+import ru.vershinin.dto.JwtParseResponseDto;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * шлюз сам решает только для HS256 с заданным ключом; остальные токены возвращаются в auth-service (null)
+ */
+class LocalJwtValidatorTest {
+
+    private static final String KEY = "should-be-externally-configured";
+
+    private final LocalJwtValidator validator = new LocalJwtValidator(KEY);
+
+    @Test
+    void validTokenIsParsed() {
+        Date expiration = new Date((System.currentTimeMillis() / 1000 + 3600) * 1000);
+        String token = Jwts.builder()
+                .setSubject("username")
+                .claim("authorities", Collections.singletonList("ROLE_USER"))
+                .setExpiration(expiration)
+                .signWith(SignatureAlgorithm.HS256, KEY.getBytes())
+                .compact();
+
+        JwtParseResponseDto responseDto = validator.parseJwt(token);
+
+        assertThat(responseDto.getUsername()).isEqualTo("username");
+        assertThat(responseDto.getAuthorities()).containsExactly("ROLE_USER");
+        assertThat(responseDto.getExpiration()).isEqualTo(expiration);
+    }
+
+    @Test
+    void foreignSignatureIsRejected() {
+        String token = token(SignatureAlgorithm.HS256, "another-key", 3_600_000);
+
+        assertThatThrownBy(() -> validator.parseJwt(token)).isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        String token = token(SignatureAlgorithm.HS256, KEY, -60_000);
+
+        assertThatThrownBy(() -> validator.parseJwt(token)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void otherAlgorithmIsLeftToAuthService() {
+        String token = token(SignatureAlgorithm.HS512, KEY, 3_600_000);
+
+        assertThat(validator.parseJwt(token)).isNull();
+    }
+
+    @Test
+    void withoutKeyEveryTokenIsLeftToAuthService() {
+        String token = token(SignatureAlgorithm.HS256, KEY, 3_600_000);
+
+        assertThat(new LocalJwtValidator("").parseJwt(token)).isNull();
+    }
+
+    private static String token(SignatureAlgorithm algorithm, String key, long ttlMillis) {
+        return Jwts.builder()
+                .setSubject("username")
+                .claim("authorities", Collections.singletonList("ROLE_USER"))
+                .setExpiration(new Date(System.currentTimeMillis() + ttlMillis))
+                .signWith(algorithm, key.getBytes())
+                .compact();
+    }
+}
@@ -0,0 +1,38 @@
+package ru.vershinin.support;
+
+import org.apache.coyote.UpgradeProtocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * HTTP/2 без TLS (h2c) для запросов от api-gateway, включается свойством server.http2.enabled (профиль h2c).
+ * протокол в Tomcat добавляет Spring Boot; по умолчанию Tomcat выполняет только 20 потоков одного соединения
+ * одновременно, а шлюз держит с экземпляром одно соединение, поэтому лимиты поднимаются
+ */
+@Configuration
+@ConditionalOnClass(Http2Protocol.class)
+@ConditionalOnProperty(value = "server.http2.enabled", havingValue = "true")
+public class Http2AutoConfiguration {
+
+    /**
+     * @param maxConcurrentStreams - максимальное число одновременных запросов в одном соединении
+     * @return - настройка коннектора Tomcat
+     */
+    @Bean
+    public TomcatConnectorCustomizer http2ConnectorCustomizer(
+            @Value("${h2c.max-concurrent-streams:1000}") int maxConcurrentStreams) {
+        return connector -> {
+            for (UpgradeProtocol protocol : connector.findUpgradeProtocols()) {
+                if (protocol instanceof Http2Protocol) {
+                    ((Http2Protocol) protocol).setMaxConcurrentStreams(maxConcurrentStreams);
+                    ((Http2Protocol) protocol).setMaxConcurrentStreamExecution(maxConcurrentStreams);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package ru.vershinin.support;
+
+import com.github.akhuntsaria.support.VirtualThreadExecutors;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * обработка запросов Tomcat на виртуальных потоках, включается свойством service.virtual-threads.enabled.
+ * требует сборки и запуска на JDK 21+: исполнитель создает VirtualThreadExecutors из профиля jdk21,
+ * при сборке на JDK 11-17 включенное свойство останавливает запуск с ошибкой
+ */
+@Configuration
+@ConditionalOnClass(ProtocolHandler.class)
+@ConditionalOnProperty(value = "service.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsAutoConfiguration {
+
+    private final Logger log = LoggerFactory.getLogger(VirtualThreadsAutoConfiguration.class);
+
+    /**
+     * заменяет пул потоков Tomcat исполнителем, который запускает каждый запрос в отдельном виртуальном потоке
+     * @return - настройка протокола Tomcat
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+        ExecutorService executor = VirtualThreadExecutors.newVirtualThreadPerTaskExecutor();
+        log.info("Tomcat requests run on virtual threads, trace pinning with -Djdk.tracePinnedThreads=full");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.akhuntsaria.support;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * сборка на JDK 11-17: виртуальных потоков нет, включенный service.virtual-threads.enabled останавливает запуск.
+ * на JDK 21 вместо этого класса компилируется src/main/java21 (профиль jdk21)
+ */
+public final class VirtualThreadExecutors {
+
+    private VirtualThreadExecutors() {
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        throw new IllegalStateException("service.virtual-threads.enabled requires service-support built and run"
+                + " on Java 21+ (profile jdk21), running on Java " + Runtime.version());
+    }
+}
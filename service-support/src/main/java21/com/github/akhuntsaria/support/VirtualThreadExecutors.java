@@ -0,0 +1,19 @@
+package com.github.akhuntsaria.support;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * сборка на JDK 21+ (профиль jdk21): каждый запрос в отдельном виртуальном потоке.
+ * единственный класс с байт-кодом Java 21, поэтому он вне пакета ru.vershinin: сервисы сканируют ru.vershinin,
+ * а ASM в Spring 5.2 (api-gateway) не читает классы новее Java 17 и остановил бы запуск
+ */
+public final class VirtualThreadExecutors {
+
+    private VirtualThreadExecutors() {
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
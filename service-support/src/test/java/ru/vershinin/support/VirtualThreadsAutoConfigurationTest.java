@@ -0,0 +1,68 @@
+package ru.vershinin.support;
+
+import org.apache.coyote.ProtocolHandler;
+import org.apache.coyote.http11.Http11NioProtocol;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * на JDK 11-17 включенные виртуальные потоки должны останавливать запуск понятной ошибкой,
+ * на JDK 21 - запускать запросы Tomcat в виртуальных потоках
+ */
+class VirtualThreadsAutoConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(VirtualThreadsAutoConfiguration.class));
+
+    @Test
+    void disabledByDefault() {
+        contextRunner.run(context -> assertThat(context).doesNotHaveBean(TomcatProtocolHandlerCustomizer.class));
+    }
+
+    @Test
+    void failsWithExplanationBeforeJava21() {
+        assumeTrue(Runtime.version().feature() < 21);
+
+        contextRunner.withPropertyValues("service.virtual-threads.enabled=true").run(context -> {
+            assertThat(context).hasFailed();
+            assertThat(context.getStartupFailure())
+                    .hasRootCauseInstanceOf(IllegalStateException.class)
+                    .getRootCause()
+                    .hasMessageContaining("service.virtual-threads.enabled requires")
+                    .hasMessageContaining("Java 21+")
+                    .hasMessageContaining("running on Java " + Runtime.version());
+        });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void requestsRunOnVirtualThreadsOnJava21() {
+        assumeTrue(Runtime.version().feature() >= 21);
+
+        contextRunner.withPropertyValues("service.virtual-threads.enabled=true").run(context -> {
+            TomcatProtocolHandlerCustomizer<ProtocolHandler> customizer =
+                    context.getBean(TomcatProtocolHandlerCustomizer.class);
+            Http11NioProtocol protocol = new Http11NioProtocol();
+            customizer.customize(protocol);
+
+            Executor executor = protocol.getExecutor();
+            CompletableFuture<Thread> thread = new CompletableFuture<>();
+            executor.execute(() -> thread.complete(Thread.currentThread()));
+
+            //Thread.isVirtual появился в Java 21, тесты компилируются и для Java 11
+            Object virtual = Thread.class.getMethod("isVirtual").invoke(thread.get(5, TimeUnit.SECONDS));
+            assertThat(virtual).isEqualTo(Boolean.TRUE);
+            ((ExecutorService) executor).shutdown();
+        });
+    }
+}